@@ -0,0 +1,89 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+
+/**
+ * Entries, modifications and a GitHub connector that does nothing, shared by the benchmarks.
+ */
+final class BenchmarkEntries {
+
+	private BenchmarkEntries() {
+	}
+
+	static Entry gitHubUser(int teamCount) throws LdapException {
+		Entry entry = new DefaultEntry("uid=benchmark,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": top",
+				ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubUser", ObjClassGitHubUser.GITHUB_USER_ATTR_ID + ": FIX-TestUser123",
+				ObjClassGitHubUser.GITHUB_ORG_ATTR_ID + ": fix-trondheim");
+		entry.add(ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, teams("team", teamCount));
+		return entry;
+	}
+
+	/**
+	 * Alternately adds a new team and removes an existing one, the way a group sync tool touches a large entry.
+	 */
+	static List<Modification> teamModifications(int teamCount, int modificationCount) {
+		List<Modification> mods = new ArrayList<>(modificationCount);
+		for (int i = 0; i < modificationCount; i++) {
+			if (i % 2 == 0) {
+				mods.add(new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "new-team-" + i));
+			} else {
+				mods.add(new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "team-" + (i % teamCount)));
+			}
+		}
+		return mods;
+	}
+
+	static String[] teams(String prefix, int count) {
+		String[] teams = new String[count];
+		for (int i = 0; i < count; i++) {
+			teams[i] = prefix + "-" + i;
+		}
+		return teams;
+	}
+
+	static GithubInterceptor inlineInterceptor() {
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SYNC_MODE, GithubInterceptorConfig.SYNC_MODE_INLINE);
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.CONNECTOR_CLASS, NoopGitHubConnector.class.getName());
+		return new GithubInterceptor(new GithubInterceptorConfig(properties));
+	}
+
+	public static class NoopGitHubConnector implements GitHubConnector {
+
+		@Override
+		public void addUser(String user, String team, String org) {
+		}
+
+		@Override
+		public void removeUser(String user, String team, String org) {
+		}
+
+		@Override
+		public boolean hasUser(String user, String team, String org) {
+			return true;
+		}
+
+		@Override
+		public boolean hasUser(String user) {
+			return true;
+		}
+
+		@Override
+		public Set<String> getMembers(String team, String org) {
+			return Collections.emptySet();
+		}
+
+	}
+
+}
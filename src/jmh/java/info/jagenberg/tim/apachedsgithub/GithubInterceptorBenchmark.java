@@ -0,0 +1,91 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of planning the GitHub operations of add, modify and delete operations on the directory thread, and of handing them to a
+ * connector that does nothing, so only the interceptor's own work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GithubInterceptorBenchmark {
+
+	@Param({ "1", "10", "100", "1000" })
+	public int teamCount;
+
+	private GithubInterceptor interceptor;
+	private GitHubConnector connector;
+	private Entry entry;
+
+	@State(Scope.Benchmark)
+	public static class Modifications {
+
+		@Param({ "1", "10", "100" })
+		public int modificationCount;
+
+		private List<Modification> mods;
+
+		@Setup
+		public void setUp(GithubInterceptorBenchmark benchmark) {
+			mods = BenchmarkEntries.teamModifications(benchmark.teamCount, modificationCount);
+		}
+
+	}
+
+	@Setup
+	public void setUp() throws LdapException {
+		interceptor = BenchmarkEntries.inlineInterceptor();
+		connector = new BenchmarkEntries.NoopGitHubConnector();
+		entry = BenchmarkEntries.gitHubUser(teamCount);
+	}
+
+	@Benchmark
+	public SyncPlan planAdd() {
+		return interceptor.planAdd(entry);
+	}
+
+	@Benchmark
+	public SyncPlan planModify(Modifications modifications) {
+		return interceptor.planModify(entry, modifications.mods);
+	}
+
+	@Benchmark
+	public SyncPlan planDelete() {
+		return interceptor.planDelete(entry);
+	}
+
+	@Benchmark
+	public void modifyWithStubConnector(Modifications modifications, Blackhole blackhole) {
+		// removals are checked against the other entries granting the team, which needs a directory, so only the additions are applied
+		for (SyncOperation operation : interceptor.planModify(entry, modifications.mods).getOperations()) {
+			if (operation.getType() == SyncOperation.Type.ADD) {
+				connector.addUser(operation.getUser(), operation.getTeam(), operation.getOrg());
+			} else {
+				connector.removeUser(operation.getUser(), operation.getTeam(), operation.getOrg());
+			}
+			blackhole.consume(operation);
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjClassGitHubUserBenchmark {
+
+	@Param({ "1", "10", "100", "1000" })
+	public int teamCount;
+
+	private Entry entry;
+
+	@Setup
+	public void setUp() throws LdapException {
+		entry = BenchmarkEntries.gitHubUser(teamCount);
+	}
+
+	@Benchmark
+	public boolean isObjectClassGitHubUser() {
+		return ObjClassGitHubUser.isObjectClassGitHubUser(entry);
+	}
+
+	@Benchmark
+	public boolean hasAllGitHubAttributesSet() {
+		return ObjClassGitHubUser.hasAllGitHubAttributesSet(entry);
+	}
+
+	@Benchmark
+	public List<String> getTeams() {
+		return ObjClassGitHubUser.getTeams(entry);
+	}
+
+	@Benchmark
+	public GitHubUserView readView() {
+		return GitHubUserView.read(entry);
+	}
+
+	@Benchmark
+	public String getUserAndOrg() {
+		return ObjClassGitHubUser.getUser(entry) + ObjClassGitHubUser.getOrg(entry);
+	}
+
+}
@@ -0,0 +1,376 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the GitHub operations of a bulk load, such as a large LDIF import, and applies them grouped by organization and team once
+ * the load pauses or the buffer is full. Each team is resolved and listed once per batch, so the membership index turns most of
+ * the following operations into lookups instead of one resolution per entry. The teams of a batch are applied concurrently, the
+ * operations of one team in order on one thread. Operations on the same membership are coalesced like in the sync queue, and like
+ * there an operation that finds the buffer full for too long is dropped and left to the journal.
+ */
+public class BulkSyncBuffer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BulkSyncBuffer.class);
+
+	private final Consumer<SyncOperation> handler;
+	private final Consumer<SyncOperation> prefetcher;
+	private final SyncJournal journal;
+	private final int maxSize;
+	private final long enqueueTimeoutNanos;
+	private final long flushDelayNanos;
+	private final int prefetchThreshold;
+	private final int addRateThreshold;
+	private final Map<String, Map<String, Buffered>> teams = new LinkedHashMap<>();
+	private Map<String, Map<String, Buffered>> applying = Collections.emptyMap();
+	private final Object rateLock = new Object();
+	private long rateWindow;
+	private int rateCount;
+	private int previousRateCount;
+	private final Thread flusher;
+	private final ThreadPoolExecutor executor;
+	private int size;
+	private long lastAddition;
+	private boolean running;
+	private boolean flushRequested;
+	private boolean flushing;
+
+	/**
+	 * The prefetcher is called with one operation of every team with at least prefetchThreshold buffered operations before they are
+	 * handled.
+	 */
+	public BulkSyncBuffer(Consumer<SyncOperation> handler, Consumer<SyncOperation> prefetcher, SyncJournal journal, int maxSize,
+			long enqueueTimeoutMillis, long flushDelayMillis, int prefetchThreshold, int addRateThreshold) {
+		this(handler, prefetcher, journal, maxSize, enqueueTimeoutMillis, flushDelayMillis, prefetchThreshold, addRateThreshold, 1);
+	}
+
+	/**
+	 * Applies up to parallelism teams of a batch at the same time.
+	 */
+	public BulkSyncBuffer(Consumer<SyncOperation> handler, Consumer<SyncOperation> prefetcher, SyncJournal journal, int maxSize,
+			long enqueueTimeoutMillis, long flushDelayMillis, int prefetchThreshold, int addRateThreshold, int parallelism) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Bulk buffer size must be positive");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Bulk buffer parallelism must be positive");
+		}
+		this.handler = handler;
+		this.prefetcher = prefetcher;
+		this.journal = journal;
+		this.maxSize = maxSize;
+		this.enqueueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(enqueueTimeoutMillis);
+		this.flushDelayNanos = TimeUnit.MILLISECONDS.toNanos(flushDelayMillis);
+		this.prefetchThreshold = prefetchThreshold;
+		this.addRateThreshold = addRateThreshold;
+		flusher = new Thread(this::run, "github-bulk");
+		flusher.setDaemon(true);
+		if (parallelism == 1) {
+			executor = null;
+		} else {
+			AtomicInteger threadCount = new AtomicInteger();
+			executor = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+				Thread thread = new Thread(runnable, "github-bulk-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			flusher.start();
+		}
+	}
+
+	/**
+	 * Counts an LDAP add and tells whether adds currently arrive fast enough to be treated as a bulk load. Adds are counted in one
+	 * second windows; the current and the previous window are compared with the threshold.
+	 */
+	public boolean recordAdd() {
+		if (addRateThreshold <= 0) {
+			return false;
+		}
+		long window = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+		synchronized (rateLock) {
+			if (window != rateWindow) {
+				previousRateCount = window == rateWindow + 1 ? rateCount : 0;
+				rateCount = 0;
+				rateWindow = window;
+			}
+			rateCount++;
+			return rateCount >= addRateThreshold || previousRateCount >= addRateThreshold;
+		}
+	}
+
+	public void addAll(Collection<SyncOperation> operations) {
+		operations.forEach(this::add);
+	}
+
+	/**
+	 * Buffers the operation, waiting up to the enqueue timeout while the buffer is full; false if it was dropped.
+	 */
+	public boolean add(SyncOperation operation) {
+		long sequence = -1;
+		if (journal != null) {
+			try {
+				sequence = journal.append(operation);
+			} catch (IllegalStateException e) {
+				LOG.error("Could not journal " + operation + ": " + e.getMessage());
+			}
+		}
+		synchronized (this) {
+			if (!running) {
+				throw new IllegalStateException("Bulk buffer is not running");
+			}
+			long deadline = System.nanoTime() + enqueueTimeoutNanos;
+			while (size >= maxSize && running) {
+				notifyAll();
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					// a journaled operation stays pending in the journal and is replayed on the next start
+					LOG.error("Bulk buffer full, dropping " + operation);
+					return false;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for the bulk buffer", e);
+				}
+			}
+			Map<String, Buffered> team = teams.computeIfAbsent(operation.getTeamKey(), key -> new LinkedHashMap<>());
+			Buffered waiting = team.get(operation.getMembershipKey());
+			if (waiting == null) {
+				team.put(operation.getMembershipKey(), new Buffered(operation, sequence));
+				size++;
+			} else if (waiting.operation.getType() == operation.getType()) {
+				complete(sequence);
+			} else {
+				// an opposing change replaces the waiting one, which may not have changed anything
+				team.put(operation.getMembershipKey(), new Buffered(operation, sequence));
+				complete(waiting.sequence);
+			}
+			lastAddition = System.nanoTime();
+			// the flusher waits without a timeout while the buffer is empty
+			if (size == 1 || size >= maxSize) {
+				notifyAll();
+			}
+			return true;
+		}
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Whether operations are buffered or being applied; later changes must go through the buffer as well to keep their order.
+	 */
+	public synchronized boolean isBusy() {
+		return size > 0 || flushing;
+	}
+
+	/**
+	 * Whether an operation on the membership of any of the operations is buffered or being applied, so these operations have to go
+	 * through the buffer as well to keep their order.
+	 */
+	public synchronized boolean isBusy(Collection<SyncOperation> operations) {
+		for (SyncOperation operation : operations) {
+			if (isBusy(operation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether an operation on the same membership is buffered or being applied.
+	 */
+	public synchronized boolean isBusy(SyncOperation operation) {
+		return contains(teams, operation) || contains(applying, operation);
+	}
+
+	private static boolean contains(Map<String, Map<String, Buffered>> teams, SyncOperation operation) {
+		Map<String, Buffered> team = teams.get(operation.getTeamKey());
+		return team != null && team.containsKey(operation.getMembershipKey());
+	}
+
+	/**
+	 * Waits until all buffered operations have been applied.
+	 */
+	public synchronized boolean awaitFlushed(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		flushRequested = true;
+		notifyAll();
+		try {
+			while (size > 0 || flushing) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+			return true;
+		} finally {
+			flushRequested = false;
+		}
+	}
+
+	public void shutdown(long timeoutMillis) {
+		try {
+			awaitFlushed(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		flusher.interrupt();
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		int dropped = size();
+		if (dropped > 0) {
+			LOG.warn("Bulk buffer shut down with " + dropped + " pending GitHub operations");
+		}
+	}
+
+	private void run() {
+		try {
+			List<Map<String, Buffered>> batch;
+			while ((batch = takeBatch()) != null) {
+				apply(batch);
+				synchronized (this) {
+					flushing = false;
+					applying = Collections.emptyMap();
+					notifyAll();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized List<Map<String, Buffered>> takeBatch() throws InterruptedException {
+		while (true) {
+			if (!running) {
+				return null;
+			}
+			if (size > 0) {
+				long wait = lastAddition + flushDelayNanos - System.nanoTime();
+				if (size >= maxSize || wait <= 0 || flushRequested) {
+					applying = new LinkedHashMap<>(teams);
+					List<Map<String, Buffered>> batch = new ArrayList<>(applying.values());
+					teams.clear();
+					size = 0;
+					flushRequested = false;
+					flushing = true;
+					notifyAll();
+					return batch;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, wait);
+			} else {
+				wait();
+			}
+		}
+	}
+
+	private void apply(List<Map<String, Buffered>> batch) {
+		long started = System.nanoTime();
+		// removals revoke access, so they are applied for all teams of the batch before the first addition
+		int operations = apply(batch, SyncLane.REMOVAL) + apply(batch, SyncLane.ADDITION);
+		LOG.info("Applied " + operations + " bulk GitHub operations for " + batch.size() + " teams in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+	}
+
+	private int apply(List<Map<String, Buffered>> batch, SyncLane lane) {
+		int operations = 0;
+		if (executor == null || batch.size() < 2) {
+			for (Map<String, Buffered> team : batch) {
+				operations += apply(team, lane);
+			}
+			return operations;
+		}
+		List<Future<Integer>> results = new ArrayList<>(batch.size());
+		for (Map<String, Buffered> team : batch) {
+			results.add(executor.submit(() -> apply(team, lane)));
+		}
+		try {
+			for (Future<Integer> result : results) {
+				try {
+					operations += result.get();
+				} catch (ExecutionException e) {
+					LOG.warn("Could not sync a bulk batch", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			results.forEach(result -> result.cancel(true));
+			Thread.currentThread().interrupt();
+		}
+		return operations;
+	}
+
+	private int apply(Map<String, Buffered> team, SyncLane lane) {
+		if (lane == SyncLane.REMOVAL && team.size() >= prefetchThreshold) {
+			SyncOperation first = team.values().iterator().next().operation;
+			try {
+				prefetcher.accept(first);
+			} catch (RuntimeException e) {
+				LOG.debug("Could not prefetch " + first.getTeam() + " in " + first.getOrg() + ": " + e.getMessage());
+			}
+		}
+		int operations = 0;
+		for (Buffered buffered : team.values()) {
+			if (SyncLane.of(buffered.operation) != lane) {
+				continue;
+			}
+			try {
+				handler.accept(buffered.operation);
+			} catch (RuntimeException e) {
+				LOG.warn("Could not sync " + buffered.operation, e);
+			} finally {
+				complete(buffered.sequence);
+			}
+			operations++;
+		}
+		return operations;
+	}
+
+	private void complete(long sequence) {
+		if (journal != null && sequence >= 0) {
+			journal.complete(sequence);
+		}
+	}
+
+	private static final class Buffered {
+
+		private final SyncOperation operation;
+		private final long sequence;
+
+		private Buffered(SyncOperation operation, long sequence) {
+			this.operation = operation;
+			this.sequence = sequence;
+		}
+
+	}
+
+}
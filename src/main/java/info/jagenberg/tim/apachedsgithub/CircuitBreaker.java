@@ -0,0 +1,122 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker. The outcome of the last calls is kept in a ring buffer; once the share of failed or slow calls in a
+ * full window reaches the threshold the circuit opens and calls are rejected. After the open time a single probe call is let
+ * through: its success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final boolean[] window;
+	private final double failureRateThreshold;
+	private final long slowCallNanos;
+	private final long openNanos;
+	private final LongSupplier clock;
+	private State state = State.CLOSED;
+	private int position;
+	private int calls;
+	private int failures;
+	private long openedAt;
+	private boolean probing;
+
+	public CircuitBreaker(int windowSize, double failureRateThreshold, long slowCallMillis, long openMillis) {
+		this(windowSize, failureRateThreshold, slowCallMillis, openMillis, System::nanoTime);
+	}
+
+	CircuitBreaker(int windowSize, double failureRateThreshold, long slowCallMillis, long openMillis, LongSupplier clock) {
+		if (windowSize < 1 || failureRateThreshold <= 0d || failureRateThreshold > 1d) {
+			throw new IllegalArgumentException("Window size must be positive and the failure rate threshold in (0, 1]");
+		}
+		this.window = new boolean[windowSize];
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.clock = clock;
+	}
+
+	/**
+	 * Throws GitHubUnavailableException unless a call may go to GitHub; a permitted call must be followed by
+	 * {@link #onResult(boolean, long)}.
+	 */
+	public synchronized void acquirePermission() {
+		if (state == State.OPEN) {
+			long waited = clock.getAsLong() - openedAt;
+			if (waited < openNanos) {
+				throw new GitHubUnavailableException("GitHub circuit breaker is open", TimeUnit.NANOSECONDS.toMillis(openNanos - waited));
+			}
+			state = State.HALF_OPEN;
+			probing = false;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probing) {
+				throw new GitHubUnavailableException("GitHub circuit breaker is probing", TimeUnit.NANOSECONDS.toMillis(openNanos));
+			}
+			probing = true;
+		}
+	}
+
+	/**
+	 * Returns a permission without recording an outcome, for a call that failed before it reached GitHub.
+	 */
+	public synchronized void releasePermission() {
+		if (state == State.HALF_OPEN) {
+			probing = false;
+		}
+	}
+
+	public synchronized void onResult(boolean succeeded, long durationNanos) {
+		boolean failed = !succeeded || durationNanos >= slowCallNanos;
+		if (state == State.HALF_OPEN) {
+			probing = false;
+			if (failed) {
+				open();
+			} else {
+				close();
+			}
+			return;
+		}
+		if (state == State.OPEN) {
+			// a call permitted before the circuit opened
+			return;
+		}
+		if (calls == window.length) {
+			if (window[position]) {
+				failures--;
+			}
+		} else {
+			calls++;
+		}
+		window[position] = failed;
+		if (failed) {
+			failures++;
+		}
+		position = (position + 1) % window.length;
+		if (calls == window.length && failures >= failureRateThreshold * calls) {
+			open();
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openedAt = clock.getAsLong();
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		position = 0;
+		calls = 0;
+		failures = 0;
+	}
+
+}
@@ -0,0 +1,93 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responses to GitHub GET requests together with their ETag and Last-Modified validators. GitHubHttpConnector revalidates a cached
+ * response with a conditional request and serves it again when GitHub answers 304 Not Modified, which does not count against the
+ * rate limit.
+ */
+public class ConditionalRequestCache {
+
+	static final int MAX_BODY_BYTES = 1024 * 1024;
+
+	private final ResolutionCache<String, CachedResponse> responses;
+	private final AtomicLong revalidated = new AtomicLong();
+	private final AtomicLong refetched = new AtomicLong();
+
+	public ConditionalRequestCache(long ttlMillis, int maxSize) {
+		responses = new ResolutionCache<>(ttlMillis, maxSize);
+	}
+
+	CachedResponse get(String url) {
+		return responses.get(url);
+	}
+
+	void put(String url, CachedResponse response) {
+		responses.put(url, response);
+	}
+
+	void notModified() {
+		revalidated.incrementAndGet();
+	}
+
+	void modified() {
+		refetched.incrementAndGet();
+	}
+
+	public long getNotModifiedCount() {
+		return revalidated.get();
+	}
+
+	public long getModifiedCount() {
+		return refetched.get();
+	}
+
+	public double getNotModifiedRatio() {
+		return ResolutionCache.ratio(revalidated.get(), refetched.get());
+	}
+
+	public int size() {
+		return responses.size();
+	}
+
+	public void invalidateAll() {
+		responses.invalidateAll();
+	}
+
+	static final class CachedResponse {
+
+		private final Map<String, List<String>> headers;
+		private final byte[] body;
+
+		CachedResponse(Map<String, List<String>> headers, byte[] body) {
+			Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+				if (header.getKey() != null) {
+					copy.put(header.getKey(), header.getValue());
+				}
+			}
+			this.headers = Collections.unmodifiableMap(copy);
+			this.body = body;
+		}
+
+		String getHeader(String name) {
+			List<String> values = headers.get(name);
+			return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+		}
+
+		Map<String, List<String>> getHeaders() {
+			return headers;
+		}
+
+		byte[] getBody() {
+			return body;
+		}
+
+	}
+
+}
@@ -0,0 +1,270 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpURLConnection forwarding every call to another connection, as a base for connections that need to observe or alter the
+ * exchange github-api performs.
+ */
+class DelegatingHttpURLConnection extends HttpURLConnection {
+
+	protected final HttpURLConnection delegate;
+
+	DelegatingHttpURLConnection(HttpURLConnection delegate) {
+		super(delegate.getURL());
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		delegate.connect();
+	}
+
+	@Override
+	public void disconnect() {
+		delegate.disconnect();
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return delegate.usingProxy();
+	}
+
+	@Override
+	public void setRequestMethod(String method) throws ProtocolException {
+		delegate.setRequestMethod(method);
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return delegate.getRequestMethod();
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		return delegate.getResponseCode();
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		return delegate.getResponseMessage();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return delegate.getInputStream();
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return delegate.getErrorStream();
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		return delegate.getOutputStream();
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return delegate.getHeaderField(name);
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return delegate.getHeaderField(n);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return delegate.getHeaderFieldKey(n);
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		return delegate.getHeaderFields();
+	}
+
+	@Override
+	public int getHeaderFieldInt(String name, int defaultValue) {
+		return delegate.getHeaderFieldInt(name, defaultValue);
+	}
+
+	@Override
+	public long getHeaderFieldLong(String name, long defaultValue) {
+		return delegate.getHeaderFieldLong(name, defaultValue);
+	}
+
+	@Override
+	public long getHeaderFieldDate(String name, long defaultValue) {
+		return delegate.getHeaderFieldDate(name, defaultValue);
+	}
+
+	@Override
+	public String getContentType() {
+		return delegate.getContentType();
+	}
+
+	@Override
+	public int getContentLength() {
+		return delegate.getContentLength();
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		return delegate.getContentLengthLong();
+	}
+
+	@Override
+	public String getContentEncoding() {
+		return delegate.getContentEncoding();
+	}
+
+	@Override
+	public long getDate() {
+		return delegate.getDate();
+	}
+
+	@Override
+	public long getExpiration() {
+		return delegate.getExpiration();
+	}
+
+	@Override
+	public long getLastModified() {
+		return delegate.getLastModified();
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		delegate.setRequestProperty(key, value);
+	}
+
+	@Override
+	public void addRequestProperty(String key, String value) {
+		delegate.addRequestProperty(key, value);
+	}
+
+	@Override
+	public String getRequestProperty(String key) {
+		return delegate.getRequestProperty(key);
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestProperties() {
+		return delegate.getRequestProperties();
+	}
+
+	@Override
+	public void setDoInput(boolean doInput) {
+		delegate.setDoInput(doInput);
+	}
+
+	@Override
+	public boolean getDoInput() {
+		return delegate.getDoInput();
+	}
+
+	@Override
+	public void setDoOutput(boolean doOutput) {
+		delegate.setDoOutput(doOutput);
+	}
+
+	@Override
+	public boolean getDoOutput() {
+		return delegate.getDoOutput();
+	}
+
+	@Override
+	public void setUseCaches(boolean useCaches) {
+		delegate.setUseCaches(useCaches);
+	}
+
+	@Override
+	public boolean getUseCaches() {
+		return delegate.getUseCaches();
+	}
+
+	@Override
+	public void setIfModifiedSince(long ifModifiedSince) {
+		delegate.setIfModifiedSince(ifModifiedSince);
+	}
+
+	@Override
+	public long getIfModifiedSince() {
+		return delegate.getIfModifiedSince();
+	}
+
+	@Override
+	public void setAllowUserInteraction(boolean allowUserInteraction) {
+		delegate.setAllowUserInteraction(allowUserInteraction);
+	}
+
+	@Override
+	public boolean getAllowUserInteraction() {
+		return delegate.getAllowUserInteraction();
+	}
+
+	@Override
+	public void setConnectTimeout(int timeout) {
+		delegate.setConnectTimeout(timeout);
+	}
+
+	@Override
+	public int getConnectTimeout() {
+		return delegate.getConnectTimeout();
+	}
+
+	@Override
+	public void setReadTimeout(int timeout) {
+		delegate.setReadTimeout(timeout);
+	}
+
+	@Override
+	public int getReadTimeout() {
+		return delegate.getReadTimeout();
+	}
+
+	@Override
+	public void setInstanceFollowRedirects(boolean followRedirects) {
+		delegate.setInstanceFollowRedirects(followRedirects);
+	}
+
+	@Override
+	public boolean getInstanceFollowRedirects() {
+		return delegate.getInstanceFollowRedirects();
+	}
+
+	@Override
+	public void setFixedLengthStreamingMode(int contentLength) {
+		delegate.setFixedLengthStreamingMode(contentLength);
+	}
+
+	@Override
+	public void setFixedLengthStreamingMode(long contentLength) {
+		delegate.setFixedLengthStreamingMode(contentLength);
+	}
+
+	@Override
+	public void setChunkedStreamingMode(int chunkLength) {
+		delegate.setChunkedStreamingMode(chunkLength);
+	}
+
+	@Override
+	public Permission getPermission() throws IOException {
+		return delegate.getPermission();
+	}
+
+	@Override
+	public String toString() {
+		return delegate.toString();
+	}
+
+}
@@ -0,0 +1,108 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the GitHub operations planned for one LDAP operation concurrently, so an entry with many teams pays for one round trip
+ * instead of one per team. Additions run before removals and a failed addition skips the removals, like the sequential
+ * implementation. All operations of a phase are attempted; the first failure in plan order is thrown with the others attached
+ * as suppressed exceptions.
+ */
+public class FanOutExecutor {
+
+	private final int parallelism;
+	private final ThreadPoolExecutor executor;
+
+	public FanOutExecutor(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		if (parallelism == 1) {
+			executor = null;
+		} else {
+			// the calling thread runs one operation itself, the pool the others
+			AtomicInteger threadCount = new AtomicInteger();
+			executor = new ThreadPoolExecutor(parallelism - 1, parallelism - 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+				Thread thread = new Thread(runnable, "github-fanout-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void execute(List<SyncOperation> operations, Consumer<SyncOperation> handler) {
+		List<SyncOperation> additions = new ArrayList<>();
+		List<SyncOperation> removals = new ArrayList<>();
+		for (SyncOperation operation : operations) {
+			(operation.getType() == SyncOperation.Type.ADD ? additions : removals).add(operation);
+		}
+		executePhase(additions, handler);
+		executePhase(removals, handler);
+	}
+
+	private void executePhase(List<SyncOperation> operations, Consumer<SyncOperation> handler) {
+		if (executor == null || operations.size() < 2) {
+			operations.forEach(handler);
+			return;
+		}
+		List<Future<?>> results = new ArrayList<>(operations.size() - 1);
+		for (SyncOperation operation : operations.subList(1, operations.size())) {
+			results.add(executor.submit(() -> handler.accept(operation)));
+		}
+		RuntimeException failure = null;
+		try {
+			handler.accept(operations.get(0));
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		try {
+			for (Future<?> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					failure = collect(failure, e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			results.forEach(result -> result.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for GitHub", e);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static RuntimeException collect(RuntimeException failure, Throwable cause) {
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		RuntimeException exception = cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+		if (failure == null) {
+			return exception;
+		}
+		failure.addSuppressed(exception);
+		return failure;
+	}
+
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+}
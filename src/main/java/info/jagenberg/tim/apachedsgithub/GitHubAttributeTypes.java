@@ -0,0 +1,82 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+/**
+ * The attribute types of the githubUser and githubTeam object classes, resolved once instead of on every lookup. Types the schema manager does not
+ * know yet fall back to a bare type carrying the OID, which is all entry lookups need.
+ */
+public final class GitHubAttributeTypes {
+
+	public static final GitHubAttributeTypes UNRESOLVED = new GitHubAttributeTypes(null);
+
+	private final AttributeType objectClass;
+	private final AttributeType user;
+	private final AttributeType team;
+	private final AttributeType org;
+	private final AttributeType member;
+	private final AttributeType uniqueMember;
+	private final AttributeType userId;
+	private final AttributeType teamId;
+
+	private GitHubAttributeTypes(SchemaManager schemaManager) {
+		objectClass = resolve(schemaManager, ObjClassGitHubUser.OBJCLASS_ATTR_ID);
+		user = resolve(schemaManager, ObjClassGitHubUser.GITHUB_USER_ATTR_ID);
+		team = resolve(schemaManager, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID);
+		org = resolve(schemaManager, ObjClassGitHubUser.GITHUB_ORG_ATTR_ID);
+		member = resolve(schemaManager, GitHubGroupView.MEMBER_ATTR_ID);
+		uniqueMember = resolve(schemaManager, GitHubGroupView.UNIQUE_MEMBER_ATTR_ID);
+		userId = resolve(schemaManager, ObjClassGitHubUser.GITHUB_USER_ID_ATTR_ID);
+		teamId = resolve(schemaManager, ObjClassGitHubUser.GITHUB_TEAM_ID_ATTR_ID);
+	}
+
+	public static GitHubAttributeTypes resolve(SchemaManager schemaManager) {
+		return schemaManager == null ? UNRESOLVED : new GitHubAttributeTypes(schemaManager);
+	}
+
+	private static AttributeType resolve(SchemaManager schemaManager, String oid) {
+		if (schemaManager != null) {
+			try {
+				return schemaManager.lookupAttributeTypeRegistry(oid);
+			} catch (LdapException e) {
+				// not loaded (yet), entries still hold the attribute under its OID
+			}
+		}
+		return new AttributeType(oid);
+	}
+
+	public AttributeType getObjectClass() {
+		return objectClass;
+	}
+
+	public AttributeType getUser() {
+		return user;
+	}
+
+	public AttributeType getTeam() {
+		return team;
+	}
+
+	public AttributeType getOrg() {
+		return org;
+	}
+
+	public AttributeType getMember() {
+		return member;
+	}
+
+	public AttributeType getUniqueMember() {
+		return uniqueMember;
+	}
+
+	public AttributeType getUserId() {
+		return userId;
+	}
+
+	public AttributeType getTeamId() {
+		return teamId;
+	}
+
+}
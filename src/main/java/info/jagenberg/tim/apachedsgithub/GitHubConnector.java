@@ -1,126 +1,35 @@
 package info.jagenberg.tim.apachedsgithub;
 
-import java.io.IOException;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.Set;
 
-import org.kohsuke.github.GHOrganization;
-import org.kohsuke.github.GHTeam;
-import org.kohsuke.github.GHUser;
-import org.kohsuke.github.GitHub;
+/**
+ * Access to the GitHub team memberships the interceptor synchronizes. Implementations throw IllegalArgumentException when an
+ * organization, team or user cannot be resolved or a change is rejected, and IllegalStateException when GitHub cannot be reached.
+ * The implementation is chosen with githubinterceptor.connector.class and needs a public constructor taking a
+ * GithubInterceptorConfig or a public no-argument constructor.
+ */
+public interface GitHubConnector {
 
-public class GitHubConnector {
+	void addUser(String user, String team, String org);
 
-	private static final String GITHUB_CONNECTION_ERROR_MSG = "Could not connect to GitHub";
-	private GitHub github;
-	private boolean connected;
+	void removeUser(String user, String team, String org);
 
-	public GitHubConnector() {
-		try {
-			github = GitHub.connectUsingOAuth(System.getProperty("githubinterceptor.oauthtoken"));
-			connected = true;
-		} catch (IOException e) {
-			connected = false;
-		}
-	}
+	boolean hasUser(String user, String team, String org);
 
-	public void addUser(String user, String team, String org) {
-		if (connected) {
-			GHOrganization ghOrg = getOrg(org);
-			GHTeam ghTeam = getTeam(ghOrg, team);
-			GHUser ghUser = getUser(user);
-			try {
-				ghTeam.add(ghUser);
-			} catch (IOException e) {
-				throw new IllegalArgumentException("Could not add " + user + " to " + team + " in " + org, e);
-			}
-		} else {
-			throw new IllegalStateException(GITHUB_CONNECTION_ERROR_MSG);
-		}
-	}
+	boolean hasUser(String user);
 
-	public void removeUser(String user, String team, String org) {
-		if (connected) {
-			GHOrganization ghOrg = getOrg(org);
-			GHTeam ghTeam = getTeam(ghOrg, team);
-			GHUser ghUser = getUser(user);
-			try {
-				ghTeam.remove(ghUser);
-			} catch (IOException e) {
-				throw new IllegalArgumentException("Could not remove " + user + " from " + team + " in " + org, e);
-			}
-		} else {
-			throw new IllegalStateException(GITHUB_CONNECTION_ERROR_MSG);
-		}
-	}
-
-	public boolean hasUser(String user, String team, String org) {
-		if (connected) {
-			try {
-				GHOrganization ghOrg = getOrg(org);
-				GHTeam ghTeam = getTeam(ghOrg, team);
-				GHUser ghUser = getUser(user);
-				return ghTeam.hasMember(ghUser);
-			} catch (IllegalArgumentException e) {
-				return false;
-			}
-		} else {
-			throw new IllegalStateException(GITHUB_CONNECTION_ERROR_MSG);
-		}
-	}
-
-	public boolean hasUser(String user) {
-		if (connected) {
-			try {
-				github.getUser(user);
-				return true;
-			} catch (IOException e) {
-				return false;
-			}
-		} else {
-			throw new IllegalStateException(GITHUB_CONNECTION_ERROR_MSG);
-		}
-	}
-
-	private GHOrganization getOrg(String org) {
-		GHOrganization ghOrg = null;
-		try {
-			ghOrg = github.getOrganization(org);
-			if (ghOrg == null) {
-				throw new IllegalArgumentException("Could not find organization " + org);
-			}
-		} catch (IOException e) {
-			throw new IllegalArgumentException("Could not find organization " + org, e);
-		}
-		return ghOrg;
-	}
+	Set<String> getMembers(String team, String org);
 
-	private GHTeam getTeam(GHOrganization ghOrg, String team) {
-		GHTeam ghTeam = null;
-		try {
-			Stream<GHTeam> teamsStream = ghOrg.getTeams().values().stream();
-			Optional<GHTeam> ghTeamOpt = teamsStream.filter(t -> t.getName().equalsIgnoreCase(team)).findFirst();
-			if (!ghTeamOpt.isPresent()) {
-				throw new IllegalArgumentException("Could not find team " + team);
-			}
-			ghTeam = ghTeamOpt.get();
-		} catch (IOException e) {
-			throw new IllegalArgumentException("Could not find team " + team, e);
-		}
-		return ghTeam;
+	/**
+	 * Called when the interceptor is initialized; starts background work such as connecting to GitHub.
+	 */
+	default void start() {
 	}
 
-	private GHUser getUser(String user) {
-		GHUser ghUser = null;
-		try {
-			ghUser = github.getUser(user);
-			if (ghUser == null) {
-				throw new IllegalArgumentException("Could not find user " + user);
-			}
-		} catch (IOException e) {
-			throw new IllegalArgumentException("Could not find user " + user, e);
-		}
-		return ghUser;
+	/**
+	 * Called when the interceptor is destroyed.
+	 */
+	default void stop() {
 	}
 
 }
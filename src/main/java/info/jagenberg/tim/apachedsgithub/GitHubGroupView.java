@@ -0,0 +1,123 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+
+/**
+ * The GitHub attributes of a group carrying the githubTeam object class: the teams and the organization its members are synchronized
+ * to, and its member and uniqueMember attributes. The member values are not copied, so reading a view of a large group is cheap.
+ */
+public final class GitHubGroupView {
+
+	public static final String OBJCLASS_NAME = "githubTeam";
+	public static final String OBJCLASS_OID = "2.25.338967291031856023576548935457224115483.2.2";
+	public static final String MEMBER_ATTR_ID = "2.5.4.31";
+	public static final String UNIQUE_MEMBER_ATTR_ID = "2.5.4.50";
+
+	private static final GitHubGroupView NOT_A_GITHUB_TEAM = new GitHubGroupView(false, Collections.<String> emptyList(), null, null, null, null);
+
+	private final boolean gitHubTeam;
+	private final List<String> teams;
+	private final String org;
+	private final Attribute member;
+	private final Attribute uniqueMember;
+	private final Long teamId;
+
+	private GitHubGroupView(boolean gitHubTeam, List<String> teams, String org, Attribute member, Attribute uniqueMember, Long teamId) {
+		this.gitHubTeam = gitHubTeam;
+		this.teams = teams;
+		this.org = org;
+		this.member = member;
+		this.uniqueMember = uniqueMember;
+		this.teamId = teamId;
+	}
+
+	public static GitHubGroupView read(Entry entry, GitHubAttributeTypes types) {
+		Attribute objectClass = entry.get(types.getObjectClass());
+		if (objectClass == null || !(objectClass.contains(OBJCLASS_NAME) || objectClass.contains(OBJCLASS_OID))) {
+			return NOT_A_GITHUB_TEAM;
+		}
+		Attribute org = entry.get(types.getOrg());
+		Value<?> orgValue = org == null ? null : org.get();
+		return new GitHubGroupView(true, values(entry.get(types.getTeam())), orgValue == null ? null : orgValue.getString(), entry.get(types.getMember()),
+				entry.get(types.getUniqueMember()), GitHubUserView.id(entry.get(types.getTeamId())));
+	}
+
+	private static List<String> values(Attribute attribute) {
+		if (attribute == null || attribute.size() == 0) {
+			return Collections.emptyList();
+		}
+		String[] values = new String[attribute.size()];
+		int i = 0;
+		for (Value<?> value : attribute) {
+			values[i++] = value.getString();
+		}
+		return Collections.unmodifiableList(Arrays.asList(values));
+	}
+
+	public boolean isGitHubTeam() {
+		return gitHubTeam;
+	}
+
+	/**
+	 * Whether teams and org are set, which is required before any member is synchronized to GitHub.
+	 */
+	public boolean isComplete() {
+		return gitHubTeam && !teams.isEmpty() && org != null;
+	}
+
+	public List<String> getTeams() {
+		return teams;
+	}
+
+	public String getOrg() {
+		return org;
+	}
+
+	/**
+	 * The GitHub id of the team, or null. An id is only kept for groups synchronized to exactly one team, as a single value could
+	 * not tell the ids of several teams apart.
+	 */
+	public Long getTeamId() {
+		return teams.size() == 1 ? teamId : null;
+	}
+
+	Attribute getMember() {
+		return member;
+	}
+
+	Attribute getUniqueMember() {
+		return uniqueMember;
+	}
+
+	/**
+	 * The member and uniqueMember values, keyed by their normalized value.
+	 */
+	public Map<String, String> getMembers() {
+		Map<String, String> members = new LinkedHashMap<>();
+		addValues(member, members);
+		addValues(uniqueMember, members);
+		return members;
+	}
+
+	private static void addValues(Attribute attribute, Map<String, String> members) {
+		if (attribute != null) {
+			for (Value<?> value : attribute) {
+				members.putIfAbsent(key(value), value.getString());
+			}
+		}
+	}
+
+	static String key(Value<?> value) {
+		Object normalized = value.getNormValue();
+		return String.valueOf(normalized != null ? normalized : value.getValue());
+	}
+
+}
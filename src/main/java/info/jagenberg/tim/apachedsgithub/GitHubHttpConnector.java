@@ -0,0 +1,271 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.github.HttpConnector;
+
+/**
+ * HttpConnector handed to github-api. Every request waits for the rate limit scheduler before it is opened, and every response
+ * feeds its X-RateLimit headers back into the scheduler. GET requests are revalidated against the conditional request cache, if
+ * one is given.
+ */
+public class GitHubHttpConnector implements HttpConnector {
+
+	private final HttpConnector delegate;
+	private final RateLimitScheduler scheduler;
+	private final ConditionalRequestCache responseCache;
+
+	public GitHubHttpConnector(HttpConnector delegate, RateLimitScheduler scheduler) {
+		this(delegate, scheduler, null);
+	}
+
+	public GitHubHttpConnector(HttpConnector delegate, RateLimitScheduler scheduler, ConditionalRequestCache responseCache) {
+		this.delegate = delegate;
+		this.scheduler = scheduler;
+		this.responseCache = responseCache;
+	}
+
+	public RateLimitScheduler getScheduler() {
+		return scheduler;
+	}
+
+	public ConditionalRequestCache getResponseCache() {
+		return responseCache;
+	}
+
+	@Override
+	public HttpURLConnection connect(URL url) throws IOException {
+		scheduler.acquire();
+		return new GitHubHttpConnection(delegate.connect(url));
+	}
+
+	private class GitHubHttpConnection extends DelegatingHttpURLConnection {
+
+		private boolean observed;
+		private boolean prepared;
+		private boolean responded;
+		private ConditionalRequestCache.CachedResponse cached;
+		private boolean notModified;
+
+		private GitHubHttpConnection(HttpURLConnection delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public void connect() throws IOException {
+			prepareRequest();
+			super.connect();
+		}
+
+		@Override
+		public int getResponseCode() throws IOException {
+			int code = respond();
+			return notModified ? HTTP_OK : code;
+		}
+
+		@Override
+		public String getResponseMessage() throws IOException {
+			respond();
+			return notModified ? "OK" : super.getResponseMessage();
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			try {
+				int code = respond();
+				if (notModified) {
+					return new ByteArrayInputStream(cached.getBody());
+				}
+				InputStream in = super.getInputStream();
+				if (code == HTTP_OK && isCacheable()) {
+					return new CapturingInputStream(in, getURL().toString(), delegate.getHeaderFields());
+				}
+				return in;
+			} finally {
+				observeResponse();
+			}
+		}
+
+		@Override
+		public InputStream getErrorStream() {
+			InputStream errorStream = super.getErrorStream();
+			observeResponse();
+			return errorStream;
+		}
+
+		@Override
+		public String getHeaderField(String name) {
+			if (notModified) {
+				String value = cached.getHeader(name);
+				if (value != null) {
+					return value;
+				}
+			}
+			return super.getHeaderField(name);
+		}
+
+		@Override
+		public Map<String, List<String>> getHeaderFields() {
+			return notModified ? cached.getHeaders() : super.getHeaderFields();
+		}
+
+		@Override
+		public String getContentType() {
+			return notModified ? cached.getHeader("Content-Type") : super.getContentType();
+		}
+
+		@Override
+		public String getContentEncoding() {
+			return notModified ? cached.getHeader("Content-Encoding") : super.getContentEncoding();
+		}
+
+		@Override
+		public int getContentLength() {
+			return notModified ? cached.getBody().length : super.getContentLength();
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return notModified ? cached.getBody().length : super.getContentLengthLong();
+		}
+
+		private void prepareRequest() {
+			if (prepared) {
+				return;
+			}
+			prepared = true;
+			if (responseCache != null && "GET".equals(delegate.getRequestMethod())) {
+				cached = responseCache.get(getURL().toString());
+				if (cached != null) {
+					String etag = cached.getHeader("ETag");
+					String lastModified = cached.getHeader("Last-Modified");
+					if (etag != null) {
+						delegate.setRequestProperty("If-None-Match", etag);
+					}
+					if (lastModified != null) {
+						delegate.setRequestProperty("If-Modified-Since", lastModified);
+					}
+				}
+			}
+		}
+
+		private int respond() throws IOException {
+			prepareRequest();
+			int code = super.getResponseCode();
+			if (!responded) {
+				responded = true;
+				observeResponse();
+				if (cached != null) {
+					notModified = code == HTTP_NOT_MODIFIED;
+					if (notModified) {
+						responseCache.notModified();
+					} else {
+						responseCache.modified();
+					}
+				}
+			}
+			return code;
+		}
+
+		private boolean isCacheable() {
+			return responseCache != null && "GET".equals(delegate.getRequestMethod())
+					&& (delegate.getHeaderField("ETag") != null || delegate.getHeaderField("Last-Modified") != null);
+		}
+
+		private void observeResponse() {
+			if (observed) {
+				return;
+			}
+			observed = true;
+			String remaining = delegate.getHeaderField("X-RateLimit-Remaining");
+			String limit = delegate.getHeaderField("X-RateLimit-Limit");
+			String reset = delegate.getHeaderField("X-RateLimit-Reset");
+			if (remaining != null && limit != null && reset != null) {
+				try {
+					scheduler.update(Integer.parseInt(remaining.trim()), Integer.parseInt(limit.trim()), Long.parseLong(reset.trim()));
+				} catch (NumberFormatException e) {
+					// ignore malformed rate limit headers
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Copies a response body while github-api reads it and caches it once it has been read completely. Decompressing readers stop
+	 * before the end of the stream, so the rest is drained on close.
+	 */
+	private class CapturingInputStream extends FilterInputStream {
+
+		private final String url;
+		private final Map<String, List<String>> headers;
+		private ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		private CapturingInputStream(InputStream in, String url, Map<String, List<String>> headers) {
+			super(in);
+			this.url = url;
+			this.headers = headers;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b < 0) {
+				complete();
+			} else {
+				capture(new byte[] { (byte) b }, 0, 1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read < 0) {
+				complete();
+			} else {
+				capture(buffer, offset, read);
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				byte[] buffer = new byte[512];
+				while (body != null && read(buffer, 0, buffer.length) >= 0) {
+					// drain
+				}
+			} finally {
+				super.close();
+			}
+		}
+
+		private void capture(byte[] buffer, int offset, int length) {
+			if (body != null) {
+				if (body.size() + length > ConditionalRequestCache.MAX_BODY_BYTES) {
+					body = null;
+				} else {
+					body.write(buffer, offset, length);
+				}
+			}
+		}
+
+		private void complete() {
+			if (body != null) {
+				responseCache.put(url, new ConditionalRequestCache.CachedResponse(headers, body.toByteArray()));
+				body = null;
+			}
+		}
+
+	}
+
+}
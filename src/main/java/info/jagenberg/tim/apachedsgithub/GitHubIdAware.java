@@ -0,0 +1,37 @@
+package info.jagenberg.tim.apachedsgithub;
+
+/**
+ * A connector that can address users and teams by their numeric GitHub ids instead of resolving their names. The interceptor passes
+ * the ids stored in githubUserId and githubTeamId before it synchronizes an entry, and writes the ids reported to the listener back
+ * to the entries that do not carry them yet.
+ */
+public interface GitHubIdAware {
+
+	/**
+	 * Called with the ids the connector resolved from a name for the first time.
+	 */
+	interface Listener {
+
+		void userResolved(String user, long id);
+
+		void teamResolved(String team, String org, long id);
+
+	}
+
+	void useUserId(String user, long id);
+
+	void useTeamId(String team, String org, long id);
+
+	/**
+	 * The id of the user as far as the connector knows it, without asking GitHub; null if it is unknown.
+	 */
+	Long getUserId(String user);
+
+	/**
+	 * The id of the team as far as the connector knows it, without asking GitHub; null if it is unknown.
+	 */
+	Long getTeamId(String team, String org);
+
+	void setIdListener(Listener listener);
+
+}
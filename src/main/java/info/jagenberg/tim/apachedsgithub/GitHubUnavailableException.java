@@ -0,0 +1,22 @@
+package info.jagenberg.tim.apachedsgithub;
+
+/**
+ * Thrown without calling GitHub when the circuit breaker is open, the bulkhead is full, the rate limit is used up for longer than
+ * the caller may wait or GitHub is not connected. The call can be retried after {@link #getRetryAfterMillis()}.
+ */
+public class GitHubUnavailableException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterMillis;
+
+	public GitHubUnavailableException(String message, long retryAfterMillis) {
+		super(message);
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+}
@@ -0,0 +1,111 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+
+/**
+ * Immutable snapshot of the GitHub attributes of an entry, read in one pass. Unset user, org and user id are null, unset teams are
+ * empty.
+ */
+public final class GitHubUserView {
+
+	private static final GitHubUserView NOT_A_GITHUB_USER = new GitHubUserView(false, null, Collections.<String> emptyList(), null, null);
+
+	private final boolean gitHubUser;
+	private final String user;
+	private final List<String> teams;
+	private final String org;
+	private final Long userId;
+
+	private GitHubUserView(boolean gitHubUser, String user, List<String> teams, String org, Long userId) {
+		this.gitHubUser = gitHubUser;
+		this.user = user;
+		this.teams = teams;
+		this.org = org;
+		this.userId = userId;
+	}
+
+	public static GitHubUserView read(Entry entry) {
+		return read(entry, GitHubAttributeTypes.UNRESOLVED);
+	}
+
+	public static GitHubUserView read(Entry entry, GitHubAttributeTypes types) {
+		Attribute objectClass = entry.get(types.getObjectClass());
+		if (objectClass == null || !objectClass.contains(ObjClassGitHubUser.ATTR_LITERALS.get(ObjClassGitHubUser.OBJCLASS_ATTR_ID))) {
+			return NOT_A_GITHUB_USER;
+		}
+		return new GitHubUserView(true, firstValue(entry.get(types.getUser())), values(entry.get(types.getTeam())), firstValue(entry.get(types.getOrg())),
+				id(entry.get(types.getUserId())));
+	}
+
+	/**
+	 * The numeric GitHub id held by the attribute, or null if it is not set or no number.
+	 */
+	static Long id(Attribute attribute) {
+		String value = firstValue(attribute);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Long.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static String firstValue(Attribute attribute) {
+		if (attribute == null) {
+			return null;
+		}
+		Value<?> value = attribute.get();
+		return value == null ? null : value.getString();
+	}
+
+	private static List<String> values(Attribute attribute) {
+		if (attribute == null || attribute.size() == 0) {
+			return Collections.emptyList();
+		}
+		String[] values = new String[attribute.size()];
+		int i = 0;
+		for (Value<?> value : attribute) {
+			values[i++] = value.getString();
+		}
+		return Collections.unmodifiableList(Arrays.asList(values));
+	}
+
+	public boolean isGitHubUser() {
+		return gitHubUser;
+	}
+
+	/**
+	 * Whether user, teams and org are all set, which is required before anything is synchronized to GitHub.
+	 */
+	public boolean isComplete() {
+		return gitHubUser && user != null && !teams.isEmpty() && org != null;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public List<String> getTeams() {
+		return teams;
+	}
+
+	public String getOrg() {
+		return org;
+	}
+
+	/**
+	 * The GitHub id written back to the entry after its login was first resolved, or null.
+	 */
+	public Long getUserId() {
+		return userId;
+	}
+
+}
@@ -1,177 +1,819 @@
 package info.jagenberg.tim.apachedsgithub;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.collections4.ListUtils;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
-import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.entry.StringValue;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class GithubInterceptor extends BaseInterceptor {
 
+	/**
+	 * Request control marking an operation as part of a bulk load; it must be sent as non-critical.
+	 */
+	public static final String BULK_LOAD_CONTROL_OID = "2.25.338967291031856023576548935457224115483.3.1";
+
 	private static final Logger LOG = LoggerFactory.getLogger(GithubInterceptor.class);
 
-	private GitHubConnector gitHubConnector;
+	// uniqueMember values may carry an optional UID after the DN
+	private static final String UID_SUFFIX = "#'[01]*'B$";
+
+	private final GithubInterceptorConfig config;
+	private final SyncMetrics metrics = new SyncMetrics();
+	private final FanOutExecutor fanOut;
+	private volatile GitHubConnector gitHubConnector;
+	private volatile GitHubIdAware ids;
+	private ExecutorService idWriter;
+	private boolean started;
+	private ExecutorService planner;
+	private final Object planningLock = new Object();
+	private int planning;
+	private SyncQueue syncQueue;
+	private SyncJournal syncJournal;
+	private BulkSyncBuffer bulkBuffer;
+	private ScheduledExecutorService reconcileScheduler;
+	private GitHubAttributeTypes attributeTypes = GitHubAttributeTypes.UNRESOLVED;
+	private InterceptionScope scope = InterceptionScope.ALL;
 
 	public GithubInterceptor() {
+		this(new GithubInterceptorConfig());
+	}
+
+	public GithubInterceptor(GithubInterceptorConfig config) {
 		super();
-		gitHubConnector = new GitHubConnector();
+		this.config = config;
+		fanOut = new FanOutExecutor(config.getSyncInlineParallelism());
+		setGitHubConnector(createConnector(config));
+	}
+
+	private static GitHubConnector createConnector(GithubInterceptorConfig config) {
+		return config.newInstance(config.getConnectorClass(), GitHubConnector.class, "GitHub connector");
+	}
+
+	/**
+	 * Replaces the connector; once the interceptor is initialized, the replaced connector is stopped and the new one started.
+	 */
+	public synchronized void setGitHubConnector(GitHubConnector gitHubConnector) {
+		if (started) {
+			if (ids != null) {
+				ids.setIdListener(null);
+			}
+			this.gitHubConnector.stop();
+		}
+		if (gitHubConnector instanceof RestGitHubConnector) {
+			((RestGitHubConnector) gitHubConnector).bindMetrics(metrics);
+		} else if (gitHubConnector instanceof ShardedGitHubConnector) {
+			((ShardedGitHubConnector) gitHubConnector).bindMetrics(metrics);
+		}
+		ids = gitHubConnector instanceof GitHubIdAware ? (GitHubIdAware) gitHubConnector : null;
+		GitHubConnector guarded = new GuardedGitHubConnector(gitHubConnector, createCircuitBreaker(), config.getBulkheadMaxConcurrent(),
+				config.getBulkheadMaxWaitMillis());
+		KnownMemberships memberships = gitHubConnector instanceof KnownMemberships ? (KnownMemberships) gitHubConnector : null;
+		this.gitHubConnector = new InstrumentedGitHubConnector(guarded, metrics, memberships);
+		if (started) {
+			if (ids != null && idWriter != null) {
+				ids.setIdListener(new IdWriteBack());
+			}
+			this.gitHubConnector.start();
+		}
 	}
 
-	public void setGitHubConnector(GitHubConnector gitHubConnector) {
-		this.gitHubConnector = gitHubConnector;
+	private CircuitBreaker createCircuitBreaker() {
+		if (!config.isCircuitBreakerEnabled()) {
+			return null;
+		}
+		CircuitBreaker circuitBreaker = new CircuitBreaker(config.getCircuitWindow(), config.getCircuitFailureRate(), config.getCircuitSlowCallMillis(),
+				config.getCircuitOpenTimeMillis());
+		metrics.setCircuitState(() -> circuitBreaker.getState().name());
+		return circuitBreaker;
+	}
+
+	public SyncMetrics getMetrics() {
+		return metrics;
+	}
+
+	SyncQueue getSyncQueue() {
+		return syncQueue;
+	}
+
+	BulkSyncBuffer getBulkBuffer() {
+		return bulkBuffer;
+	}
+
+	private int getPendingOperations() {
+		SyncQueue queue = syncQueue;
+		BulkSyncBuffer buffer = bulkBuffer;
+		return (queue != null ? queue.size() : 0) + (buffer != null ? buffer.size() : 0);
 	}
 
 	@Override
-	public void add(final AddOperationContext addContext) throws LdapException {
-		Entry entry = addContext.getEntry();
-		if (ObjClassGitHubUser.isObjectClassGitHubUser(entry)) {
-			try {
-				String user = ObjClassGitHubUser.getUser(entry);
-				List<String> teams = ObjClassGitHubUser.getTeams(entry);
-				String org = ObjClassGitHubUser.getOrg(entry);
-				teams.stream().forEach(t -> gitHubConnector.addUser(user, t, org));
-			} catch (IllegalArgumentException e) {
-				// don't interact with github if not all arguments are valid/set
+	public void init(DirectoryService directoryService) throws LdapException {
+		super.init(directoryService);
+		attributeTypes = GitHubAttributeTypes.resolve(directoryService.getSchemaManager());
+		scope = InterceptionScope.compile(config, directoryService.getSchemaManager(), attributeTypes);
+		synchronized (this) {
+			if (config.isIdWriteBack()) {
+				idWriter = Executors.newSingleThreadExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "github-id-writer");
+					thread.setDaemon(true);
+					return thread;
+				});
+				if (ids != null) {
+					ids.setIdListener(new IdWriteBack());
+				}
 			}
+			gitHubConnector.start();
+			started = true;
+		}
+		if (config.isAsyncSync()) {
+			syncJournal = openJournal(directoryService);
+			syncQueue = new SyncQueue(this::syncOperation, syncJournal, config.getSyncWorkers(), config.getSyncCapacity(), config.getSyncEnqueueTimeoutMillis(),
+					config.getSyncCoalesceWindowMillis(), config.getSyncStarvationLimit());
+			syncQueue.bindMetrics(metrics);
+			syncQueue.start();
+			planner = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "github-sync-planner");
+				thread.setDaemon(true);
+				return thread;
+			});
+			if (syncJournal != null) {
+				syncQueue.replay(syncJournal.getRecovered());
+			}
+		}
+		if (config.isBulkEnabled()) {
+			// the add rate only switches asynchronous synchronization to bulk mode, inline callers expect GitHub to be up to date
+			bulkBuffer = new BulkSyncBuffer(this::syncOperation, this::prefetchMembers, syncJournal, config.getBulkSize(),
+					config.getSyncEnqueueTimeoutMillis(), config.getBulkFlushDelayMillis(), config.getBulkPrefetch(), syncQueue != null ? config.getBulkAddRate() : 0,
+					config.getSyncWorkers());
+			bulkBuffer.start();
+		}
+		metrics.setQueueDepth(this::getPendingOperations);
+		long reconcileInterval = config.getReconcileIntervalMillis();
+		if (reconcileInterval > 0) {
+			reconcileScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "github-reconcile-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+			reconcileScheduler.scheduleWithFixedDelay(this::scheduledReconcile, reconcileInterval, reconcileInterval, TimeUnit.MILLISECONDS);
+		}
+		if (config.isJmxEnabled()) {
+			metrics.register();
 		}
-		next(addContext);
 	}
 
 	@Override
-	public void modify(final ModifyOperationContext modifyContext) throws LdapException {
-		Entry entry = modifyContext.getEntry();
-		if (ObjClassGitHubUser.isObjectClassGitHubUser(entry)) {
-			String oldUser = "";
-			List<String> oldTeams = new ArrayList<>();
-			String oldOrg = "";
+	public void destroy() {
+		metrics.unregister();
+		if (reconcileScheduler != null) {
+			reconcileScheduler.shutdownNow();
+			reconcileScheduler = null;
+		}
+		if (planner != null) {
+			planner.shutdown();
 			try {
-				oldUser = ObjClassGitHubUser.getUser(entry);
-			} catch (IllegalArgumentException e) {
-				// leave empty if not set
+				if (!planner.awaitTermination(config.getSyncShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+					LOG.warn("GitHub planner shut down with pending directory operations");
+					planner.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				planner.shutdownNow();
 			}
+			planner = null;
+		}
+		if (bulkBuffer != null) {
+			bulkBuffer.shutdown(config.getSyncShutdownTimeoutMillis());
+			bulkBuffer = null;
+		}
+		if (syncQueue != null) {
+			syncQueue.shutdown(config.getSyncShutdownTimeoutMillis());
+			syncQueue = null;
+		}
+		if (syncJournal != null) {
 			try {
-				oldTeams = ObjClassGitHubUser.getTeams(entry);
-			} catch (IllegalArgumentException e) {
-				// leave empty if not set
+				syncJournal.close();
+			} catch (IOException e) {
+				LOG.warn("Could not close GitHub sync journal", e);
+			}
+			syncJournal = null;
+		}
+		fanOut.shutdown();
+		synchronized (this) {
+			started = false;
+			if (idWriter != null) {
+				if (ids != null) {
+					ids.setIdListener(null);
+				}
+				idWriter.shutdownNow();
+				idWriter = null;
 			}
+			gitHubConnector.stop();
+		}
+		super.destroy();
+	}
+
+	private SyncJournal openJournal(DirectoryService directoryService) throws LdapException {
+		if (!config.isJournalEnabled()) {
+			return null;
+		}
+		File directory;
+		if (config.getJournalDir() != null) {
+			directory = new File(config.getJournalDir());
+		} else if (directoryService.getInstanceLayout() != null) {
+			directory = directoryService.getInstanceLayout().getRunDirectory();
+		} else {
+			LOG.warn("No directory for the GitHub sync journal, pending GitHub operations will be lost on restart");
+			return null;
+		}
+		try {
+			return new SyncJournal(directory, config.getJournalSize(), config.getJournalFlushIntervalMillis());
+		} catch (IOException e) {
+			throw new LdapOtherException("Could not open GitHub sync journal in " + directory, e);
+		}
+	}
+
+	public ReconciliationReport reconcile() throws LdapException {
+		Reconciler reconciler = new Reconciler(gitHubConnector, attributeTypes, scope, this::resolveLogin, config.getReconcileParallelism(),
+				config.isReconcileDryRun());
+		AttributeType objectClass = schemaManager.lookupAttributeTypeRegistry(SchemaConstants.OBJECT_CLASS_AT);
+		String userClass = ObjClassGitHubUser.ATTR_LITERALS.get(ObjClassGitHubUser.OBJCLASS_ATTR_ID);
+		ExprNode filter = new OrNode(new EqualityNode<String>(objectClass, new StringValue(userClass)),
+				new EqualityNode<String>(objectClass, new StringValue(GitHubGroupView.OBJCLASS_NAME)));
+		for (Dn baseDn : getReconcileBaseDns()) {
+			Cursor<Entry> cursor = directoryService.getAdminSession().search(baseDn, SearchScope.SUBTREE, filter, AliasDerefMode.NEVER_DEREF_ALIASES,
+					SchemaConstants.ALL_USER_ATTRIBUTES);
 			try {
-				oldOrg = ObjClassGitHubUser.getOrg(entry);
-			} catch (IllegalArgumentException e) {
-				// leave empty if not set
-			}
-			String newUser = getNewUser(modifyContext.getModItems(), oldUser);
-			List<String> newTeams = getNewTeams(oldTeams, modifyContext.getModItems(), oldTeams);
-			String newOrg = getNewOrg(modifyContext.getModItems(), oldOrg);
-			boolean userChanged = oldUser != newUser;
-			List<String> addedTeams = ListUtils.subtract(newTeams, oldTeams);
-			List<String> removedTeams = ListUtils.subtract(oldTeams, newTeams);
-			boolean orgChanged = oldOrg != newOrg;
-			if (userChanged || orgChanged) {
-				updateUserOrgTeams(oldUser, oldTeams, oldOrg, newUser, newTeams, newOrg);
-			} else {
-				if (!addedTeams.isEmpty() || !removedTeams.isEmpty()) {
-					updateUserOrgTeams(oldUser, removedTeams, oldOrg, newUser, addedTeams, newOrg);
+				reconciler.scan(cursor);
+			} finally {
+				cursor.close();
+			}
+		}
+		return reconciler.reconcile();
+	}
+
+	private List<Dn> getReconcileBaseDns() throws LdapException {
+		List<Dn> baseDns = new ArrayList<>();
+		List<String> configured = config.getReconcileBaseDns();
+		if (configured.isEmpty()) {
+			for (String suffix : directoryService.getPartitionNexus().listSuffixes()) {
+				Dn suffixDn = new Dn(schemaManager, suffix);
+				if (!suffixDn.equals(new Dn(schemaManager, SchemaConstants.OU_SCHEMA))) {
+					baseDns.add(suffixDn);
 				}
 			}
+		} else {
+			for (String baseDn : configured) {
+				baseDns.add(new Dn(schemaManager, baseDn));
+			}
+		}
+		return baseDns;
+	}
+
+	private void scheduledReconcile() {
+		try {
+			reconcile();
+		} catch (LdapException | RuntimeException e) {
+			LOG.warn("Scheduled GitHub reconciliation failed", e);
+		}
+	}
+
+	@Override
+	public void add(final AddOperationContext addContext) throws LdapException {
+		if (!scope.covers(addContext.getDn(), addContext.getEntry())) {
+			metrics.ldapOperation(0);
+			next(addContext);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			SyncPlan plan = planAdd(addContext.getEntry());
+			boolean bulk = isBulkLoad(addContext, true);
+			if (syncQueue != null) {
+				next(addContext);
+				dispatch(plan, bulk);
+				return;
+			}
+			List<SyncOperation> operations = plan.resolve();
+			metrics.ldapOperation(operations.size());
+			if (isBuffered(bulk, operations)) {
+				next(addContext);
+				bulkBuffer.addAll(operations);
+			} else {
+				fanOut.execute(operations, this::applyOperation);
+				addKnownIds(addContext.getEntry());
+				next(addContext);
+			}
+		} finally {
+			metrics.getLdapAddLatency().recordSince(start);
+		}
+	}
+
+	@Override
+	public void modify(final ModifyOperationContext modifyContext) throws LdapException {
+		if (!scope.covers(modifyContext.getDn(), modifyContext.getEntry())) {
+			metrics.ldapOperation(0);
+			next(modifyContext);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			SyncPlan plan = planModify(modifyContext.getEntry(), modifyContext.getModItems());
+			dropStaleIds(modifyContext.getEntry(), modifyContext.getModItems());
+			boolean bulk = isBulkLoad(modifyContext, false);
+			if (syncQueue != null) {
+				next(modifyContext);
+				dispatch(plan, bulk);
+				return;
+			}
+			List<SyncOperation> operations = plan.resolve();
+			metrics.ldapOperation(operations.size());
+			if (isBuffered(bulk, operations)) {
+				next(modifyContext);
+				bulkBuffer.addAll(operations);
+			} else {
+				fanOut.execute(operations, this::applyOperation);
+				next(modifyContext);
+			}
+		} finally {
+			metrics.getLdapModifyLatency().recordSince(start);
 		}
-		next(modifyContext);
 	}
 
 	@Override
 	public void delete(final DeleteOperationContext deleteContext) throws LdapException {
-		Entry entry = deleteContext.getEntry();
-		if (ObjClassGitHubUser.isObjectClassGitHubUser(entry)) {
-			try {
-				String user = ObjClassGitHubUser.getUser(entry);
-				List<String> teams = ObjClassGitHubUser.getTeams(entry);
-				String org = ObjClassGitHubUser.getOrg(entry);
-				teams.stream().forEach(t -> removeUserFromTeam(user, t, org));
-			} catch (IllegalArgumentException e) {
-				// don't interact with github if not all arguments are valid/set
+		if (!scope.covers(deleteContext.getDn(), deleteContext.getEntry())) {
+			metrics.ldapOperation(0);
+			next(deleteContext);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			SyncPlan plan = planDelete(deleteContext.getEntry());
+			boolean bulk = isBulkLoad(deleteContext, false);
+			if (syncQueue != null) {
+				next(deleteContext);
+				dispatch(plan, bulk);
+				return;
 			}
+			List<SyncOperation> operations = plan.resolve();
+			metrics.ldapOperation(operations.size());
+			if (isBuffered(bulk, operations)) {
+				next(deleteContext);
+				bulkBuffer.addAll(operations);
+			} else {
+				fanOut.execute(operations, this::applyOperation);
+				next(deleteContext);
+			}
+		} finally {
+			metrics.getLdapDeleteLatency().recordSince(start);
 		}
-		next(deleteContext);
 	}
 
-	private void removeUserFromTeam(String user, String t, String org) {
+	private boolean isBulkLoad(OperationContext context, boolean add) {
+		if (bulkBuffer == null) {
+			return false;
+		}
+		boolean fastAdds = add && bulkBuffer.recordAdd();
+		return fastAdds || context.hasRequestControl(BULK_LOAD_CONTROL_OID);
+	}
+
+	private boolean isBuffered(boolean bulk, List<SyncOperation> operations) {
+		// only changes of memberships still waiting in the buffer have to follow it, everything else may overtake the bulk load
+		return bulkBuffer != null && (bulk || bulkBuffer.isBusy(operations));
+	}
+
+	/**
+	 * Hands the plan of an operation that already reached the directory to the sync queue or the bulk buffer. A plan that has to read
+	 * the directory is resolved on the planner thread, and so is every plan behind it, so that changes reach the queue in order.
+	 */
+	private void dispatch(SyncPlan plan, boolean bulk) {
+		synchronized (planningLock) {
+			if (!plan.isResolved() || planning > 0) {
+				planning++;
+				try {
+					planner.execute(() -> resolve(plan, bulk));
+				} catch (RejectedExecutionException e) {
+					planning--;
+					LOG.warn("GitHub planner is shut down, dropping the GitHub changes of a directory operation");
+				}
+				return;
+			}
+		}
+		route(plan.getOperations(), bulk);
+	}
+
+	private void resolve(SyncPlan plan, boolean bulk) {
 		try {
-			gitHubConnector.removeUser(user, t, org);
-		} catch (IllegalArgumentException e) {
-			// ignore if we couldn't remove a user
-			LOG.debug("Could not remove " + user + " from " + t + " in " + org);
+			route(plan.resolve(), bulk);
+		} catch (RuntimeException e) {
+			LOG.warn("Could not plan GitHub operations", e);
+		} finally {
+			synchronized (planningLock) {
+				planning--;
+				planningLock.notifyAll();
+			}
 		}
 	}
 
-	private void updateUserOrgTeams(String oldUser, List<String> oldTeams, String oldOrg, String newUser, List<String> newTeams, String newOrg) {
-		newTeams.stream().forEach(nt -> gitHubConnector.addUser(newUser, nt, newOrg));
-		oldTeams.stream().forEach(ot -> {
-			try {
-				gitHubConnector.removeUser(oldUser, ot, oldOrg);
-			} catch (IllegalArgumentException e) {
-				LOG.debug("Could not remove GitHub user");
+	private void route(List<SyncOperation> operations, boolean bulk) {
+		metrics.ldapOperation(operations.size());
+		for (SyncOperation operation : operations) {
+			if (isBuffered(bulk, operation)) {
+				bulkBuffer.add(operation);
+			} else {
+				syncQueue.enqueue(operation);
 			}
-		});
+		}
 	}
 
-	private String getNewUser(List<Modification> mods, String defaultUser) {
-		List<String> newValues = getNewValues(new ArrayList<>(), mods, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, 1);
-		if (newValues.isEmpty()) {
-			return defaultUser;
-		} else {
-			return newValues.get(0);
+	/**
+	 * Sends every operation after the change of its membership that is still held by the bulk buffer or the sync queue, so that a
+	 * later change never overtakes an earlier one; only memberships held by neither follow the bulk load detection.
+	 */
+	private boolean isBuffered(boolean bulk, SyncOperation operation) {
+		if (bulkBuffer == null) {
+			return false;
 		}
+		if (bulkBuffer.isBusy(operation)) {
+			return true;
+		}
+		return bulk && !syncQueue.isBusy(operation);
 	}
 
-	private String getNewOrg(List<Modification> mods, String defaultOrg) {
-		List<String> newValues = getNewValues(new ArrayList<>(), mods, ObjClassGitHubUser.GITHUB_ORG_ATTR_ID, 1);
-		if (newValues.isEmpty()) {
-			return defaultOrg;
-		} else {
-			return newValues.get(0);
+	/**
+	 * Waits until the planner handed all plans to the sync queue and the queue is drained.
+	 */
+	boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (planningLock) {
+			while (planning > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(planningLock, remaining);
+			}
 		}
+		return syncQueue.awaitIdle(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
 	}
 
-	private List<String> getNewTeams(List<String> origTeams, List<Modification> mods, List<String> defaultTeams) {
-		List<String> newValues = getNewValues(origTeams, mods, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, Integer.MAX_VALUE);
-		if (newValues.isEmpty()) {
-			return defaultTeams;
-		} else {
-			return newValues;
+	private void prefetchMembers(SyncOperation operation) {
+		// one listing of the team lets the connector skip the changes that are already in place
+		gitHubConnector.getMembers(operation.getTeam(), operation.getOrg());
+	}
+
+	SyncPlan planAdd(Entry entry) {
+		SyncPlan plan = new SyncPlan();
+		GitHubUserView view = GitHubUserView.read(entry, attributeTypes);
+		useIds(view);
+		// don't interact with github if not all arguments are valid/set
+		if (view.isComplete()) {
+			for (String team : view.getTeams()) {
+				plan.add(SyncOperation.add(view.getUser(), team, view.getOrg()));
+			}
+		}
+		planGroup(entry, true, plan, null);
+		return plan;
+	}
+
+	SyncPlan planModify(Entry entry, List<Modification> mods) {
+		SyncPlan plan = new SyncPlan();
+		OtherGrants grants = new OtherGrants(entry.getDn());
+		GitHubUserView view = GitHubUserView.read(entry, attributeTypes);
+		if (view.isGitHubUser()) {
+			useIds(view);
+			ModificationDiff diff = ModificationDiff.compute(view, mods, attributeTypes);
+			for (SyncOperation operation : diff.plan()) {
+				// a renamed login loses its teams whatever else grants them, the groups now grant the new one
+				if (operation.getType() == SyncOperation.Type.REMOVE && ModificationDiff.sameValue(operation.getUser(), diff.getUser())) {
+					planRemoval(operation, entry.getDn(), plan, grants);
+				} else {
+					plan.add(operation);
+				}
+			}
 		}
+		GitHubGroupView group = GitHubGroupView.read(entry, attributeTypes);
+		if (group.isGitHubTeam()) {
+			useIds(group);
+			GroupMemberDiff diff = GroupMemberDiff.compute(group, mods, attributeTypes);
+			if (!diff.isEmpty()) {
+				plan.defer(() -> diff.plan(this::resolveLogin, grants));
+			}
+		}
+		return plan;
 	}
 
-	private List<String> getNewValues(List<String> origValues, List<Modification> mods, String oid, int max) {
-		List<String> newValues = new ArrayList<>(origValues);
-		Stream<Modification> oidMods = mods.stream().filter(mod -> mod.getAttribute().getId().equals(oid));
-		oidMods.forEach(mod -> applyMod(mod, newValues));
-		if (newValues.size() > max) {
-			throw new IllegalArgumentException("Only " + max + " " + ObjClassGitHubUser.ATTR_LITERALS.get(oid) + " allowed");
+	SyncPlan planDelete(Entry entry) {
+		SyncPlan plan = new SyncPlan();
+		OtherGrants grants = new OtherGrants(entry.getDn());
+		GitHubUserView view = GitHubUserView.read(entry, attributeTypes);
+		useIds(view);
+		// don't interact with github if not all arguments are valid/set
+		if (view.isComplete()) {
+			for (String team : view.getTeams()) {
+				planRemoval(SyncOperation.remove(view.getUser(), team, view.getOrg()), entry.getDn(), plan, grants);
+			}
 		}
-		return newValues;
+		planGroup(entry, false, plan, grants);
+		return plan;
 	}
 
-	private void applyMod(Modification mod, List<String> newValues) {
-		switch (mod.getOperation()) {
-		case ADD_ATTRIBUTE:
-			addAttributeValues(mod, newValues);
-			break;
+	/**
+	 * Removes the githubUser entry from a team unless a githubTeam group listing the entry still grants it.
+	 */
+	private static void planRemoval(SyncOperation operation, Dn user, SyncPlan plan, OtherGrants grants) {
+		plan.defer(() -> grants.grants(user.getName(), operation.getTeam(), operation.getOrg()) ? Collections.<SyncOperation> emptyList()
+				: Collections.singletonList(operation));
+	}
+
+	private void planGroup(Entry entry, boolean add, SyncPlan plan, OtherGrants grants) {
+		GitHubGroupView group = GitHubGroupView.read(entry, attributeTypes);
+		if (group.isComplete()) {
+			useIds(group);
+			plan.defer(() -> {
+				List<SyncOperation> operations = new ArrayList<>();
+				for (String member : group.getMembers().values()) {
+					String login = resolveLogin(member);
+					if (login != null) {
+						for (String team : group.getTeams()) {
+							if (add) {
+								operations.add(SyncOperation.add(login, team, group.getOrg()));
+							} else if (!grants.grants(member, team, group.getOrg())) {
+								operations.add(SyncOperation.remove(login, team, group.getOrg()));
+							}
+						}
+					}
+				}
+				return operations;
+			});
+		}
+	}
 
-		case REMOVE_ATTRIBUTE:
-			removeAttributeValues(mod, newValues);
+	/**
+	 * The GitHub login of a group member, read from the githubUserName of its entry, or null if the entry carries no login.
+	 */
+	String resolveLogin(String member) {
+		String dn = member.replaceFirst(UID_SUFFIX, "");
+		try {
+			Entry entry = directoryService.getAdminSession().lookup(new Dn(schemaManager, dn), SchemaConstants.OBJECT_CLASS_AT,
+					ObjClassGitHubUser.ATTR_LITERALS.get(ObjClassGitHubUser.GITHUB_USER_ATTR_ID),
+					ObjClassGitHubUser.ATTR_LITERALS.get(ObjClassGitHubUser.GITHUB_USER_ID_ATTR_ID));
+			if (entry == null) {
+				return null;
+			}
+			GitHubUserView view = GitHubUserView.read(entry, attributeTypes);
+			useIds(view);
+			return view.getUser();
+		} catch (LdapException e) {
+			LOG.debug("Could not look up group member " + member + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * The normalized DN of a member value, without the optional UID of a uniqueMember value.
+	 */
+	private String memberDn(String member) {
+		String dn = member.replaceFirst(UID_SUFFIX, "");
+		try {
+			return new Dn(schemaManager, dn).getNormName();
+		} catch (LdapException e) {
+			return dn;
+		}
+	}
+
+	private void useIds(GitHubUserView view) {
+		GitHubIdAware known = ids;
+		if (known != null && view.getUser() != null && view.getUserId() != null) {
+			known.useUserId(view.getUser(), view.getUserId());
+		}
+	}
+
+	private void useIds(GitHubGroupView group) {
+		GitHubIdAware known = ids;
+		if (known != null && group.isComplete() && group.getTeamId() != null) {
+			known.useTeamId(group.getTeams().get(0), group.getOrg(), group.getTeamId());
+		}
+	}
+
+	/**
+	 * An entry added inline does not exist yet when the connector reports the ids it resolved, so they are added to the entry itself.
+	 */
+	private void addKnownIds(Entry entry) {
+		GitHubIdAware known = ids;
+		if (idWriter == null || known == null) {
+			return;
+		}
+		try {
+			GitHubUserView view = GitHubUserView.read(entry, attributeTypes);
+			Long userId = view.isComplete() && entry.get(attributeTypes.getUserId()) == null ? known.getUserId(view.getUser()) : null;
+			if (userId != null) {
+				entry.add(attributeTypes.getUserId(), String.valueOf(userId));
+			}
+			GitHubGroupView group = GitHubGroupView.read(entry, attributeTypes);
+			boolean singleTeam = group.isComplete() && group.getTeams().size() == 1;
+			Long teamId = singleTeam && entry.get(attributeTypes.getTeamId()) == null ? known.getTeamId(group.getTeams().get(0), group.getOrg()) : null;
+			if (teamId != null) {
+				entry.add(attributeTypes.getTeamId(), String.valueOf(teamId));
+			}
+		} catch (LdapException e) {
+			LOG.debug("Could not add GitHub ids to " + entry.getDn() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * A stored id belongs to the name it was resolved for, so a modification renaming the user, team or organization drops it until
+	 * the new name is resolved. Modifications of the id itself are left alone.
+	 */
+	private void dropStaleIds(Entry entry, List<Modification> mods) throws LdapException {
+		boolean hasUserId = entry.get(attributeTypes.getUserId()) != null;
+		boolean hasTeamId = entry.get(attributeTypes.getTeamId()) != null;
+		if (!hasUserId && !hasTeamId) {
+			return;
+		}
+		boolean userChanged = false;
+		boolean teamChanged = false;
+		for (Modification mod : mods) {
+			String oid = ModificationDiff.oid(mod.getAttribute());
+			if (attributeTypes.getUserId().getOid().equals(oid)) {
+				hasUserId = false;
+			} else if (attributeTypes.getTeamId().getOid().equals(oid)) {
+				hasTeamId = false;
+			} else if (attributeTypes.getUser().getOid().equals(oid)) {
+				userChanged = true;
+			} else if (attributeTypes.getTeam().getOid().equals(oid) || attributeTypes.getOrg().getOid().equals(oid)) {
+				teamChanged = true;
+			}
+		}
+		if (hasUserId && userChanged) {
+			mods.add(new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, attributeTypes.getUserId()));
+		}
+		if (hasTeamId && teamChanged) {
+			mods.add(new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, attributeTypes.getTeamId()));
+		}
+	}
+
+	private void writeId(ExprNode filter, boolean team, long id, String name) {
+		try {
+			idWriter.execute(() -> {
+				try {
+					for (Dn baseDn : getReconcileBaseDns()) {
+						Cursor<Entry> cursor = directoryService.getAdminSession().search(baseDn, SearchScope.SUBTREE, filter,
+								AliasDerefMode.NEVER_DEREF_ALIASES, SchemaConstants.ALL_USER_ATTRIBUTES);
+						try {
+							for (Entry entry : cursor) {
+								writeId(entry, team, id);
+							}
+						} finally {
+							cursor.close();
+						}
+					}
+				} catch (Exception e) {
+					LOG.warn("Could not write the GitHub id of " + name + ": " + e.getMessage());
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the interceptor is being destroyed, the id is written after the next resolution
+		}
+	}
+
+	private void writeId(Entry entry, boolean team, long id) throws LdapException {
+		AttributeType idType = team ? attributeTypes.getTeamId() : attributeTypes.getUserId();
+		boolean eligible = team ? GitHubGroupView.read(entry, attributeTypes).getTeams().size() == 1
+				: GitHubUserView.read(entry, attributeTypes).isGitHubUser();
+		if (eligible && entry.get(idType) == null && scope.covers(entry.getDn(), entry)) {
+			Modification mod = new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, idType, String.valueOf(id));
+			directoryService.getAdminSession().modify(entry.getDn(), mod);
+		}
+	}
+
+	/**
+	 * Writes the ids the connector resolved to the entries naming the user or team, in the background.
+	 */
+	private final class IdWriteBack implements GitHubIdAware.Listener {
+
+		@Override
+		public void userResolved(String user, long id) {
+			writeId(new EqualityNode<String>(attributeTypes.getUser(), new StringValue(user)), false, id, "user " + user);
+		}
+
+		@Override
+		public void teamResolved(String team, String org, long id) {
+			ExprNode filter = new AndNode(new EqualityNode<String>(attributeTypes.getTeam(), new StringValue(team)),
+					new EqualityNode<String>(attributeTypes.getOrg(), new StringValue(org)));
+			writeId(filter, true, id, team + " in " + org);
+		}
+
+	}
+
+	/**
+	 * Tells whether an entry other than the changed one still grants a member a team: a githubUser entry naming the team, or a
+	 * githubTeam group listing the member. Members are compared by DN, leaving out the optional UID of uniqueMember values. The entries
+	 * granting a team are read with a single search the first time the team is asked for. If that search fails, the members are kept,
+	 * so a directory error never revokes GitHub access.
+	 */
+	private final class OtherGrants implements GroupMemberDiff.OtherSources {
+
+		private final String changed;
+		private final Map<String, Set<String>> granted = new HashMap<>();
+
+		private OtherGrants(Dn changed) {
+			this.changed = changed.getNormName();
+		}
+
+		@Override
+		public boolean grants(String member, String team, String org) {
+			String teamKey = ModificationDiff.normalize(org) + '/' + ModificationDiff.normalize(team);
+			if (!granted.containsKey(teamKey)) {
+				granted.put(teamKey, search(team, org));
+			}
+			Set<String> members = granted.get(teamKey);
+			return members == null || members.contains(memberDn(member));
+		}
+
+		private Set<String> search(String team, String org) {
+			ExprNode filter = new AndNode(new EqualityNode<String>(attributeTypes.getTeam(), new StringValue(team)),
+					new EqualityNode<String>(attributeTypes.getOrg(), new StringValue(org)));
+			Set<String> members = new HashSet<>();
+			try {
+				for (Dn baseDn : getReconcileBaseDns()) {
+					Cursor<Entry> cursor = directoryService.getAdminSession().search(baseDn, SearchScope.SUBTREE, filter, AliasDerefMode.NEVER_DEREF_ALIASES,
+							SchemaConstants.ALL_USER_ATTRIBUTES);
+					try {
+						for (Entry entry : cursor) {
+							if (!entry.getDn().getNormName().equals(changed)) {
+								addGranted(entry, members);
+							}
+						}
+					} finally {
+						cursor.close();
+					}
+				}
+				return members;
+			} catch (Exception e) {
+				LOG.warn("Could not look up the entries granting " + team + " in " + org + ", keeping its members: " + e.getMessage());
+				return null;
+			}
+		}
+
+		private void addGranted(Entry entry, Set<String> members) {
+			if (GitHubUserView.read(entry, attributeTypes).isComplete()) {
+				members.add(entry.getDn().getNormName());
+			}
+			GitHubGroupView group = GitHubGroupView.read(entry, attributeTypes);
+			if (group.isComplete()) {
+				for (String member : group.getMembers().values()) {
+					members.add(memberDn(member));
+				}
+			}
+		}
+
+	}
+
+	private void applyOperation(SyncOperation operation) {
+		switch (operation.getType()) {
+		case ADD:
+			gitHubConnector.addUser(operation.getUser(), operation.getTeam(), operation.getOrg());
 			break;
 
-		case REPLACE_ATTRIBUTE:
-			replaceAttributeValues(mod, newValues);
+		case REMOVE:
+			removeUserFromTeam(operation.getUser(), operation.getTeam(), operation.getOrg());
 			break;
 
 		default:
@@ -179,22 +821,33 @@ public class GithubInterceptor extends BaseInterceptor {
 		}
 	}
 
-	private void addAttributeValues(Modification mod, List<String> newValues) {
-		for (Value<?> val : mod.getAttribute()) {
-			newValues.add(val.getString());
-		}
-	}
-
-	private void removeAttributeValues(Modification mod, List<String> newValues) {
-		for (Value<?> val : mod.getAttribute()) {
-			newValues.remove(val.getString());
+	private void syncOperation(SyncOperation operation) {
+		while (true) {
+			try {
+				applyOperation(operation);
+				return;
+			} catch (GitHubUnavailableException e) {
+				// queue workers are not directory threads, so wait for GitHub instead of dropping the change
+				try {
+					TimeUnit.MILLISECONDS.sleep(Math.max(1L, e.getRetryAfterMillis()));
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					LOG.warn("Could not sync " + operation + ": " + e.getMessage());
+					return;
+				}
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				LOG.warn("Could not sync " + operation + ": " + e.getMessage());
+				return;
+			}
 		}
 	}
 
-	private void replaceAttributeValues(Modification mod, List<String> newValues) {
-		newValues.clear();
-		for (Value<?> val : mod.getAttribute()) {
-			newValues.add(val.getString());
+	private void removeUserFromTeam(String user, String t, String org) {
+		try {
+			gitHubConnector.removeUser(user, t, org);
+		} catch (IllegalArgumentException e) {
+			// ignore if we couldn't remove a user
+			LOG.debug("Could not remove " + user + " from " + t + " in " + org);
 		}
 	}
 
@@ -0,0 +1,499 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+public class GithubInterceptorConfig {
+
+	public static final String PREFIX = "githubinterceptor.";
+
+	public static final String OAUTH_TOKEN = "oauthtoken";
+	public static final String OAUTH_TOKENS = "oauthtokens";
+	public static final String API_URL = "api.url";
+	public static final String CONNECTOR_CLASS = "connector.class";
+
+	public static final String TRANSPORT_CLASS = "transport.class";
+	public static final String TRANSPORT_CONNECT_TIMEOUT = "transport.connecttimeout";
+	public static final String TRANSPORT_READ_TIMEOUT = "transport.readtimeout";
+	public static final String TRANSPORT_MAX_CONNECTIONS = "transport.maxconnections";
+	public static final String HEALTH_INTERVAL = "health.interval";
+	public static final String RECONNECT_BACKOFF = "reconnect.backoff";
+	public static final String RECONNECT_MAX_BACKOFF = "reconnect.maxbackoff";
+
+	public static final String SCOPE_INCLUDE = "scope.include";
+	public static final String SCOPE_EXCLUDE = "scope.exclude";
+	public static final String SCOPE_OBJECT_CLASSES = "scope.objectclasses";
+
+	public static final String SYNC_MODE = "sync.mode";
+	public static final String SYNC_WORKERS = "sync.workers";
+	public static final String SYNC_CAPACITY = "sync.capacity";
+	public static final String SYNC_ENQUEUE_TIMEOUT = "sync.enqueuetimeout";
+	public static final String SYNC_SHUTDOWN_TIMEOUT = "sync.shutdowntimeout";
+	public static final String SYNC_COALESCE_WINDOW = "sync.coalescewindow";
+	public static final String SYNC_INLINE_PARALLELISM = "sync.inlineparallelism";
+	public static final String SYNC_STARVATION_LIMIT = "sync.starvationlimit";
+
+	public static final String JOURNAL_ENABLED = "journal.enabled";
+	public static final String JOURNAL_DIR = "journal.dir";
+	public static final String JOURNAL_SIZE = "journal.size";
+	public static final String JOURNAL_FLUSH_INTERVAL = "journal.flushinterval";
+
+	public static final String RATELIMIT_RATE = "ratelimit.rate";
+	public static final String RATELIMIT_BURST = "ratelimit.burst";
+	public static final String RATELIMIT_RESERVE = "ratelimit.reserve";
+	public static final String RATELIMIT_MAX_WAIT = "ratelimit.maxwait";
+	public static final String RATELIMIT_INLINE_MAX_WAIT = "ratelimit.inlinemaxwait";
+
+	public static final String CACHE_ORG_TTL = "cache.org.ttl";
+	public static final String CACHE_ORG_SIZE = "cache.org.size";
+	public static final String CACHE_TEAM_TTL = "cache.team.ttl";
+	public static final String CACHE_TEAM_REFRESH_INTERVAL = "cache.team.refreshinterval";
+	public static final String CACHE_USER_TTL = "cache.user.ttl";
+	public static final String CACHE_USER_SIZE = "cache.user.size";
+	public static final String CACHE_MEMBERSHIP_TTL = "cache.membership.ttl";
+	public static final String CACHE_MEMBERSHIP_SIZE = "cache.membership.size";
+	public static final String CACHE_HTTP_ENABLED = "cache.http.enabled";
+	public static final String CACHE_HTTP_TTL = "cache.http.ttl";
+	public static final String CACHE_HTTP_SIZE = "cache.http.size";
+
+	public static final String GRAPHQL_ENABLED = "graphql.enabled";
+	public static final String GRAPHQL_URL = "graphql.url";
+	public static final String GRAPHQL_PAGE_SIZE = "graphql.pagesize";
+	public static final String GRAPHQL_TTL = "graphql.ttl";
+	public static final String GRAPHQL_WARMUP = "graphql.warmup";
+
+	public static final String RECONCILE_BASE_DNS = "reconcile.basedns";
+	public static final String RECONCILE_PARALLELISM = "reconcile.parallelism";
+	public static final String RECONCILE_INTERVAL = "reconcile.interval";
+	public static final String RECONCILE_DRY_RUN = "reconcile.dryrun";
+
+	public static final String CIRCUIT_ENABLED = "circuit.enabled";
+	public static final String CIRCUIT_WINDOW = "circuit.window";
+	public static final String CIRCUIT_FAILURE_RATE = "circuit.failurerate";
+	public static final String CIRCUIT_SLOW_CALL = "circuit.slowcall";
+	public static final String CIRCUIT_OPEN_TIME = "circuit.opentime";
+	public static final String BULKHEAD_MAX_CONCURRENT = "bulkhead.maxconcurrent";
+	public static final String BULKHEAD_MAX_WAIT = "bulkhead.maxwait";
+
+	public static final String BULK_ENABLED = "bulk.enabled";
+	public static final String BULK_SIZE = "bulk.size";
+	public static final String BULK_FLUSH_DELAY = "bulk.flushdelay";
+	public static final String BULK_PREFETCH = "bulk.prefetch";
+	public static final String BULK_ADD_RATE = "bulk.addrate";
+
+	public static final String IDS_WRITE_BACK = "ids.writeback";
+
+	public static final String JMX_ENABLED = "jmx.enabled";
+
+	public static final String SYNC_MODE_ASYNC = "async";
+	public static final String SYNC_MODE_INLINE = "inline";
+
+	private final Properties properties;
+
+	public GithubInterceptorConfig() {
+		this(System.getProperties());
+	}
+
+	public GithubInterceptorConfig(Properties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * A copy of this configuration with one setting replaced.
+	 */
+	public GithubInterceptorConfig with(String key, String value) {
+		Properties overridden = new Properties(properties);
+		overridden.setProperty(PREFIX + key, value);
+		return new GithubInterceptorConfig(overridden);
+	}
+
+	public String getString(String key, String defaultValue) {
+		String value = properties.getProperty(PREFIX + key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	public int getInt(String key, int defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value " + value + " for " + PREFIX + key, e);
+		}
+	}
+
+	public long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value " + value + " for " + PREFIX + key, e);
+		}
+	}
+
+	public List<String> getList(String key) {
+		String value = getString(key, null);
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		List<String> values = new ArrayList<>();
+		for (String element : value.split(";")) {
+			if (!element.trim().isEmpty()) {
+				values.add(element.trim());
+			}
+		}
+		return values;
+	}
+
+	public double getDouble(String key, double defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value " + value + " for " + PREFIX + key, e);
+		}
+	}
+
+	/**
+	 * Instantiates a configured class through its constructor taking this configuration, or its no-arg constructor.
+	 */
+	public <T> T newInstance(String className, Class<T> type, String description) {
+		try {
+			Class<? extends T> instanceClass = Class.forName(className).asSubclass(type);
+			try {
+				return instanceClass.getConstructor(GithubInterceptorConfig.class).newInstance(this);
+			} catch (NoSuchMethodException e) {
+				return instanceClass.getConstructor().newInstance();
+			}
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("Could not create " + description + " " + className, e);
+		}
+	}
+
+	public boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value);
+	}
+
+	public String getOAuthToken() {
+		return getString(OAUTH_TOKEN, null);
+	}
+
+	public List<String> getOAuthTokens() {
+		return getList(OAUTH_TOKENS);
+	}
+
+	/**
+	 * Tokens reserved for single organizations, configured as oauthtokens.&lt;organization&gt;, keyed by the lower cased
+	 * organization.
+	 */
+	public Map<String, List<String>> getOrgOAuthTokens() {
+		Map<String, List<String>> tokens = new TreeMap<>();
+		String prefix = PREFIX + OAUTH_TOKENS + ".";
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith(prefix) && name.length() > prefix.length()) {
+				List<String> orgTokens = getList(name.substring(PREFIX.length()));
+				if (!orgTokens.isEmpty()) {
+					tokens.put(name.substring(prefix.length()).toLowerCase(Locale.ROOT), orgTokens);
+				}
+			}
+		}
+		return tokens;
+	}
+
+	public String getApiUrl() {
+		return getString(API_URL, null);
+	}
+
+	public String getConnectorClass() {
+		return getString(CONNECTOR_CLASS, RestGitHubConnector.class.getName());
+	}
+
+	public String getTransportClass() {
+		return getString(TRANSPORT_CLASS, TimeoutHttpConnector.class.getName());
+	}
+
+	public int getTransportConnectTimeoutMillis() {
+		return getInt(TRANSPORT_CONNECT_TIMEOUT, 10000);
+	}
+
+	public int getTransportReadTimeoutMillis() {
+		return getInt(TRANSPORT_READ_TIMEOUT, 30000);
+	}
+
+	public int getTransportMaxConnections() {
+		return getInt(TRANSPORT_MAX_CONNECTIONS, 0);
+	}
+
+	public List<String> getScopeIncludes() {
+		return getList(SCOPE_INCLUDE);
+	}
+
+	public List<String> getScopeExcludes() {
+		return getList(SCOPE_EXCLUDE);
+	}
+
+	public List<String> getScopeObjectClasses() {
+		List<String> objectClasses = getList(SCOPE_OBJECT_CLASSES);
+		if (objectClasses.isEmpty()) {
+			return Arrays.asList(ObjClassGitHubUser.ATTR_LITERALS.get(ObjClassGitHubUser.OBJCLASS_ATTR_ID), GitHubGroupView.OBJCLASS_NAME);
+		}
+		return objectClasses;
+	}
+
+	public long getHealthIntervalMillis() {
+		return getLong(HEALTH_INTERVAL, 60000L);
+	}
+
+	public long getReconnectBackoffMillis() {
+		return getLong(RECONNECT_BACKOFF, 1000L);
+	}
+
+	public long getReconnectMaxBackoffMillis() {
+		return getLong(RECONNECT_MAX_BACKOFF, 300000L);
+	}
+
+	public boolean isAsyncSync() {
+		String mode = getString(SYNC_MODE, SYNC_MODE_ASYNC);
+		if (SYNC_MODE_ASYNC.equalsIgnoreCase(mode)) {
+			return true;
+		} else if (SYNC_MODE_INLINE.equalsIgnoreCase(mode)) {
+			return false;
+		}
+		throw new IllegalArgumentException("Unknown " + PREFIX + SYNC_MODE + " " + mode);
+	}
+
+	public int getSyncWorkers() {
+		return getInt(SYNC_WORKERS, 4);
+	}
+
+	public int getSyncCapacity() {
+		return getInt(SYNC_CAPACITY, 10000);
+	}
+
+	public long getSyncEnqueueTimeoutMillis() {
+		return getLong(SYNC_ENQUEUE_TIMEOUT, 30000L);
+	}
+
+	public long getSyncShutdownTimeoutMillis() {
+		return getLong(SYNC_SHUTDOWN_TIMEOUT, 10000L);
+	}
+
+	public long getSyncCoalesceWindowMillis() {
+		return getLong(SYNC_COALESCE_WINDOW, 500L);
+	}
+
+	public int getSyncInlineParallelism() {
+		return getInt(SYNC_INLINE_PARALLELISM, 4);
+	}
+
+	public int getSyncStarvationLimit() {
+		return getInt(SYNC_STARVATION_LIMIT, 10);
+	}
+
+	public boolean isJournalEnabled() {
+		return getBoolean(JOURNAL_ENABLED, true);
+	}
+
+	public String getJournalDir() {
+		return getString(JOURNAL_DIR, null);
+	}
+
+	public int getJournalSize() {
+		return getInt(JOURNAL_SIZE, 8 * 1024 * 1024);
+	}
+
+	public long getJournalFlushIntervalMillis() {
+		return getLong(JOURNAL_FLUSH_INTERVAL, 50L);
+	}
+
+	public double getRateLimitPermitsPerSecond() {
+		return getDouble(RATELIMIT_RATE, 10d);
+	}
+
+	public int getRateLimitBurst() {
+		return getInt(RATELIMIT_BURST, 20);
+	}
+
+	public int getRateLimitReserve() {
+		return getInt(RATELIMIT_RESERVE, 50);
+	}
+
+	public long getRateLimitMaxWaitMillis() {
+		return getLong(RATELIMIT_MAX_WAIT, 3700000L);
+	}
+
+	/**
+	 * In inline mode the LDAP threads call GitHub themselves and must not be parked until the rate limit resets.
+	 */
+	public long getRateLimitInlineMaxWaitMillis() {
+		return getLong(RATELIMIT_INLINE_MAX_WAIT, 2000L);
+	}
+
+	public long getOrgCacheTtlMillis() {
+		return getLong(CACHE_ORG_TTL, 3600000L);
+	}
+
+	public int getOrgCacheSize() {
+		return getInt(CACHE_ORG_SIZE, 100);
+	}
+
+	public long getTeamCacheTtlMillis() {
+		return getLong(CACHE_TEAM_TTL, 600000L);
+	}
+
+	public long getTeamRefreshIntervalMillis() {
+		return getLong(CACHE_TEAM_REFRESH_INTERVAL, 10000L);
+	}
+
+	public long getUserCacheTtlMillis() {
+		return getLong(CACHE_USER_TTL, 3600000L);
+	}
+
+	public int getUserCacheSize() {
+		return getInt(CACHE_USER_SIZE, 10000);
+	}
+
+	public long getMembershipCacheTtlMillis() {
+		return getLong(CACHE_MEMBERSHIP_TTL, 300000L);
+	}
+
+	public int getMembershipCacheSize() {
+		return getInt(CACHE_MEMBERSHIP_SIZE, 1000);
+	}
+
+	public boolean isHttpCacheEnabled() {
+		return getBoolean(CACHE_HTTP_ENABLED, true);
+	}
+
+	public long getHttpCacheTtlMillis() {
+		return getLong(CACHE_HTTP_TTL, 86400000L);
+	}
+
+	public int getHttpCacheSize() {
+		return getInt(CACHE_HTTP_SIZE, 1000);
+	}
+
+	public boolean isGraphQlEnabled() {
+		return getBoolean(GRAPHQL_ENABLED, false);
+	}
+
+	/**
+	 * The GraphQL endpoint, by default derived from the API URL: https://api.github.com/graphql for github.com and
+	 * https://host/api/graphql for a GitHub Enterprise API URL ending in /api/v3.
+	 */
+	public String getGraphQlUrl() {
+		String apiUrl = getApiUrl();
+		String defaultUrl = "https://api.github.com/graphql";
+		if (apiUrl != null) {
+			apiUrl = apiUrl.replaceAll("/+$", "");
+			defaultUrl = (apiUrl.endsWith("/v3") ? apiUrl.substring(0, apiUrl.length() - 3) : apiUrl) + "/graphql";
+		}
+		return getString(GRAPHQL_URL, defaultUrl);
+	}
+
+	public int getGraphQlPageSize() {
+		return getInt(GRAPHQL_PAGE_SIZE, GraphQlMembershipReader.MAX_PAGE_SIZE);
+	}
+
+	public long getGraphQlTtlMillis() {
+		return getLong(GRAPHQL_TTL, 60000L);
+	}
+
+	public List<String> getGraphQlWarmupOrgs() {
+		return getList(GRAPHQL_WARMUP);
+	}
+
+	public List<String> getReconcileBaseDns() {
+		return getList(RECONCILE_BASE_DNS);
+	}
+
+	public int getReconcileParallelism() {
+		return getInt(RECONCILE_PARALLELISM, 4);
+	}
+
+	public long getReconcileIntervalMillis() {
+		return getLong(RECONCILE_INTERVAL, 0L);
+	}
+
+	public boolean isReconcileDryRun() {
+		return getBoolean(RECONCILE_DRY_RUN, false);
+	}
+
+	public boolean isCircuitBreakerEnabled() {
+		return getBoolean(CIRCUIT_ENABLED, true);
+	}
+
+	public int getCircuitWindow() {
+		return getInt(CIRCUIT_WINDOW, 20);
+	}
+
+	public double getCircuitFailureRate() {
+		return getDouble(CIRCUIT_FAILURE_RATE, 0.5d);
+	}
+
+	public long getCircuitSlowCallMillis() {
+		return getLong(CIRCUIT_SLOW_CALL, 10000L);
+	}
+
+	public long getCircuitOpenTimeMillis() {
+		return getLong(CIRCUIT_OPEN_TIME, 30000L);
+	}
+
+	public int getBulkheadMaxConcurrent() {
+		return getInt(BULKHEAD_MAX_CONCURRENT, 8);
+	}
+
+	public long getBulkheadMaxWaitMillis() {
+		return getLong(BULKHEAD_MAX_WAIT, 1000L);
+	}
+
+	public boolean isBulkEnabled() {
+		return getBoolean(BULK_ENABLED, true);
+	}
+
+	public int getBulkSize() {
+		return getInt(BULK_SIZE, 10000);
+	}
+
+	public long getBulkFlushDelayMillis() {
+		return getLong(BULK_FLUSH_DELAY, 2000L);
+	}
+
+	public int getBulkPrefetch() {
+		return getInt(BULK_PREFETCH, 5);
+	}
+
+	public int getBulkAddRate() {
+		return getInt(BULK_ADD_RATE, 50);
+	}
+
+	public boolean isIdWriteBack() {
+		return getBoolean(IDS_WRITE_BACK, true);
+	}
+
+	public boolean isJmxEnabled() {
+		return getBoolean(JMX_ENABLED, true);
+	}
+
+}
@@ -0,0 +1,152 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.kohsuke.github.HttpConnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Reads the teams of an organization together with their members from the GitHub GraphQL API: one query returns a page of teams
+ * with the first page of members of each, instead of a request per team and page of members. Teams with more members than fit on a
+ * page are completed with follow-up queries for that team only.
+ */
+public class GraphQlMembershipReader {
+
+	static final int MAX_PAGE_SIZE = 100;
+
+	private static final String TEAMS_QUERY = "query($org: String!, $cursor: String, $pageSize: Int!) {"
+			+ " organization(login: $org) { teams(first: $pageSize, after: $cursor) { pageInfo { hasNextPage endCursor }"
+			+ " nodes { name slug members(first: $pageSize) { pageInfo { hasNextPage endCursor } nodes { login } } } } } }";
+	private static final String MEMBERS_QUERY = "query($org: String!, $team: String!, $cursor: String, $pageSize: Int!) {"
+			+ " organization(login: $org) { team(slug: $team) { members(first: $pageSize, after: $cursor) {"
+			+ " pageInfo { hasNextPage endCursor } nodes { login } } } } }";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final URL endpoint;
+	private final String token;
+	private final HttpConnector connector;
+	private final int pageSize;
+
+	public GraphQlMembershipReader(String endpoint, String token, HttpConnector connector, int pageSize) {
+		if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("GraphQL page size must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		try {
+			this.endpoint = new URL(endpoint);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid GraphQL endpoint " + endpoint, e);
+		}
+		this.token = token;
+		this.connector = connector;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * The logins of the members of every team of the organization, keyed by team name.
+	 */
+	public Map<String, Set<String>> readTeams(String org) {
+		Map<String, Set<String>> teams = new LinkedHashMap<>();
+		String cursor = null;
+		do {
+			JsonNode page = organization(query(TEAMS_QUERY, org, null, cursor), org).path("teams");
+			for (JsonNode team : page.path("nodes")) {
+				Set<String> members = new HashSet<>();
+				String memberCursor = addLogins(team.path("members"), members);
+				while (memberCursor != null) {
+					JsonNode next = organization(query(MEMBERS_QUERY, org, team.path("slug").asText(), memberCursor), org).path("team");
+					if (next.isMissingNode() || next.isNull()) {
+						throw new IllegalArgumentException("Could not find team " + team.path("name").asText());
+					}
+					memberCursor = addLogins(next.path("members"), members);
+				}
+				teams.put(team.path("name").asText(), members);
+			}
+			cursor = nextCursor(page);
+		} while (cursor != null);
+		return teams;
+	}
+
+	private JsonNode query(String query, String org, String team, String cursor) {
+		ObjectNode request = mapper.createObjectNode();
+		request.put("query", query);
+		ObjectNode variables = request.putObject("variables");
+		variables.put("org", org);
+		if (team != null) {
+			variables.put("team", team);
+		}
+		if (cursor == null) {
+			variables.putNull("cursor");
+		} else {
+			variables.put("cursor", cursor);
+		}
+		variables.put("pageSize", pageSize);
+		JsonNode response;
+		try {
+			HttpURLConnection connection = connector.connect(endpoint);
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			if (token != null) {
+				connection.setRequestProperty("Authorization", "bearer " + token);
+			}
+			connection.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(mapper.writeValueAsBytes(request));
+			}
+			int code = connection.getResponseCode();
+			if (code != HttpURLConnection.HTTP_OK) {
+				InputStream error = connection.getErrorStream();
+				if (error != null) {
+					error.close();
+				}
+				throw new IOException("GitHub answered " + code + " " + connection.getResponseMessage());
+			}
+			try (InputStream in = connection.getInputStream()) {
+				response = mapper.readTree(in);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not read teams of " + org, e);
+		}
+		JsonNode data = response.path("data");
+		JsonNode errors = response.path("errors");
+		if ((data.isMissingNode() || data.isNull()) && errors.size() > 0) {
+			throw new IllegalArgumentException("Could not read teams of " + org + ": " + errors.path(0).path("message").asText());
+		}
+		return data;
+	}
+
+	private static JsonNode organization(JsonNode data, String org) {
+		JsonNode organization = data.path("organization");
+		if (organization.isMissingNode() || organization.isNull()) {
+			throw new IllegalArgumentException("Could not find organization " + org);
+		}
+		return organization;
+	}
+
+	/**
+	 * Adds the logins of a page of members and returns the cursor of the next page, if there is one.
+	 */
+	private static String addLogins(JsonNode page, Set<String> logins) {
+		for (JsonNode member : page.path("nodes")) {
+			logins.add(member.path("login").asText());
+		}
+		return nextCursor(page);
+	}
+
+	private static String nextCursor(JsonNode page) {
+		JsonNode pageInfo = page.path("pageInfo");
+		return pageInfo.path("hasNextPage").asBoolean() ? pageInfo.path("endCursor").asText() : null;
+	}
+
+}
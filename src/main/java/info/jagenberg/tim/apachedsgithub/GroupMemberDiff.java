@@ -0,0 +1,310 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+
+/**
+ * Derives the GitHub operations that follow a modify operation on a githubTeam group. Member changes are taken from the modification
+ * items alone: every added or removed value is checked against the previous member attribute by a hash lookup, so changing a few
+ * members of a group with ten thousands costs a few lookups, not a pass over the group. Only replacing or clearing a member
+ * attribute walks the previous values, and only teams added to or removed from the group, or a new organization, synchronize all
+ * members. A member is only removed from a team if neither the other member attribute nor any other source still grants it.
+ */
+public final class GroupMemberDiff {
+
+	/**
+	 * Grants teams to group members independently of the group at hand, such as their githubUser entries or other githubTeam groups.
+	 */
+	@FunctionalInterface
+	public interface OtherSources {
+
+		boolean grants(String member, String team, String org);
+
+	}
+
+	private final GitHubGroupView before;
+	private final MemberDelta member;
+	private final MemberDelta uniqueMember;
+	private final Map<String, String> teams;
+	private final String org;
+
+	private GroupMemberDiff(GitHubGroupView before, MemberDelta member, MemberDelta uniqueMember, Map<String, String> teams, String org) {
+		this.before = before;
+		this.member = member;
+		this.uniqueMember = uniqueMember;
+		this.teams = teams;
+		this.org = org;
+	}
+
+	public static GroupMemberDiff compute(GitHubGroupView before, List<Modification> mods, GitHubAttributeTypes types) {
+		MemberDelta member = new MemberDelta(before.getMember());
+		MemberDelta uniqueMember = new MemberDelta(before.getUniqueMember());
+		Map<String, String> orgs = ModificationDiff.valueSet(before.getOrg());
+		Map<String, String> teams = new LinkedHashMap<>();
+		for (String team : before.getTeams()) {
+			teams.put(ModificationDiff.normalize(team), team);
+		}
+		String memberOid = types.getMember().getOid();
+		String uniqueMemberOid = types.getUniqueMember().getOid();
+		String teamOid = types.getTeam().getOid();
+		String orgOid = types.getOrg().getOid();
+		for (Modification mod : mods) {
+			String oid = ModificationDiff.oid(mod.getAttribute());
+			if (memberOid.equals(oid)) {
+				member.apply(mod);
+			} else if (uniqueMemberOid.equals(oid)) {
+				uniqueMember.apply(mod);
+			} else if (teamOid.equals(oid)) {
+				ModificationDiff.apply(mod, teams);
+			} else if (orgOid.equals(oid)) {
+				ModificationDiff.apply(mod, orgs);
+			}
+		}
+		return new GroupMemberDiff(before, member, uniqueMember, teams, ModificationDiff.singleValue(orgs, ObjClassGitHubUser.GITHUB_ORG_ATTR_ID));
+	}
+
+	/**
+	 * The member values added by the modification, keyed by their normalized value.
+	 */
+	public Map<String, String> getAddedMembers() {
+		Map<String, String> added = new LinkedHashMap<>();
+		member.addedTo(added);
+		uniqueMember.addedTo(added);
+		return added;
+	}
+
+	/**
+	 * The member values removed by the modification and not kept in the other member attribute, keyed by their normalized value.
+	 */
+	public Map<String, String> getRemovedMembers() {
+		Map<String, String> removed = new LinkedHashMap<>();
+		member.removedTo(removed, uniqueMember);
+		uniqueMember.removedTo(removed, member);
+		return removed;
+	}
+
+	/**
+	 * Whether the modification leaves the members, teams and organization of the group as they were, so there is nothing to plan.
+	 */
+	public boolean isEmpty() {
+		if (!before.isGitHubTeam()) {
+			return true;
+		}
+		Set<String> oldTeams = new HashSet<>();
+		for (String team : before.getTeams()) {
+			oldTeams.add(ModificationDiff.normalize(team));
+		}
+		return oldTeams.equals(teams.keySet()) && ModificationDiff.sameValue(before.getOrg(), org) && getAddedMembers().isEmpty()
+				&& getRemovedMembers().isEmpty();
+	}
+
+	/**
+	 * The GitHub operations that follow the change, additions first, then removals. Member values are turned into GitHub logins with
+	 * the given function, which returns null for members that are no GitHub users; each member is resolved once.
+	 */
+	public List<SyncOperation> plan(Function<String, String> logins) {
+		return plan(logins, (member, team, org) -> false);
+	}
+
+	/**
+	 * Like {@link #plan(Function)}, but leaves out the removals of teams that other sources still grant the member.
+	 */
+	public List<SyncOperation> plan(Function<String, String> logins, OtherSources otherSources) {
+		List<SyncOperation> operations = new ArrayList<>();
+		if (!before.isGitHubTeam()) {
+			return operations;
+		}
+		Function<String, String> resolver = memoize(logins);
+		boolean oldSynced = before.isComplete();
+		boolean newSynced = !teams.isEmpty() && org != null;
+		Map<String, String> oldTeams = new LinkedHashMap<>();
+		if (oldSynced) {
+			for (String team : before.getTeams()) {
+				oldTeams.put(ModificationDiff.normalize(team), team);
+			}
+		}
+		boolean sameOrg = ModificationDiff.sameValue(before.getOrg(), org);
+		List<String> keptTeams = new ArrayList<>();
+		List<String> addedTeams = new ArrayList<>();
+		if (newSynced) {
+			for (Map.Entry<String, String> team : teams.entrySet()) {
+				(sameOrg && oldTeams.containsKey(team.getKey()) ? keptTeams : addedTeams).add(team.getValue());
+			}
+		}
+		List<String> removedTeams = new ArrayList<>();
+		for (Map.Entry<String, String> team : oldTeams.entrySet()) {
+			if (!sameOrg || !newSynced || !teams.containsKey(team.getKey())) {
+				removedTeams.add(team.getValue());
+			}
+		}
+		if (!keptTeams.isEmpty()) {
+			plan(operations, getAddedMembers().values(), keptTeams, org, resolver, null);
+		}
+		if (!addedTeams.isEmpty()) {
+			plan(operations, membersAfter().values(), addedTeams, org, resolver, null);
+		}
+		if (!keptTeams.isEmpty()) {
+			plan(operations, getRemovedMembers().values(), keptTeams, org, resolver, otherSources);
+		}
+		if (!removedTeams.isEmpty()) {
+			plan(operations, before.getMembers().values(), removedTeams, before.getOrg(), resolver, otherSources);
+		}
+		return operations;
+	}
+
+	/**
+	 * Plans additions without other sources, removals otherwise.
+	 */
+	private static void plan(List<SyncOperation> operations, Collection<String> members, List<String> teams, String org, Function<String, String> logins,
+			OtherSources otherSources) {
+		for (String member : members) {
+			String login = logins.apply(member);
+			if (login != null) {
+				for (String team : teams) {
+					if (otherSources == null) {
+						operations.add(SyncOperation.add(login, team, org));
+					} else if (!otherSources.grants(member, team, org)) {
+						operations.add(SyncOperation.remove(login, team, org));
+					}
+				}
+			}
+		}
+	}
+
+	private Map<String, String> membersAfter() {
+		Map<String, String> members = before.getMembers();
+		members.keySet().removeAll(getRemovedMembers().keySet());
+		members.putAll(getAddedMembers());
+		return members;
+	}
+
+	private static Function<String, String> memoize(Function<String, String> logins) {
+		Map<String, String> resolved = new HashMap<>();
+		Set<String> unresolved = new HashSet<>();
+		return member -> {
+			String login = resolved.get(member);
+			if (login == null && !unresolved.contains(member)) {
+				login = logins.apply(member);
+				if (login == null) {
+					unresolved.add(member);
+				} else {
+					resolved.put(member, login);
+				}
+			}
+			return login;
+		};
+	}
+
+	/**
+	 * Added and removed values of one member attribute, relative to its value before the operation.
+	 */
+	private static final class MemberDelta {
+
+		private final Attribute before;
+		private final Map<String, Value<?>> added = new LinkedHashMap<>();
+		private final Map<String, Value<?>> removed = new LinkedHashMap<>();
+
+		private MemberDelta(Attribute before) {
+			this.before = before;
+		}
+
+		private void apply(Modification mod) {
+			Attribute attribute = mod.getAttribute();
+			switch (mod.getOperation()) {
+			case ADD_ATTRIBUTE:
+				for (Value<?> value : attribute) {
+					add(value);
+				}
+				break;
+
+			case REMOVE_ATTRIBUTE:
+				if (attribute.size() == 0) {
+					replace(attribute);
+				}
+				for (Value<?> value : attribute) {
+					remove(value);
+				}
+				break;
+
+			case REPLACE_ATTRIBUTE:
+				replace(attribute);
+				break;
+
+			default:
+				break;
+			}
+		}
+
+		private void add(Value<?> value) {
+			String key = GitHubGroupView.key(value);
+			if (removed.remove(key) == null && !wasMember(value)) {
+				added.putIfAbsent(key, value);
+			}
+		}
+
+		private void remove(Value<?> value) {
+			String key = GitHubGroupView.key(value);
+			if (added.remove(key) == null && wasMember(value)) {
+				removed.putIfAbsent(key, value);
+			}
+		}
+
+		private void replace(Attribute values) {
+			added.clear();
+			removed.clear();
+			Set<String> keys = new HashSet<>();
+			for (Value<?> value : values) {
+				keys.add(GitHubGroupView.key(value));
+				if (!wasMember(value)) {
+					added.putIfAbsent(GitHubGroupView.key(value), value);
+				}
+			}
+			if (before != null) {
+				for (Value<?> value : before) {
+					String key = GitHubGroupView.key(value);
+					if (!keys.contains(key)) {
+						removed.put(key, value);
+					}
+				}
+			}
+		}
+
+		private boolean wasMember(Value<?> value) {
+			return before != null && before.contains(value);
+		}
+
+		private boolean isMemberAfter(String key, String value) {
+			if (added.containsKey(key)) {
+				return true;
+			}
+			return !removed.containsKey(key) && before != null && before.contains(value);
+		}
+
+		private void addedTo(Map<String, String> members) {
+			for (Map.Entry<String, Value<?>> value : added.entrySet()) {
+				members.putIfAbsent(value.getKey(), value.getValue().getString());
+			}
+		}
+
+		private void removedTo(Map<String, String> members, MemberDelta other) {
+			for (Map.Entry<String, Value<?>> value : removed.entrySet()) {
+				if (!other.isMemberAfter(value.getKey(), value.getValue().getString())) {
+					members.putIfAbsent(value.getKey(), value.getValue().getString());
+				}
+			}
+		}
+
+	}
+
+}
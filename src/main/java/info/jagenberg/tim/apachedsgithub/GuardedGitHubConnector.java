@@ -0,0 +1,127 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * GitHubConnector decorator isolating the directory from GitHub outages. A bulkhead bounds the number of threads waiting on GitHub
+ * at the same time, and a circuit breaker rejects calls while GitHub keeps failing or answering slowly. Rejected calls fail fast
+ * with GitHubUnavailableException. IllegalArgumentException means GitHub answered and does not count as a failure.
+ * GitHubUnavailableException raised by the delegate, as when the rate limit is used up or GitHub is not connected, means the call
+ * never reached GitHub and is not counted at all, and time spent waiting for the rate limit does not make a call slow.
+ */
+public class GuardedGitHubConnector implements GitHubConnector {
+
+	private final GitHubConnector delegate;
+	private final CircuitBreaker circuitBreaker;
+	private final Semaphore bulkhead;
+	private final long bulkheadWaitMillis;
+
+	public GuardedGitHubConnector(GitHubConnector delegate, CircuitBreaker circuitBreaker, int maxConcurrentCalls, long bulkheadWaitMillis) {
+		this.delegate = delegate;
+		this.circuitBreaker = circuitBreaker;
+		this.bulkhead = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls) : null;
+		this.bulkheadWaitMillis = bulkheadWaitMillis;
+	}
+
+	public GitHubConnector getDelegate() {
+		return delegate;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	@Override
+	public void start() {
+		delegate.start();
+	}
+
+	@Override
+	public void stop() {
+		delegate.stop();
+	}
+
+	@Override
+	public void addUser(String user, String team, String org) {
+		call(() -> {
+			delegate.addUser(user, team, org);
+			return null;
+		});
+	}
+
+	@Override
+	public void removeUser(String user, String team, String org) {
+		call(() -> {
+			delegate.removeUser(user, team, org);
+			return null;
+		});
+	}
+
+	@Override
+	public boolean hasUser(String user, String team, String org) {
+		return call(() -> delegate.hasUser(user, team, org));
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		return call(() -> delegate.hasUser(user));
+	}
+
+	@Override
+	public Set<String> getMembers(String team, String org) {
+		return call(() -> delegate.getMembers(team, org));
+	}
+
+	private <T> T call(Supplier<T> call) {
+		acquireBulkhead();
+		try {
+			if (circuitBreaker == null) {
+				return call.get();
+			}
+			circuitBreaker.acquirePermission();
+			long start = System.nanoTime();
+			long waited = RateLimitScheduler.getWaitedNanos();
+			boolean succeeded = false;
+			boolean reached = true;
+			try {
+				T result = call.get();
+				succeeded = true;
+				return result;
+			} catch (IllegalArgumentException e) {
+				succeeded = true;
+				throw e;
+			} catch (GitHubUnavailableException e) {
+				reached = false;
+				throw e;
+			} finally {
+				if (reached) {
+					circuitBreaker.onResult(succeeded, System.nanoTime() - start - (RateLimitScheduler.getWaitedNanos() - waited));
+				} else {
+					circuitBreaker.releasePermission();
+				}
+			}
+		} finally {
+			if (bulkhead != null) {
+				bulkhead.release();
+			}
+		}
+	}
+
+	private void acquireBulkhead() {
+		if (bulkhead == null) {
+			return;
+		}
+		try {
+			if (!bulkhead.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS)) {
+				throw new GitHubUnavailableException("Too many concurrent GitHub calls", bulkheadWaitMillis);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a GitHub call slot", e);
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Set;
+
+/**
+ * GitHubConnector decorator recording the latency and outcome of every call in {@link SyncMetrics}. Additions and removals the
+ * connector already knows to be in place are counted as skipped instead, and leave the latencies of the calls to GitHub alone.
+ */
+public class InstrumentedGitHubConnector implements GitHubConnector {
+
+	private final GitHubConnector delegate;
+	private final SyncMetrics metrics;
+	private final KnownMemberships memberships;
+
+	public InstrumentedGitHubConnector(GitHubConnector delegate, SyncMetrics metrics) {
+		this(delegate, metrics, null);
+	}
+
+	/**
+	 * @param memberships
+	 *            the memberships known to the connector that skips changes already in place, or null
+	 */
+	public InstrumentedGitHubConnector(GitHubConnector delegate, SyncMetrics metrics, KnownMemberships memberships) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+		this.memberships = memberships;
+	}
+
+	public GitHubConnector getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void start() {
+		delegate.start();
+	}
+
+	@Override
+	public void stop() {
+		delegate.stop();
+	}
+
+	@Override
+	public void addUser(String user, String team, String org) {
+		boolean skipped = isKnownMember(user, team, org, true);
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			delegate.addUser(user, team, org);
+			succeeded = true;
+		} finally {
+			if (!skipped) {
+				metrics.getGitHubAddUserLatency().recordSince(start);
+			}
+			if (!succeeded) {
+				metrics.gitHubFailure();
+			} else if (skipped) {
+				metrics.gitHubSkip();
+			} else {
+				metrics.gitHubAdd();
+			}
+		}
+	}
+
+	@Override
+	public void removeUser(String user, String team, String org) {
+		boolean skipped = isKnownMember(user, team, org, false);
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			delegate.removeUser(user, team, org);
+			succeeded = true;
+		} finally {
+			if (!skipped) {
+				metrics.getGitHubRemoveUserLatency().recordSince(start);
+			}
+			if (!succeeded) {
+				metrics.gitHubFailure();
+			} else if (skipped) {
+				metrics.gitHubSkip();
+			} else {
+				metrics.gitHubRemove();
+			}
+		}
+	}
+
+	private boolean isKnownMember(String user, String team, String org, boolean member) {
+		return memberships != null && Boolean.valueOf(member).equals(memberships.isKnownMember(user, team, org));
+	}
+
+	@Override
+	public boolean hasUser(String user, String team, String org) {
+		long start = System.nanoTime();
+		try {
+			return delegate.hasUser(user, team, org);
+		} finally {
+			metrics.getGitHubHasUserLatency().recordSince(start);
+		}
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		long start = System.nanoTime();
+		try {
+			return delegate.hasUser(user);
+		} finally {
+			metrics.getGitHubHasUserLatency().recordSince(start);
+		}
+	}
+
+	@Override
+	public Set<String> getMembers(String team, String org) {
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			Set<String> members = delegate.getMembers(team, org);
+			succeeded = true;
+			return members;
+		} finally {
+			metrics.getGitHubGetMembersLatency().recordSince(start);
+			if (!succeeded) {
+				metrics.gitHubFailure();
+			}
+		}
+	}
+
+}
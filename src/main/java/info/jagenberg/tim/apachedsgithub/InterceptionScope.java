@@ -0,0 +1,123 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+/**
+ * Decides before any GitHub attribute is read whether an operation can concern GitHub at all: the entry has to lie outside every
+ * excluded subtree, below one of the included subtrees if any are configured, and carry one of the configured object classes. The
+ * subtrees and object classes are compiled once, so the check costs a few DN comparisons and one attribute lookup.
+ */
+public final class InterceptionScope {
+
+	public static final InterceptionScope ALL = new InterceptionScope(Collections.<Dn> emptyList(), Collections.<Dn> emptyList(), null,
+			GitHubAttributeTypes.UNRESOLVED.getObjectClass());
+
+	private final List<Dn> includes;
+	private final List<Dn> excludes;
+	private final Set<String> objectClasses;
+	private final AttributeType objectClassType;
+
+	InterceptionScope(List<Dn> includes, List<Dn> excludes, Set<String> objectClasses, AttributeType objectClassType) {
+		this.includes = includes;
+		this.excludes = excludes;
+		this.objectClasses = objectClasses;
+		this.objectClassType = objectClassType;
+	}
+
+	/**
+	 * Compiles the configured subtrees and object classes. Object classes known to the schema manager match by any of their names
+	 * and their OID, others only by the configured name.
+	 */
+	public static InterceptionScope compile(GithubInterceptorConfig config, SchemaManager schemaManager, GitHubAttributeTypes types)
+			throws LdapInvalidDnException {
+		Set<String> objectClasses = new HashSet<>();
+		for (String name : config.getScopeObjectClasses()) {
+			objectClasses.add(normalize(name));
+			if (schemaManager != null) {
+				try {
+					ObjectClass objectClass = schemaManager.lookupObjectClassRegistry(name);
+					objectClasses.add(objectClass.getOid());
+					for (String alias : objectClass.getNames()) {
+						objectClasses.add(normalize(alias));
+					}
+				} catch (LdapException e) {
+					// not loaded (yet), entries are matched by the configured name
+				}
+			}
+		}
+		return new InterceptionScope(dns(config.getScopeIncludes(), schemaManager), dns(config.getScopeExcludes(), schemaManager), objectClasses,
+				types.getObjectClass());
+	}
+
+	private static List<Dn> dns(List<String> names, SchemaManager schemaManager) throws LdapInvalidDnException {
+		List<Dn> dns = new ArrayList<>(names.size());
+		for (String name : names) {
+			dns.add(schemaManager == null ? new Dn(name) : new Dn(schemaManager, name));
+		}
+		return dns;
+	}
+
+	/**
+	 * Whether the entry lies in the configured subtrees and, if it is given, carries one of the configured object classes.
+	 */
+	public boolean covers(Dn dn, Entry entry) {
+		return covers(dn) && (entry == null || hasObjectClass(entry));
+	}
+
+	public boolean covers(Dn dn) {
+		if (dn == null) {
+			return true;
+		}
+		for (Dn exclude : excludes) {
+			if (dn.isDescendantOf(exclude)) {
+				return false;
+			}
+		}
+		if (includes.isEmpty()) {
+			return true;
+		}
+		for (Dn include : includes) {
+			if (dn.isDescendantOf(include)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasObjectClass(Entry entry) {
+		if (objectClasses == null) {
+			return true;
+		}
+		Attribute objectClass = entry.get(objectClassType);
+		if (objectClass == null) {
+			return false;
+		}
+		for (Value<?> value : objectClass) {
+			String name = value.getString();
+			if (name != null && objectClasses.contains(normalize(name))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String normalize(String name) {
+		return name.trim().toLowerCase(Locale.ROOT);
+	}
+
+}
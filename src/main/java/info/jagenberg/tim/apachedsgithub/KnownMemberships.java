@@ -0,0 +1,14 @@
+package info.jagenberg.tim.apachedsgithub;
+
+/**
+ * A connector that keeps track of team memberships and skips additions and removals that would not change anything. Lets the
+ * metrics tell these skipped changes apart from calls that reached GitHub.
+ */
+public interface KnownMemberships {
+
+	/**
+	 * Whether the user is a member of the team as far as the connector knows it, without asking GitHub; null if it is unknown.
+	 */
+	Boolean isKnownMember(String user, String team, String org);
+
+}
@@ -0,0 +1,98 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two buckets in microseconds. Recording neither locks nor allocates; percentiles are
+ * reported as the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0L, nanos));
+		buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+		count.increment();
+		totalMicros.add(micros);
+		long max = maxMicros.get();
+		while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+			max = maxMicros.get();
+		}
+	}
+
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long n = count.sum();
+		return n == 0 ? 0d : (double) totalMicros.sum() / n;
+	}
+
+	@Override
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	@Override
+	public long getPercentile50Micros() {
+		return percentile(0.5d);
+	}
+
+	@Override
+	public long getPercentile95Micros() {
+		return percentile(0.95d);
+	}
+
+	@Override
+	public long getPercentile99Micros() {
+		return percentile(0.99d);
+	}
+
+	long percentile(double quantile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0L;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(i == 0 ? 0L : 1L << i, maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0L);
+		}
+		count.reset();
+		totalMicros.reset();
+		maxMicros.set(0L);
+	}
+
+}
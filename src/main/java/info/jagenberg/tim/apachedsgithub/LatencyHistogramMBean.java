@@ -0,0 +1,19 @@
+package info.jagenberg.tim.apachedsgithub;
+
+public interface LatencyHistogramMBean {
+
+	long getCount();
+
+	double getMeanMicros();
+
+	long getMaxMicros();
+
+	long getPercentile50Micros();
+
+	long getPercentile95Micros();
+
+	long getPercentile99Micros();
+
+	void reset();
+
+}
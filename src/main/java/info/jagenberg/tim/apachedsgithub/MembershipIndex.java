@@ -0,0 +1,92 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shadow copy of the members of GitHub teams, keyed case-insensitively by organization and team. A team is loaded with one listing
+ * of its members and then kept current by the connector's own additions and removals until it expires, so membership checks and
+ * no-op changes need no request.
+ */
+public class MembershipIndex {
+
+	private final ResolutionCache<String, Set<String>> teams;
+
+	public MembershipIndex(long ttlMillis, int maxTeams) {
+		teams = new ResolutionCache<>(ttlMillis, maxTeams);
+	}
+
+	/**
+	 * The lower cased logins of the team's members, listed through the loader unless known.
+	 */
+	public Set<String> getMembers(String org, String team, Supplier<? extends Collection<String>> loader) {
+		return teams.get(key(org, team), key -> index(loader.get()));
+	}
+
+	/**
+	 * Whether the user is a member of the team, or null if the team is not indexed.
+	 */
+	public Boolean isMember(String org, String team, String user) {
+		Set<String> members = teams.get(key(org, team));
+		return members == null ? null : members.contains(normalize(user));
+	}
+
+	public void put(String org, String team, Collection<String> logins) {
+		teams.put(key(org, team), index(logins));
+	}
+
+	public void added(String org, String team, String user) {
+		Set<String> members = teams.get(key(org, team));
+		if (members != null) {
+			members.add(normalize(user));
+		}
+	}
+
+	public void removed(String org, String team, String user) {
+		Set<String> members = teams.get(key(org, team));
+		if (members != null) {
+			members.remove(normalize(user));
+		}
+	}
+
+	public void invalidate(String org, String team) {
+		teams.invalidate(key(org, team));
+	}
+
+	public void invalidateOrg(String org) {
+		String prefix = normalize(org) + '/';
+		teams.invalidateIf(key -> key.startsWith(prefix));
+	}
+
+	public void invalidateAll() {
+		teams.invalidateAll();
+	}
+
+	public int size() {
+		return teams.size();
+	}
+
+	ResolutionCache<String, Set<String>> getCache() {
+		return teams;
+	}
+
+	private static Set<String> index(Collection<String> logins) {
+		Set<String> members = ConcurrentHashMap.newKeySet(logins.size());
+		for (String login : logins) {
+			members.add(normalize(login));
+		}
+		return members;
+	}
+
+	private static String key(String org, String team) {
+		return normalize(org) + '/' + normalize(team);
+	}
+
+	private static String normalize(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+}
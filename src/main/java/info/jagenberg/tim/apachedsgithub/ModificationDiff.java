@@ -0,0 +1,184 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+
+/**
+ * Applies the modifications of a modify operation to the GitHub attributes of an entry in a single pass and derives the GitHub
+ * operations needed to follow the change. Values are compared the way the schema's caseIgnoreMatch does, so changing only the case
+ * or the spacing of a value does not cause a re-sync.
+ */
+public final class ModificationDiff {
+
+	private final GitHubUserView before;
+	private final String user;
+	private final String org;
+	private final Map<String, String> teams;
+
+	private ModificationDiff(GitHubUserView before, String user, String org, Map<String, String> teams) {
+		this.before = before;
+		this.user = user;
+		this.org = org;
+		this.teams = teams;
+	}
+
+	public static ModificationDiff compute(GitHubUserView before, List<Modification> mods, GitHubAttributeTypes types) {
+		Map<String, String> users = valueSet(before.getUser());
+		Map<String, String> orgs = valueSet(before.getOrg());
+		Map<String, String> teams = new LinkedHashMap<>();
+		for (String team : before.getTeams()) {
+			teams.put(normalize(team), team);
+		}
+		String userOid = types.getUser().getOid();
+		String teamOid = types.getTeam().getOid();
+		String orgOid = types.getOrg().getOid();
+		for (Modification mod : mods) {
+			String oid = oid(mod.getAttribute());
+			if (userOid.equals(oid)) {
+				apply(mod, users);
+			} else if (teamOid.equals(oid)) {
+				apply(mod, teams);
+			} else if (orgOid.equals(oid)) {
+				apply(mod, orgs);
+			}
+		}
+		return new ModificationDiff(before, singleValue(users, ObjClassGitHubUser.GITHUB_USER_ATTR_ID), singleValue(orgs, ObjClassGitHubUser.GITHUB_ORG_ATTR_ID),
+				teams);
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public String getOrg() {
+		return org;
+	}
+
+	public Collection<String> getTeams() {
+		return teams.values();
+	}
+
+	/**
+	 * The GitHub operations that follow the change: additions first, then removals. A changed user or organization moves all
+	 * memberships, otherwise only added and removed teams are synchronized.
+	 */
+	public List<SyncOperation> plan() {
+		List<SyncOperation> operations = new ArrayList<>();
+		if (!before.isGitHubUser()) {
+			return operations;
+		}
+		boolean oldSynced = before.getUser() != null && before.getOrg() != null;
+		boolean newSynced = user != null && org != null;
+		if (!sameValue(before.getUser(), user) || !sameValue(before.getOrg(), org)) {
+			if (newSynced) {
+				for (String team : teams.values()) {
+					operations.add(SyncOperation.add(user, team, org));
+				}
+			}
+			if (oldSynced) {
+				for (String team : before.getTeams()) {
+					operations.add(SyncOperation.remove(before.getUser(), team, before.getOrg()));
+				}
+			}
+		} else if (newSynced) {
+			Map<String, String> oldTeams = new LinkedHashMap<>();
+			for (String team : before.getTeams()) {
+				oldTeams.put(normalize(team), team);
+			}
+			for (Map.Entry<String, String> team : teams.entrySet()) {
+				if (!oldTeams.containsKey(team.getKey())) {
+					operations.add(SyncOperation.add(user, team.getValue(), org));
+				}
+			}
+			for (Map.Entry<String, String> team : oldTeams.entrySet()) {
+				if (!teams.containsKey(team.getKey())) {
+					operations.add(SyncOperation.remove(before.getUser(), team.getValue(), before.getOrg()));
+				}
+			}
+		}
+		return operations;
+	}
+
+	static void apply(Modification mod, Map<String, String> values) {
+		Attribute attribute = mod.getAttribute();
+		switch (mod.getOperation()) {
+		case ADD_ATTRIBUTE:
+			for (Value<?> value : attribute) {
+				values.putIfAbsent(normalize(value.getString()), value.getString());
+			}
+			break;
+
+		case REMOVE_ATTRIBUTE:
+			if (attribute.size() == 0) {
+				values.clear();
+			}
+			for (Value<?> value : attribute) {
+				values.remove(normalize(value.getString()));
+			}
+			break;
+
+		case REPLACE_ATTRIBUTE:
+			values.clear();
+			for (Value<?> value : attribute) {
+				values.putIfAbsent(normalize(value.getString()), value.getString());
+			}
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	static String oid(Attribute attribute) {
+		return attribute.getAttributeType() != null ? attribute.getAttributeType().getOid() : attribute.getId();
+	}
+
+	static Map<String, String> valueSet(String value) {
+		Map<String, String> values = new LinkedHashMap<>();
+		if (value != null) {
+			values.put(normalize(value), value);
+		}
+		return values;
+	}
+
+	static String singleValue(Map<String, String> values, String oid) {
+		if (values.size() > 1) {
+			throw new IllegalArgumentException("Only 1 " + ObjClassGitHubUser.ATTR_LITERALS.get(oid) + " allowed");
+		}
+		return values.isEmpty() ? null : values.values().iterator().next();
+	}
+
+	static boolean sameValue(String a, String b) {
+		return a == null ? b == null : b != null && normalize(a).equals(normalize(b));
+	}
+
+	/**
+	 * Lower cases the value and drops leading, trailing and repeated inner spaces, like caseIgnoreMatch.
+	 */
+	static String normalize(String value) {
+		StringBuilder normalized = new StringBuilder(value.length());
+		boolean space = false;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = normalized.length() > 0;
+			} else {
+				if (space) {
+					normalized.append(' ');
+					space = false;
+				}
+				normalized.append(c);
+			}
+		}
+		return normalized.toString().toLowerCase(Locale.ROOT);
+	}
+
+}
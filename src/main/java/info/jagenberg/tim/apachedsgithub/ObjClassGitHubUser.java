@@ -18,6 +18,8 @@ public class ObjClassGitHubUser {
 	public static final String GITHUB_USER_ATTR_ID = "2.25.338967291031856023576548935457224115483.1.1";
 	public static final String GITHUB_TEAM_ATTR_ID = "2.25.338967291031856023576548935457224115483.1.3";
 	public static final String GITHUB_ORG_ATTR_ID = "2.25.338967291031856023576548935457224115483.1.2";
+	public static final String GITHUB_USER_ID_ATTR_ID = "2.25.338967291031856023576548935457224115483.1.4";
+	public static final String GITHUB_TEAM_ID_ATTR_ID = "2.25.338967291031856023576548935457224115483.1.5";
 	public static final Map<String, String> ATTR_LITERALS;
 
 	static {
@@ -26,6 +28,8 @@ public class ObjClassGitHubUser {
 		map.put(GITHUB_USER_ATTR_ID, "githubUserName");
 		map.put(GITHUB_TEAM_ATTR_ID, "githubTeamName");
 		map.put(GITHUB_ORG_ATTR_ID, "githubOrganizationName");
+		map.put(GITHUB_USER_ID_ATTR_ID, "githubUserId");
+		map.put(GITHUB_TEAM_ID_ATTR_ID, "githubTeamId");
 		ATTR_LITERALS = Collections.unmodifiableMap(map);
 	}
 
@@ -39,9 +43,9 @@ public class ObjClassGitHubUser {
 	public static boolean hasAllGitHubAttributesSet(Entry entry) {
 		boolean allSet = true;
 		try {
-			Attribute orgAttr = entry.get(new AttributeType(GITHUB_ORG_ATTR_ID));
-			Attribute teamAttr = entry.get(new AttributeType(GITHUB_TEAM_ATTR_ID));
-			Attribute userAttr = entry.get(new AttributeType(GITHUB_USER_ATTR_ID));
+			Attribute orgAttr = entry.get(GitHubAttributeTypes.UNRESOLVED.getOrg());
+			Attribute teamAttr = entry.get(GitHubAttributeTypes.UNRESOLVED.getTeam());
+			Attribute userAttr = entry.get(GitHubAttributeTypes.UNRESOLVED.getUser());
 			allSet &= orgAttr != null;
 			allSet &= teamAttr != null;
 			allSet &= userAttr != null;
@@ -59,10 +63,23 @@ public class ObjClassGitHubUser {
 		return allSet;
 	}
 
+	private static AttributeType attributeType(String attrID) {
+		switch (attrID) {
+		case GITHUB_USER_ATTR_ID:
+			return GitHubAttributeTypes.UNRESOLVED.getUser();
+		case GITHUB_TEAM_ATTR_ID:
+			return GitHubAttributeTypes.UNRESOLVED.getTeam();
+		case GITHUB_ORG_ATTR_ID:
+			return GitHubAttributeTypes.UNRESOLVED.getOrg();
+		default:
+			return new AttributeType(attrID);
+		}
+	}
+
 	private static String getStringValue(Entry githubEntry, String attrID) {
 		String value;
 		try {
-			Attribute attribute = githubEntry.get(new AttributeType(attrID));
+			Attribute attribute = githubEntry.get(attributeType(attrID));
 			if (attribute == null) {
 				throw new IllegalArgumentException("Attribute " + ATTR_LITERALS.get(attrID) + " is not set");
 			}
@@ -74,11 +91,11 @@ public class ObjClassGitHubUser {
 	}
 
 	private static List<String> getStringValues(Entry githubEntry, String attrID) {
-		List<String> values = new ArrayList<>();
-		Attribute attribute = githubEntry.get(new AttributeType(attrID));
+		Attribute attribute = githubEntry.get(attributeType(attrID));
 		if (attribute == null) {
 			throw new IllegalArgumentException("Attribute " + ATTR_LITERALS.get(attrID) + " is not set");
 		}
+		List<String> values = new ArrayList<>(attribute.size());
 		for (Value<?> value : attribute) {
 			values.add(value.getString());
 		}
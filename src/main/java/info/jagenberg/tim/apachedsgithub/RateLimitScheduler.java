@@ -0,0 +1,117 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces GitHub requests with a token bucket and parks callers once the rate limit reported by GitHub is used up, until the limit
+ * resets. The quota is taken from the X-RateLimit headers of every response. A caller that would have to wait longer than the
+ * maximum wait fails right away with a GitHubUnavailableException telling when to retry.
+ */
+public class RateLimitScheduler {
+
+	private static final long RESET_SKEW_MILLIS = 1000L;
+
+	private static final ThreadLocal<long[]> WAITED_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final double permitsPerMilli;
+	private final double burst;
+	private final int reserve;
+	private final long maxWaitMillis;
+	private double tokens;
+	private long lastRefill;
+	private int remaining = -1;
+	private int limit = -1;
+	private long resetAtMillis;
+
+	public RateLimitScheduler(double permitsPerSecond, int burst, int reserve, long maxWaitMillis) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Rate and burst must be positive");
+		}
+		this.permitsPerMilli = permitsPerSecond / 1000d;
+		this.burst = burst;
+		this.reserve = reserve;
+		this.maxWaitMillis = maxWaitMillis;
+		this.tokens = burst;
+		this.lastRefill = System.currentTimeMillis();
+	}
+
+	public void acquire() {
+		long deadline = System.currentTimeMillis() + maxWaitMillis;
+		while (true) {
+			long wait;
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+				refill(now);
+				if (remaining >= 0 && remaining <= reserve) {
+					wait = resetAtMillis + RESET_SKEW_MILLIS - now;
+				} else if (tokens >= 1d) {
+					tokens -= 1d;
+					if (remaining > 0) {
+						remaining--;
+					}
+					return;
+				} else {
+					wait = (long) Math.ceil((1d - tokens) / permitsPerMilli);
+				}
+			}
+			if (System.currentTimeMillis() + wait > deadline) {
+				throw new GitHubUnavailableException("GitHub rate limit exhausted until " + getResetAtMillis(), wait);
+			}
+			long parked = System.nanoTime();
+			try {
+				TimeUnit.MILLISECONDS.sleep(Math.max(1L, wait));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for GitHub rate limit", e);
+			} finally {
+				WAITED_NANOS.get()[0] += System.nanoTime() - parked;
+			}
+		}
+	}
+
+	/**
+	 * Nanoseconds the current thread spent waiting for any scheduler so far, so callers can tell their own pacing from slow responses.
+	 */
+	public static long getWaitedNanos() {
+		return WAITED_NANOS.get()[0];
+	}
+
+	public synchronized void update(int remaining, int limit, long resetEpochSeconds) {
+		this.remaining = remaining;
+		this.limit = limit;
+		this.resetAtMillis = TimeUnit.SECONDS.toMillis(resetEpochSeconds);
+	}
+
+	/**
+	 * Whether the known quota is down to the reserve, so requests wait for the reset.
+	 */
+	public synchronized boolean isExhausted() {
+		refill(System.currentTimeMillis());
+		return remaining >= 0 && remaining <= reserve;
+	}
+
+	public synchronized int getRemaining() {
+		refill(System.currentTimeMillis());
+		return remaining;
+	}
+
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	public synchronized long getResetAtMillis() {
+		return resetAtMillis;
+	}
+
+	private void refill(long now) {
+		if (now > lastRefill) {
+			tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerMilli);
+			lastRefill = now;
+		}
+		if (remaining >= 0 && now >= resetAtMillis + RESET_SKEW_MILLIS) {
+			// the window has reset, the next response reports the new quota
+			remaining = -1;
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings GitHub team membership back in line with the githubUser entries and githubTeam groups of the directory. The entries are
+ * streamed once and only the desired members of every team are kept; each team is then compared with its actual members on GitHub
+ * and corrected on a bounded pool of workers. Entries outside the interception scope are skipped, but the memberships they describe
+ * are never removed, as a team may be shared across the scope boundary. An instance performs a single run.
+ */
+public class Reconciler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(Reconciler.class);
+
+	private final GitHubConnector connector;
+	private final GitHubAttributeTypes attributeTypes;
+	private final InterceptionScope scope;
+	private final Function<String, String> memberLogins;
+	private final int parallelism;
+	private final boolean dryRun;
+	private final long started = System.nanoTime();
+	private final Map<String, DesiredTeam> teams = new LinkedHashMap<>();
+	private final Map<String, Set<String>> outOfScope = new HashMap<>();
+	private int entriesScanned;
+	private int entriesSkipped;
+	private final AtomicInteger usersAdded = new AtomicInteger();
+	private final AtomicInteger usersRemoved = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+
+	public Reconciler(GitHubConnector connector, int parallelism, boolean dryRun) {
+		this(connector, GitHubAttributeTypes.UNRESOLVED, parallelism, dryRun);
+	}
+
+	public Reconciler(GitHubConnector connector, GitHubAttributeTypes attributeTypes, int parallelism, boolean dryRun) {
+		this(connector, attributeTypes, InterceptionScope.ALL, parallelism, dryRun);
+	}
+
+	public Reconciler(GitHubConnector connector, GitHubAttributeTypes attributeTypes, InterceptionScope scope, int parallelism, boolean dryRun) {
+		this(connector, attributeTypes, scope, null, parallelism, dryRun);
+	}
+
+	/**
+	 * @param memberLogins
+	 *            resolves the member values of githubTeam groups to GitHub logins, returning null for members that are no GitHub
+	 *            users; without it groups are skipped
+	 */
+	public Reconciler(GitHubConnector connector, GitHubAttributeTypes attributeTypes, InterceptionScope scope, Function<String, String> memberLogins,
+			int parallelism, boolean dryRun) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.connector = connector;
+		this.attributeTypes = attributeTypes;
+		this.scope = scope;
+		this.memberLogins = memberLogins;
+		this.parallelism = parallelism;
+		this.dryRun = dryRun;
+	}
+
+	public void scan(Iterable<Entry> entries) {
+		for (Entry entry : entries) {
+			entriesScanned++;
+			if (!collect(entry)) {
+				entriesSkipped++;
+			}
+		}
+	}
+
+	public ReconciliationReport reconcile(Iterable<Entry> entries) {
+		scan(entries);
+		return reconcile();
+	}
+
+	public ReconciliationReport reconcile() {
+		if (!teams.isEmpty()) {
+			AtomicInteger threadCount = new AtomicInteger();
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, teams.size()), runnable -> {
+				Thread thread = new Thread(runnable, "github-reconcile-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			try {
+				List<Future<?>> results = new ArrayList<>(teams.size());
+				for (DesiredTeam team : teams.values()) {
+					results.add(executor.submit(() -> reconcileTeam(team)));
+				}
+				for (Future<?> result : results) {
+					try {
+						result.get();
+					} catch (ExecutionException e) {
+						failures.incrementAndGet();
+						LOG.warn("Reconciliation of a GitHub team failed", e.getCause());
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while reconciling GitHub teams", e);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		ReconciliationReport report = new ReconciliationReport(entriesScanned, entriesSkipped, teams.size(), usersAdded.get(), usersRemoved.get(), failures.get(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		LOG.info((dryRun ? "GitHub reconciliation dry run " : "GitHub reconciliation ") + report);
+		return report;
+	}
+
+	private boolean collect(Entry entry) {
+		boolean inScope = scope.covers(entry.getDn());
+		if (memberLogins != null && collectGroup(entry, inScope)) {
+			return inScope;
+		}
+		GitHubUserView view = GitHubUserView.read(entry, attributeTypes);
+		// entries without user, teams or org are not synchronized
+		if (!view.isComplete()) {
+			return false;
+		}
+		for (String team : view.getTeams()) {
+			collect(view.getUser(), team, view.getOrg(), inScope);
+		}
+		return inScope;
+	}
+
+	private boolean collectGroup(Entry entry, boolean inScope) {
+		GitHubGroupView group = GitHubGroupView.read(entry, attributeTypes);
+		if (!group.isComplete()) {
+			return false;
+		}
+		for (String member : group.getMembers().values()) {
+			String user = memberLogins.apply(member);
+			if (user != null) {
+				for (String team : group.getTeams()) {
+					collect(user, team, group.getOrg(), inScope);
+				}
+			}
+		}
+		return true;
+	}
+
+	private void collect(String user, String team, String org, boolean inScope) {
+		String key = normalize(org) + '/' + normalize(team);
+		if (inScope) {
+			teams.computeIfAbsent(key, k -> new DesiredTeam(team, org)).members.put(normalize(user), user);
+		} else {
+			// kept on GitHub, but not added either: the entry is not ours to synchronize
+			outOfScope.computeIfAbsent(key, k -> new HashSet<>()).add(normalize(user));
+		}
+	}
+
+	private void reconcileTeam(DesiredTeam team) {
+		Set<String> actualMembers;
+		try {
+			actualMembers = connector.getMembers(team.name, team.org);
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			failures.incrementAndGet();
+			LOG.warn("Could not reconcile " + team.name + " in " + team.org + ": " + e.getMessage());
+			return;
+		}
+		Map<String, String> missing = new HashMap<>(team.members);
+		Set<String> kept = outOfScope.getOrDefault(normalize(team.org) + '/' + normalize(team.name), Collections.<String> emptySet());
+		for (String member : actualMembers) {
+			if (missing.remove(normalize(member)) == null && !kept.contains(normalize(member))) {
+				apply(SyncOperation.remove(member, team.name, team.org));
+			}
+		}
+		for (String user : missing.values()) {
+			apply(SyncOperation.add(user, team.name, team.org));
+		}
+	}
+
+	private void apply(SyncOperation operation) {
+		if (dryRun) {
+			LOG.info("Would " + operation);
+		} else {
+			try {
+				if (operation.getType() == SyncOperation.Type.ADD) {
+					connector.addUser(operation.getUser(), operation.getTeam(), operation.getOrg());
+				} else {
+					connector.removeUser(operation.getUser(), operation.getTeam(), operation.getOrg());
+				}
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				failures.incrementAndGet();
+				LOG.warn("Could not reconcile " + operation + ": " + e.getMessage());
+				return;
+			}
+		}
+		if (operation.getType() == SyncOperation.Type.ADD) {
+			usersAdded.incrementAndGet();
+		} else {
+			usersRemoved.incrementAndGet();
+		}
+	}
+
+	private static String normalize(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	private static final class DesiredTeam {
+
+		private final String name;
+		private final String org;
+		private final Map<String, String> members = new HashMap<>();
+
+		private DesiredTeam(String name, String org) {
+			this.name = name;
+			this.org = org;
+		}
+
+	}
+
+}
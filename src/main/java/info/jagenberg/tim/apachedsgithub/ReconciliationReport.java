@@ -0,0 +1,60 @@
+package info.jagenberg.tim.apachedsgithub;
+
+/**
+ * Outcome of one reconciliation run.
+ */
+public final class ReconciliationReport {
+
+	private final int entriesScanned;
+	private final int entriesSkipped;
+	private final int teamsChecked;
+	private final int usersAdded;
+	private final int usersRemoved;
+	private final int failures;
+	private final long durationMillis;
+
+	ReconciliationReport(int entriesScanned, int entriesSkipped, int teamsChecked, int usersAdded, int usersRemoved, int failures, long durationMillis) {
+		this.entriesScanned = entriesScanned;
+		this.entriesSkipped = entriesSkipped;
+		this.teamsChecked = teamsChecked;
+		this.usersAdded = usersAdded;
+		this.usersRemoved = usersRemoved;
+		this.failures = failures;
+		this.durationMillis = durationMillis;
+	}
+
+	public int getEntriesScanned() {
+		return entriesScanned;
+	}
+
+	public int getEntriesSkipped() {
+		return entriesSkipped;
+	}
+
+	public int getTeamsChecked() {
+		return teamsChecked;
+	}
+
+	public int getUsersAdded() {
+		return usersAdded;
+	}
+
+	public int getUsersRemoved() {
+		return usersRemoved;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "scanned " + entriesScanned + " entries (" + entriesSkipped + " skipped), checked " + teamsChecked + " teams, added " + usersAdded + ", removed "
+				+ usersRemoved + ", " + failures + " failures in " + durationMillis + " ms";
+	}
+
+}
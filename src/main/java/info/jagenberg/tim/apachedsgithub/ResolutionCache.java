@@ -0,0 +1,126 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Size bounded, least recently used cache whose entries expire after a fixed time to live. Loading happens outside of the cache
+ * lock, so a slow GitHub lookup never blocks hits on other keys.
+ */
+public class ResolutionCache<K, V> {
+
+	private final long ttlNanos;
+	private final LongSupplier clock;
+	private final LinkedHashMap<K, CachedValue<V>> entries;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public ResolutionCache(long ttlMillis, int maxSize) {
+		this(ttlMillis, maxSize, System::nanoTime);
+	}
+
+	ResolutionCache(long ttlMillis, int maxSize, LongSupplier clock) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.clock = clock;
+		entries = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+				return size() > maxSize;
+			}
+
+		};
+	}
+
+	public synchronized V get(K key) {
+		CachedValue<V> cached = entries.get(key);
+		if (cached == null) {
+			misses.increment();
+			return null;
+		}
+		if (clock.getAsLong() - cached.loadedAt >= ttlNanos) {
+			entries.remove(key);
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return cached.value;
+	}
+
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = get(key);
+		if (value == null) {
+			value = loader.apply(key);
+			if (value != null) {
+				put(key, value);
+			}
+		}
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		entries.put(key, new CachedValue<>(value, clock.getAsLong()));
+	}
+
+	public synchronized void invalidate(K key) {
+		entries.remove(key);
+	}
+
+	public synchronized void invalidateIf(Predicate<? super K> predicate) {
+		Iterator<K> keys = entries.keySet().iterator();
+		while (keys.hasNext()) {
+			if (predicate.test(keys.next())) {
+				keys.remove();
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public double getHitRatio() {
+		return ratio(hits.sum(), misses.sum());
+	}
+
+	static double ratio(long hits, long misses) {
+		long total = hits + misses;
+		return total == 0 ? 0d : (double) hits / total;
+	}
+
+	private static final class CachedValue<V> {
+
+		private final V value;
+		private final long loadedAt;
+
+		private CachedValue(V value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+		}
+
+	}
+
+}
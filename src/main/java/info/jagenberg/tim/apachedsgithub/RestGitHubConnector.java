@@ -0,0 +1,584 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.github.GHOrganization;
+import org.kohsuke.github.GHTeam;
+import org.kohsuke.github.GHUser;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.HttpConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * GitHubConnector talking to the GitHub REST API through github-api. Organizations, team indexes, users and team members are
+ * cached, and all requests go through the rate limit scheduler and the conditional request cache. The connection is set up lazily: once started, a
+ * background thread connects, probes GitHub periodically and reconnects with exponential backoff, while calls fail fast as long as
+ * GitHub is unreachable. With GraphQL enabled, team members are read for a whole organization at once through the GraphQL API.
+ * Memberships of teams whose id is known are changed by id, without resolving the organization, team or user first.
+ */
+public class RestGitHubConnector implements GitHubConnector, GitHubIdAware, KnownMemberships {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RestGitHubConnector.class);
+
+	private static final String GITHUB_CONNECTION_ERROR_MSG = "Could not connect to GitHub";
+	private final GithubInterceptorConfig config;
+	private final HttpConnector transport;
+	private volatile GitHub github;
+	private final long healthIntervalMillis;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private long backoffMillis;
+	private long nextAttemptAt;
+	private volatile ScheduledExecutorService healthChecker;
+	private final ResolutionCache<String, GHOrganization> orgCache;
+	private final ResolutionCache<String, TeamIndex> teamIndexes;
+	private final long teamRefreshIntervalMillis;
+	private final ResolutionCache<String, GHUser> userCache;
+	private final RateLimitScheduler rateLimitScheduler;
+	private final ConditionalRequestCache responseCache;
+	private final MembershipIndex memberships;
+	private final GraphQlMembershipReader graphQl;
+	private final ResolutionCache<String, Map<String, Set<String>>> orgMembers;
+	private final TeamMembershipClient membershipClient;
+	private final Map<String, Long> userIds = new ConcurrentHashMap<>();
+	private final Map<String, Long> teamIds = new ConcurrentHashMap<>();
+	private volatile GitHubIdAware.Listener idListener;
+
+	public RestGitHubConnector() {
+		this(new GithubInterceptorConfig());
+	}
+
+	public RestGitHubConnector(GithubInterceptorConfig config) {
+		this.config = config;
+		orgCache = new ResolutionCache<>(config.getOrgCacheTtlMillis(), config.getOrgCacheSize());
+		teamIndexes = new ResolutionCache<>(config.getTeamCacheTtlMillis(), config.getOrgCacheSize());
+		teamRefreshIntervalMillis = config.getTeamRefreshIntervalMillis();
+		userCache = new ResolutionCache<>(config.getUserCacheTtlMillis(), config.getUserCacheSize());
+		long rateLimitMaxWait = config.isAsyncSync() ? config.getRateLimitMaxWaitMillis() : config.getRateLimitInlineMaxWaitMillis();
+		rateLimitScheduler = new RateLimitScheduler(config.getRateLimitPermitsPerSecond(), config.getRateLimitBurst(), config.getRateLimitReserve(),
+				rateLimitMaxWait);
+		memberships = new MembershipIndex(config.getMembershipCacheTtlMillis(), config.getMembershipCacheSize());
+		responseCache = config.isHttpCacheEnabled() ? new ConditionalRequestCache(config.getHttpCacheTtlMillis(), config.getHttpCacheSize()) : null;
+		transport = config.newInstance(config.getTransportClass(), HttpConnector.class, "HTTP transport");
+		if (config.isGraphQlEnabled()) {
+			// GraphQL requests are limited by their own quota
+			RateLimitScheduler graphQlScheduler = new RateLimitScheduler(config.getRateLimitPermitsPerSecond(), config.getRateLimitBurst(),
+					config.getRateLimitReserve(), rateLimitMaxWait);
+			graphQl = new GraphQlMembershipReader(config.getGraphQlUrl(), config.getOAuthToken(), new GitHubHttpConnector(transport, graphQlScheduler),
+					config.getGraphQlPageSize());
+		} else {
+			graphQl = null;
+		}
+		orgMembers = new ResolutionCache<>(config.getGraphQlTtlMillis(), config.getOrgCacheSize());
+		membershipClient = new TeamMembershipClient(config.getApiUrl(), config.getOAuthToken(),
+				new GitHubHttpConnector(transport, rateLimitScheduler, responseCache));
+		healthIntervalMillis = config.getHealthIntervalMillis();
+		initialBackoffMillis = config.getReconnectBackoffMillis();
+		maxBackoffMillis = config.getReconnectMaxBackoffMillis();
+		backoffMillis = initialBackoffMillis;
+	}
+
+	@Override
+	public synchronized void start() {
+		if (healthChecker == null) {
+			healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "github-health");
+				thread.setDaemon(true);
+				return thread;
+			});
+			healthChecker.execute(this::checkHealth);
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (healthChecker != null) {
+			healthChecker.shutdownNow();
+			healthChecker = null;
+		}
+	}
+
+	public boolean isConnected() {
+		return github != null;
+	}
+
+	private void checkHealth() {
+		GitHub current = github;
+		if (current == null) {
+			if (connect()) {
+				warmUp();
+			}
+		} else {
+			try {
+				current.getRateLimit();
+			} catch (IOException | RuntimeException e) {
+				disconnect(current, e);
+			}
+		}
+		ScheduledExecutorService checker = healthChecker;
+		if (checker != null) {
+			long delay = isConnected() ? healthIntervalMillis : Math.max(0L, getNextAttemptAt() - System.currentTimeMillis());
+			try {
+				checker.schedule(this::checkHealth, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// stopped meanwhile
+			}
+		}
+	}
+
+	private synchronized long getNextAttemptAt() {
+		return nextAttemptAt;
+	}
+
+	private synchronized boolean connect() {
+		if (github != null) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (now < nextAttemptAt) {
+			return false;
+		}
+		try {
+			GitHub connected;
+			if (config.getApiUrl() == null) {
+				connected = GitHub.connectUsingOAuth(config.getOAuthToken());
+			} else {
+				connected = GitHub.connectToEnterprise(config.getApiUrl(), config.getOAuthToken());
+			}
+			connected.setConnector(new GitHubHttpConnector(transport, rateLimitScheduler, responseCache));
+			// resolved objects belong to the previous connection
+			orgCache.invalidateAll();
+			teamIndexes.invalidateAll();
+			userCache.invalidateAll();
+			github = connected;
+			backoffMillis = initialBackoffMillis;
+			nextAttemptAt = 0L;
+			LOG.info("Connected to GitHub");
+			return true;
+		} catch (IOException | RuntimeException e) {
+			retryLater(now, e);
+			return false;
+		}
+	}
+
+	private void warmUp() {
+		if (graphQl != null) {
+			for (String org : config.getGraphQlWarmupOrgs()) {
+				try {
+					warmUp(org);
+				} catch (RuntimeException e) {
+					LOG.warn("Could not read the teams of " + org + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private synchronized void disconnect(GitHub current, Exception cause) {
+		if (github == current) {
+			github = null;
+			retryLater(System.currentTimeMillis(), cause);
+		}
+	}
+
+	private void retryLater(long now, Exception cause) {
+		nextAttemptAt = now + backoffMillis;
+		LOG.warn(GITHUB_CONNECTION_ERROR_MSG + ", retrying in " + backoffMillis + " ms: " + cause.getMessage());
+		backoffMillis = Math.min(maxBackoffMillis, backoffMillis * 2);
+	}
+
+	/**
+	 * The failure of a call made while GitHub is not connected. Callers that can wait retry once the next connection attempt is due,
+	 * so queued and replayed operations are kept instead of being dropped as failed.
+	 */
+	private GitHubUnavailableException notConnected() {
+		long retryAfter = getNextAttemptAt() - System.currentTimeMillis();
+		return new GitHubUnavailableException(GITHUB_CONNECTION_ERROR_MSG, retryAfter > 0 ? retryAfter : initialBackoffMillis);
+	}
+
+	/**
+	 * Whether calls can go to GitHub. Without a running health check, as when the connector is used on its own, the connection is
+	 * set up by the calling thread, respecting the backoff.
+	 */
+	private boolean ensureConnected() {
+		if (github == null && healthChecker == null) {
+			return connect();
+		}
+		return github != null;
+	}
+
+	@Override
+	public void addUser(String user, String team, String org) {
+		if (ensureConnected()) {
+			if (Boolean.TRUE.equals(memberships.isMember(org, team, user))) {
+				return;
+			}
+			if (changeById(user, team, org, true)) {
+				memberships.added(org, team, user);
+				return;
+			}
+			GHOrganization ghOrg = getOrg(org);
+			GHTeam ghTeam = getTeam(org, ghOrg, team);
+			GHUser ghUser = getUser(user);
+			try {
+				ghTeam.add(ghUser);
+				memberships.added(org, team, user);
+				resolved(user, ghUser, team, org, ghTeam);
+			} catch (IOException e) {
+				invalidateTeam(org, team);
+				invalidateUser(user);
+				throw new IllegalArgumentException("Could not add " + user + " to " + team + " in " + org, e);
+			}
+		} else {
+			throw notConnected();
+		}
+	}
+
+	@Override
+	public void removeUser(String user, String team, String org) {
+		if (ensureConnected()) {
+			if (Boolean.FALSE.equals(memberships.isMember(org, team, user))) {
+				return;
+			}
+			if (changeById(user, team, org, false)) {
+				memberships.removed(org, team, user);
+				return;
+			}
+			GHOrganization ghOrg = getOrg(org);
+			GHTeam ghTeam = getTeam(org, ghOrg, team);
+			GHUser ghUser = getUser(user);
+			try {
+				ghTeam.remove(ghUser);
+				memberships.removed(org, team, user);
+				resolved(user, ghUser, team, org, ghTeam);
+			} catch (IOException e) {
+				invalidateTeam(org, team);
+				invalidateUser(user);
+				throw new IllegalArgumentException("Could not remove " + user + " from " + team + " in " + org, e);
+			}
+		} else {
+			throw notConnected();
+		}
+	}
+
+	@Override
+	public Boolean isKnownMember(String user, String team, String org) {
+		// without a connection the changes fail instead of being skipped
+		return isConnected() ? memberships.isMember(org, team, user) : null;
+	}
+
+	@Override
+	public boolean hasUser(String user, String team, String org) {
+		if (ensureConnected()) {
+			try {
+				return memberships.getMembers(org, team, () -> listMembers(team, org)).contains(normalize(user));
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		} else {
+			throw notConnected();
+		}
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		if (ensureConnected()) {
+			try {
+				getUser(user);
+				return true;
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		} else {
+			throw notConnected();
+		}
+	}
+
+	@Override
+	public Set<String> getMembers(String team, String org) {
+		if (ensureConnected()) {
+			Set<String> members = listMembers(team, org);
+			memberships.put(org, team, members);
+			return members;
+		} else {
+			throw notConnected();
+		}
+	}
+
+	/**
+	 * Changes the membership through the id of the team, if it is known. A user GitHub does not know under its login is looked up by
+	 * its id once, in case it was renamed. Returns false if the names have to be resolved instead, which also tells whether the team
+	 * or the user is gone. Only the id found to be stale is dropped: the user id if GitHub knows no such user, the team id if the
+	 * user exists or GitHub knows no such team.
+	 */
+	private boolean changeById(String user, String team, String org, boolean add) {
+		String teamKey = teamKey(team, org);
+		Long teamId = teamIds.get(teamKey);
+		if (teamId == null) {
+			return false;
+		}
+		if (add ? membershipClient.add(teamId, user) : membershipClient.remove(teamId, user)) {
+			return true;
+		}
+		Long userId = userIds.get(normalize(user));
+		String login = userId == null ? null : membershipClient.getLogin(userId);
+		if (userId != null && login == null) {
+			userIds.remove(normalize(user), userId);
+			return false;
+		}
+		if (login == null) {
+			if (membershipClient.hasTeam(teamId)) {
+				return false;
+			}
+		} else if (!normalize(login).equals(normalize(user))) {
+			LOG.warn("GitHub user " + user + " was renamed to " + login + ", githubUserName should be updated");
+			if (add ? membershipClient.add(teamId, login) : membershipClient.remove(teamId, login)) {
+				return true;
+			}
+		}
+		teamIds.remove(teamKey, teamId);
+		return false;
+	}
+
+	private void resolved(String user, GHUser ghUser, String team, String org, GHTeam ghTeam) {
+		GitHubIdAware.Listener listener = idListener;
+		long userId = ghUser.getId();
+		if (userIds.putIfAbsent(normalize(user), userId) == null && listener != null) {
+			listener.userResolved(user, userId);
+		}
+		long teamId = ghTeam.getId();
+		if (teamIds.putIfAbsent(teamKey(team, org), teamId) == null && listener != null) {
+			listener.teamResolved(team, org, teamId);
+		}
+	}
+
+	@Override
+	public void useUserId(String user, long id) {
+		userIds.put(normalize(user), id);
+	}
+
+	@Override
+	public void useTeamId(String team, String org, long id) {
+		teamIds.put(teamKey(team, org), id);
+	}
+
+	@Override
+	public Long getUserId(String user) {
+		return userIds.get(normalize(user));
+	}
+
+	@Override
+	public Long getTeamId(String team, String org) {
+		return teamIds.get(teamKey(team, org));
+	}
+
+	@Override
+	public void setIdListener(GitHubIdAware.Listener listener) {
+		this.idListener = listener;
+	}
+
+	/**
+	 * Reads the members of all teams of the organization through GraphQL and puts them into the membership index.
+	 */
+	public void warmUp(String org) {
+		if (graphQl == null) {
+			throw new IllegalStateException("GraphQL is not enabled");
+		}
+		if (ensureConnected()) {
+			orgMembers.put(normalize(org), readOrg(org));
+		} else {
+			throw notConnected();
+		}
+	}
+
+	private Map<String, Set<String>> readOrg(String org) {
+		Map<String, Set<String>> teams = new HashMap<>();
+		for (Map.Entry<String, Set<String>> team : graphQl.readTeams(org).entrySet()) {
+			memberships.put(org, team.getKey(), team.getValue());
+			teams.put(normalize(team.getKey()), team.getValue());
+		}
+		LOG.debug("Read " + teams.size() + " teams of " + org + " through GraphQL");
+		return teams;
+	}
+
+	private Set<String> listMembers(String team, String org) {
+		if (graphQl != null) {
+			return readMembers(team, org);
+		}
+		GHOrganization ghOrg = getOrg(org);
+		GHTeam ghTeam = getTeam(org, ghOrg, team);
+		try {
+			Set<String> members = new HashSet<>();
+			for (GHUser ghUser : ghTeam.getMembers()) {
+				members.add(ghUser.getLogin());
+			}
+			return members;
+		} catch (IOException e) {
+			invalidateTeam(org, team);
+			throw new IllegalArgumentException("Could not list members of " + team + " in " + org, e);
+		}
+	}
+
+	/**
+	 * The members of a team from the last GraphQL read of its organization, kept up to date in the membership index with the
+	 * changes made since. The organization is read again once that read is older than graphql.ttl.
+	 */
+	private Set<String> readMembers(String team, String org) {
+		String orgKey = normalize(org);
+		Map<String, Set<String>> teams = orgMembers.get(orgKey);
+		if (teams == null) {
+			synchronized (graphQl) {
+				teams = orgMembers.get(orgKey, key -> readOrg(org));
+			}
+		}
+		Set<String> read = teams.get(normalize(team));
+		Set<String> indexed = memberships.getMembers(org, team, () -> {
+			if (read == null) {
+				throw new IllegalArgumentException("Could not find team " + team);
+			}
+			return read;
+		});
+		// the index keeps normalized logins, the read their original spelling
+		Map<String, String> logins = new HashMap<>();
+		for (String login : indexed) {
+			logins.put(login, login);
+		}
+		if (read != null) {
+			for (String login : read) {
+				logins.replace(normalize(login), login);
+			}
+		}
+		return new HashSet<>(logins.values());
+	}
+
+	public RateLimitScheduler getRateLimitScheduler() {
+		return rateLimitScheduler;
+	}
+
+	public ConditionalRequestCache getResponseCache() {
+		return responseCache;
+	}
+
+	ResolutionCache<String, GHOrganization> getOrgCache() {
+		return orgCache;
+	}
+
+	ResolutionCache<String, TeamIndex> getTeamIndexes() {
+		return teamIndexes;
+	}
+
+	ResolutionCache<String, GHUser> getUserCache() {
+		return userCache;
+	}
+
+	public MembershipIndex getMemberships() {
+		return memberships;
+	}
+
+	public void bindMetrics(SyncMetrics metrics) {
+		metrics.setRateLimitRemaining(rateLimitScheduler::getRemaining);
+		metrics.setOrgCacheHitRatio(orgCache::getHitRatio);
+		metrics.setTeamCacheHitRatio(teamIndexes::getHitRatio);
+		metrics.setUserCacheHitRatio(userCache::getHitRatio);
+		if (responseCache != null) {
+			metrics.setHttpCacheHitRatio(responseCache::getNotModifiedRatio);
+		}
+	}
+
+	public void invalidateOrg(String org) {
+		String orgKey = normalize(org);
+		orgCache.invalidate(orgKey);
+		teamIndexes.invalidate(orgKey);
+		memberships.invalidateOrg(org);
+		orgMembers.invalidate(orgKey);
+	}
+
+	public void invalidateTeam(String org, String team) {
+		TeamIndex index = teamIndexes.get(normalize(org));
+		if (index != null) {
+			index.remove(team);
+		}
+		memberships.invalidate(org, team);
+		orgMembers.invalidate(normalize(org));
+	}
+
+	public void invalidateUser(String user) {
+		userCache.invalidate(normalize(user));
+	}
+
+	public void invalidateAll() {
+		orgCache.invalidateAll();
+		teamIndexes.invalidateAll();
+		userCache.invalidateAll();
+		memberships.invalidateAll();
+		orgMembers.invalidateAll();
+		if (responseCache != null) {
+			responseCache.invalidateAll();
+		}
+	}
+
+	private GHOrganization getOrg(String org) {
+		return orgCache.get(normalize(org), key -> loadOrg(org));
+	}
+
+	private GHTeam getTeam(String org, GHOrganization ghOrg, String team) {
+		return teamIndexes.get(normalize(org), key -> new TeamIndex(ghOrg, teamRefreshIntervalMillis)).find(team);
+	}
+
+	private GHUser getUser(String user) {
+		return userCache.get(normalize(user), key -> loadUser(user));
+	}
+
+	private GHOrganization loadOrg(String org) {
+		GHOrganization ghOrg = null;
+		try {
+			ghOrg = gitHub().getOrganization(org);
+			if (ghOrg == null) {
+				throw new IllegalArgumentException("Could not find organization " + org);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not find organization " + org, e);
+		}
+		return ghOrg;
+	}
+
+	private GHUser loadUser(String user) {
+		GHUser ghUser = null;
+		try {
+			ghUser = gitHub().getUser(user);
+			if (ghUser == null) {
+				throw new IllegalArgumentException("Could not find user " + user);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not find user " + user, e);
+		}
+		return ghUser;
+	}
+
+	private GitHub gitHub() {
+		GitHub current = github;
+		if (current == null) {
+			throw notConnected();
+		}
+		return current;
+	}
+
+	private static String normalize(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	private static String teamKey(String team, String org) {
+		return normalize(org + '/' + team);
+	}
+
+}
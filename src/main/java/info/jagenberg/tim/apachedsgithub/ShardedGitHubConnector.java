@@ -0,0 +1,229 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * GitHubConnector spreading calls over several OAuth tokens, each with its own rate limit. Tokens listed in
+ * githubinterceptor.oauthtokens.&lt;organization&gt; serve only that organization, all others go to the shared
+ * githubinterceptor.oauthtokens pool. An organization is assigned to the candidate with the most remaining quota on first use and
+ * stays there, because each token keeps its own membership and team indexes and they only follow the changes made through it. Only
+ * when the quota of that token is exhausted does the organization move to the candidate with the most quota left, whose indexes of
+ * the organization are dropped first. Organizations listed in githubinterceptor.graphql.warmup are warmed up by the first candidate
+ * only. Known ids are handed to every candidate that may serve the user or team.
+ */
+public class ShardedGitHubConnector implements GitHubConnector, GitHubIdAware, KnownMemberships {
+
+	private final List<RestGitHubConnector> pool = new ArrayList<>();
+	private final Map<String, List<RestGitHubConnector>> orgShards = new LinkedHashMap<>();
+	private final List<RestGitHubConnector> shards = new ArrayList<>();
+	private final Map<String, RestGitHubConnector> assigned = new ConcurrentHashMap<>();
+
+	public ShardedGitHubConnector() {
+		this(new GithubInterceptorConfig());
+	}
+
+	public ShardedGitHubConnector(GithubInterceptorConfig config) {
+		List<String> tokens = config.getOAuthTokens();
+		Map<String, List<String>> orgTokens = config.getOrgOAuthTokens();
+		List<String> poolWarmup = new ArrayList<>();
+		List<String> orgWarmup = new ArrayList<>();
+		for (String org : config.getGraphQlWarmupOrgs()) {
+			(orgTokens.containsKey(org.toLowerCase(Locale.ROOT)) ? orgWarmup : poolWarmup).add(org);
+		}
+		if (tokens.isEmpty()) {
+			pool.add(new RestGitHubConnector(config.with(GithubInterceptorConfig.GRAPHQL_WARMUP, String.join(";", poolWarmup))));
+		} else {
+			for (String token : tokens) {
+				pool.add(new RestGitHubConnector(shardConfig(config, token, pool.isEmpty() ? poolWarmup : Collections.<String> emptyList())));
+			}
+		}
+		shards.addAll(pool);
+		for (Map.Entry<String, List<String>> orgToken : orgTokens.entrySet()) {
+			List<String> warmup = new ArrayList<>();
+			for (String org : orgWarmup) {
+				if (org.equalsIgnoreCase(orgToken.getKey())) {
+					warmup.add(org);
+				}
+			}
+			List<RestGitHubConnector> connectors = new ArrayList<>();
+			for (String token : orgToken.getValue()) {
+				connectors.add(new RestGitHubConnector(shardConfig(config, token, connectors.isEmpty() ? warmup : Collections.<String> emptyList())));
+			}
+			orgShards.put(orgToken.getKey(), connectors);
+			shards.addAll(connectors);
+		}
+	}
+
+	ShardedGitHubConnector(List<RestGitHubConnector> pool, Map<String, List<RestGitHubConnector>> orgShards) {
+		this.pool.addAll(pool);
+		shards.addAll(pool);
+		for (Map.Entry<String, List<RestGitHubConnector>> orgShard : orgShards.entrySet()) {
+			this.orgShards.put(orgShard.getKey().toLowerCase(Locale.ROOT), orgShard.getValue());
+			shards.addAll(orgShard.getValue());
+		}
+	}
+
+	private static GithubInterceptorConfig shardConfig(GithubInterceptorConfig config, String token, List<String> warmup) {
+		return config.with(GithubInterceptorConfig.OAUTH_TOKEN, token).with(GithubInterceptorConfig.GRAPHQL_WARMUP, String.join(";", warmup));
+	}
+
+	public List<RestGitHubConnector> getShards() {
+		return Collections.unmodifiableList(shards);
+	}
+
+	@Override
+	public void start() {
+		shards.forEach(RestGitHubConnector::start);
+	}
+
+	@Override
+	public void stop() {
+		shards.forEach(RestGitHubConnector::stop);
+	}
+
+	@Override
+	public void addUser(String user, String team, String org) {
+		route(org).addUser(user, team, org);
+	}
+
+	@Override
+	public void removeUser(String user, String team, String org) {
+		route(org).removeUser(user, team, org);
+	}
+
+	@Override
+	public Boolean isKnownMember(String user, String team, String org) {
+		return route(org).isKnownMember(user, team, org);
+	}
+
+	@Override
+	public boolean hasUser(String user, String team, String org) {
+		return route(org).hasUser(user, team, org);
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		return leastLoaded(pool).hasUser(user);
+	}
+
+	@Override
+	public Set<String> getMembers(String team, String org) {
+		return route(org).getMembers(team, org);
+	}
+
+	@Override
+	public void useUserId(String user, long id) {
+		shards.forEach(shard -> shard.useUserId(user, id));
+	}
+
+	@Override
+	public void useTeamId(String team, String org, long id) {
+		candidates(org).forEach(shard -> shard.useTeamId(team, org, id));
+	}
+
+	@Override
+	public Long getUserId(String user) {
+		for (RestGitHubConnector shard : shards) {
+			Long id = shard.getUserId(user);
+			if (id != null) {
+				return id;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Long getTeamId(String team, String org) {
+		for (RestGitHubConnector shard : candidates(org)) {
+			Long id = shard.getTeamId(team, org);
+			if (id != null) {
+				return id;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void setIdListener(GitHubIdAware.Listener listener) {
+		shards.forEach(shard -> shard.setIdListener(listener));
+	}
+
+	RestGitHubConnector route(String org) {
+		return assigned.compute(org.toLowerCase(Locale.ROOT), (key, current) -> {
+			if (current != null && !current.getRateLimitScheduler().isExhausted()) {
+				return current;
+			}
+			RestGitHubConnector next = leastLoaded(candidates(org));
+			if (current != null && next != current) {
+				// the new token has not seen the changes made through the old one
+				next.invalidateOrg(org);
+			}
+			return next;
+		});
+	}
+
+	private List<RestGitHubConnector> candidates(String org) {
+		List<RestGitHubConnector> candidates = orgShards.get(org.toLowerCase(Locale.ROOT));
+		return candidates != null ? candidates : pool;
+	}
+
+	private static RestGitHubConnector leastLoaded(List<RestGitHubConnector> candidates) {
+		RestGitHubConnector best = null;
+		int bestRemaining = 0;
+		for (RestGitHubConnector candidate : candidates) {
+			int remaining = candidate.getRateLimitScheduler().getRemaining();
+			// a token that has not been used yet reports no quota and is as good as a full one
+			if (remaining < 0) {
+				remaining = Integer.MAX_VALUE;
+			}
+			if (best == null || remaining > bestRemaining) {
+				best = candidate;
+				bestRemaining = remaining;
+			}
+		}
+		return best;
+	}
+
+	public void bindMetrics(SyncMetrics metrics) {
+		metrics.setRateLimitRemaining(() -> {
+			int remaining = 0;
+			for (RestGitHubConnector shard : shards) {
+				remaining += Math.max(0, shard.getRateLimitScheduler().getRemaining());
+			}
+			return remaining;
+		});
+		metrics.setOrgCacheHitRatio(() -> hitRatio(RestGitHubConnector::getOrgCache));
+		metrics.setTeamCacheHitRatio(() -> hitRatio(RestGitHubConnector::getTeamIndexes));
+		metrics.setUserCacheHitRatio(() -> hitRatio(RestGitHubConnector::getUserCache));
+		metrics.setHttpCacheHitRatio(() -> {
+			long notModified = 0;
+			long modified = 0;
+			for (RestGitHubConnector shard : shards) {
+				if (shard.getResponseCache() != null) {
+					notModified += shard.getResponseCache().getNotModifiedCount();
+					modified += shard.getResponseCache().getModifiedCount();
+				}
+			}
+			return ResolutionCache.ratio(notModified, modified);
+		});
+	}
+
+	private double hitRatio(Function<RestGitHubConnector, ResolutionCache<?, ?>> cache) {
+		long hits = 0;
+		long misses = 0;
+		for (RestGitHubConnector shard : shards) {
+			hits += cache.apply(shard).getHitCount();
+			misses += cache.apply(shard).getMissCount();
+		}
+		return ResolutionCache.ratio(hits, misses);
+	}
+
+}
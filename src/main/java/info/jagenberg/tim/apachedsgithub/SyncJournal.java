@@ -0,0 +1,367 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only, memory-mapped write-ahead journal of GitHub operations that have not been applied yet.
+ * <p>
+ * Every record carries a sequence number. The header holds the checkpoint, the highest sequence number up to which all
+ * operations have been completed. Appends only write to the mapped file; a background task forces dirty pages to disk in batches.
+ * Operations completed out of order may be replayed a second time after a crash, which is harmless because adding or removing a
+ * team member is idempotent.
+ * <p>
+ * Once three quarters of the journal are written, the background task compacts it into a new file holding only the pending
+ * records, which then replaces the journal by an atomic rename, so a crash during compaction leaves either the old or the new
+ * journal behind. Appends wait for the compaction and its fsync; only when the journal fills up before the background task got to
+ * it does the appending thread compact it itself. The new file grows beyond the configured size when the pending records take up
+ * more than half of it.
+ */
+public class SyncJournal implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SyncJournal.class);
+
+	public static final String FILE_NAME = "github-sync.journal";
+
+	private static final int MAGIC = 0x47484a31;
+	private static final int CHECKPOINT_OFFSET = 4;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private final File journalFile;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private FileLock lock;
+	private volatile MappedByteBuffer buffer;
+	private final ScheduledExecutorService flusher;
+	private final ConcurrentSkipListMap<Long, SyncOperation> pending = new ConcurrentSkipListMap<>();
+	private final Map<Long, SyncOperation> recovered;
+	private long nextSequence;
+	private long lastSequence;
+	private int writePosition;
+	private volatile boolean dirty;
+	private final Object flushLock = new Object();
+	private boolean compactionRequested;
+	private boolean closed;
+
+	public SyncJournal(File directory, int size, long flushIntervalMillis) throws IOException {
+		if (size < HEADER_SIZE + RECORD_HEADER_SIZE) {
+			throw new IllegalArgumentException("Journal size " + size + " is too small");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create journal directory " + directory);
+		}
+		journalFile = new File(directory, FILE_NAME);
+		boolean exists = journalFile.length() > 0;
+		open(size);
+		if (exists && buffer.getInt(0) == MAGIC) {
+			recovered = recover();
+		} else {
+			recovered = new LinkedHashMap<>();
+			nextSequence = 1;
+			buffer.putInt(0, MAGIC);
+			buffer.putLong(CHECKPOINT_OFFSET, 0L);
+			writePosition = HEADER_SIZE;
+			buffer.putInt(writePosition, 0);
+			buffer.force();
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "github-sync-journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Operations found in the journal that were not completed before the last shutdown, by sequence number.
+	 */
+	public Map<Long, SyncOperation> getRecovered() {
+		return recovered;
+	}
+
+	public synchronized long append(SyncOperation operation) {
+		byte[] payload = encode(nextSequence, operation);
+		if (writePosition + RECORD_HEADER_SIZE + payload.length + 4 > buffer.capacity()) {
+			compact(RECORD_HEADER_SIZE + payload.length);
+		}
+		long sequence = nextSequence++;
+		writePosition = writeRecord(buffer, writePosition, payload);
+		pending.put(sequence, operation);
+		lastSequence = sequence;
+		dirty = true;
+		if (!compactionRequested && isFilling()) {
+			compactionRequested = true;
+			flusher.execute(this::compactInBackground);
+		}
+		return sequence;
+	}
+
+	public void complete(long sequence) {
+		if (pending.remove(sequence) == null) {
+			return;
+		}
+		synchronized (this) {
+			Map.Entry<Long, SyncOperation> oldest = pending.firstEntry();
+			long checkpoint = oldest == null ? lastSequence : oldest.getKey() - 1;
+			if (checkpoint > buffer.getLong(CHECKPOINT_OFFSET)) {
+				buffer.putLong(CHECKPOINT_OFFSET, checkpoint);
+				dirty = true;
+			}
+		}
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	public synchronized long getCheckpoint() {
+		return buffer.getLong(CHECKPOINT_OFFSET);
+	}
+
+	public void flush() {
+		// the lock keeps a compaction from swapping the buffer while it is forced, appends do not take it
+		synchronized (flushLock) {
+			if (dirty) {
+				dirty = false;
+				try {
+					buffer.force();
+				} catch (RuntimeException e) {
+					dirty = true;
+					LOG.warn("Could not flush GitHub sync journal", e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		flusher.shutdownNow();
+		dirty = true;
+		flush();
+		try {
+			lock.release();
+		} finally {
+			channel.close();
+			file.close();
+		}
+	}
+
+	private void open(int size) throws IOException {
+		file = new RandomAccessFile(journalFile, "rw");
+		channel = file.getChannel();
+		lock = channel.tryLock();
+		if (lock == null) {
+			channel.close();
+			throw new IOException("Journal " + journalFile + " is in use by another process");
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (int) Math.max(size, channel.size()));
+	}
+
+	private Map<Long, SyncOperation> recover() {
+		long checkpoint = buffer.getLong(CHECKPOINT_OFFSET);
+		Map<Long, SyncOperation> operations = new LinkedHashMap<>();
+		long maxSequence = checkpoint;
+		int position = HEADER_SIZE;
+		while (true) {
+			Record record = readRecord(position);
+			if (record == null) {
+				break;
+			}
+			if (record.sequence > checkpoint) {
+				operations.put(record.sequence, record.operation);
+			}
+			maxSequence = Math.max(maxSequence, record.sequence);
+			position = record.end;
+		}
+		writePosition = position;
+		if (writePosition + 4 <= buffer.capacity()) {
+			buffer.putInt(writePosition, 0);
+		}
+		nextSequence = maxSequence + 1;
+		lastSequence = maxSequence;
+		pending.putAll(operations);
+		if (!operations.isEmpty()) {
+			LOG.info("Recovered " + operations.size() + " pending GitHub operations from journal");
+		}
+		return operations;
+	}
+
+	private boolean isFilling() {
+		return writePosition > buffer.capacity() / 4 * 3;
+	}
+
+	private synchronized void compactInBackground() {
+		compactionRequested = false;
+		if (closed || !isFilling()) {
+			return;
+		}
+		try {
+			// leave half of the journal free, so a journal full of pending records grows instead of being compacted over and over
+			compact(buffer.capacity() / 2);
+		} catch (IllegalStateException e) {
+			LOG.warn(e.getMessage() + ", compacting on the next append that does not fit");
+		}
+	}
+
+	/**
+	 * Rewrites the pending records into a new journal with room for at least the given number of bytes more and swaps it in.
+	 */
+	private void compact(int room) {
+		List<byte[]> payloads = new ArrayList<>(pending.size());
+		long needed = HEADER_SIZE + room + 4;
+		for (Map.Entry<Long, SyncOperation> entry : pending.entrySet()) {
+			byte[] payload = encode(entry.getKey(), entry.getValue());
+			payloads.add(payload);
+			needed += RECORD_HEADER_SIZE + payload.length;
+		}
+		int previousSize = buffer.capacity();
+		long size = previousSize;
+		while (size < needed) {
+			size *= 2;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Journal is full with " + pending.size() + " pending operations");
+		}
+		File compacted = new File(journalFile.getParentFile(), FILE_NAME + ".compact");
+		int position = HEADER_SIZE;
+		try {
+			try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+				out.setLength(size);
+				MappedByteBuffer target = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				target.putInt(0, MAGIC);
+				target.putLong(CHECKPOINT_OFFSET, buffer.getLong(CHECKPOINT_OFFSET));
+				for (byte[] payload : payloads) {
+					position = writeRecord(target, position, payload);
+				}
+				target.force();
+			}
+			Files.move(compacted.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			// the old journal is still complete
+			compacted.delete();
+			throw new IllegalStateException("Could not compact journal " + journalFile, e);
+		}
+		synchronized (flushLock) {
+			try {
+				lock.release();
+				channel.close();
+				file.close();
+				open((int) size);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not reopen compacted journal " + journalFile, e);
+			}
+		}
+		writePosition = position;
+		if (size > previousSize) {
+			LOG.warn("Grew GitHub sync journal to " + size + " bytes for " + pending.size() + " pending operations");
+		}
+	}
+
+	private static int writeRecord(ByteBuffer target, int position, byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		target.position(position + RECORD_HEADER_SIZE);
+		target.put(payload);
+		target.putInt(position + RECORD_HEADER_SIZE + payload.length, 0);
+		target.putInt(position + 4, (int) crc.getValue());
+		target.putInt(position, payload.length);
+		return position + RECORD_HEADER_SIZE + payload.length;
+	}
+
+	private Record readRecord(int position) {
+		if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+			return null;
+		}
+		int length = buffer.getInt(position);
+		if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+			return null;
+		}
+		byte[] payload = new byte[length];
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(position + RECORD_HEADER_SIZE);
+		slice.get(payload);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+			LOG.warn("Ignoring corrupt GitHub sync journal record at offset " + position);
+			return null;
+		}
+		try {
+			ByteBuffer in = ByteBuffer.wrap(payload);
+			long sequence = in.getLong();
+			SyncOperation.Type type = SyncOperation.Type.values()[in.get()];
+			String user = readString(in);
+			String team = readString(in);
+			String org = readString(in);
+			return new Record(sequence, new SyncOperation(type, user, team, org), position + RECORD_HEADER_SIZE + length);
+		} catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+			LOG.warn("Ignoring malformed GitHub sync journal record at offset " + position);
+			return null;
+		}
+	}
+
+	private static byte[] encode(long sequence, SyncOperation operation) {
+		byte[] user = operation.getUser().getBytes(StandardCharsets.UTF_8);
+		byte[] team = operation.getTeam().getBytes(StandardCharsets.UTF_8);
+		byte[] org = operation.getOrg().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer out = ByteBuffer.allocate(8 + 1 + 6 + user.length + team.length + org.length);
+		out.putLong(sequence);
+		out.put((byte) operation.getType().ordinal());
+		writeString(out, user);
+		writeString(out, team);
+		writeString(out, org);
+		return out.array();
+	}
+
+	private static void writeString(ByteBuffer out, byte[] value) {
+		if (value.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Value too long for journal");
+		}
+		out.putShort((short) value.length);
+		out.put(value);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] value = new byte[in.getShort()];
+		in.get(value);
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	private static final class Record {
+
+		private final long sequence;
+		private final SyncOperation operation;
+		private final int end;
+
+		private Record(long sequence, SyncOperation operation, int end) {
+			this.sequence = sequence;
+			this.operation = operation;
+			this.end = end;
+		}
+
+	}
+
+}
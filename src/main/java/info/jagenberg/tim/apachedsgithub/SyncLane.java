@@ -0,0 +1,15 @@
+package info.jagenberg.tim.apachedsgithub;
+
+/**
+ * Priority lanes of queued GitHub operations, highest priority first. Removals revoke access, including the old memberships of a
+ * user moved to another organization, so they overtake additions waiting in the queue.
+ */
+public enum SyncLane {
+
+	REMOVAL, ADDITION;
+
+	public static SyncLane of(SyncOperation operation) {
+		return operation.getType() == SyncOperation.Type.REMOVE ? REMOVAL : ADDITION;
+	}
+
+}
@@ -0,0 +1,283 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters, gauges and latency histograms of the GitHub synchronization, exposed as MBeans in the
+ * {@value #DOMAIN} domain. Counters are LongAdders and gauges are only evaluated when read, so recording stays cheap on the write
+ * path.
+ */
+public class SyncMetrics implements SyncMetricsMBean {
+
+	public static final String DOMAIN = "info.jagenberg.tim.apachedsgithub";
+
+	private static final Logger LOG = LoggerFactory.getLogger(SyncMetrics.class);
+
+	private final LongAdder ldapOperations = new LongAdder();
+	private final LongAdder skippedOperations = new LongAdder();
+	private final LongAdder gitHubAdds = new LongAdder();
+	private final LongAdder gitHubRemoves = new LongAdder();
+	private final LongAdder gitHubSkips = new LongAdder();
+	private final LongAdder gitHubFailures = new LongAdder();
+	private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+	private final LatencyHistogram ldapAdd = latency("ldap.add");
+	private final LatencyHistogram ldapModify = latency("ldap.modify");
+	private final LatencyHistogram ldapDelete = latency("ldap.delete");
+	private final LatencyHistogram gitHubAddUser = latency("github.addUser");
+	private final LatencyHistogram gitHubRemoveUser = latency("github.removeUser");
+	private final LatencyHistogram gitHubHasUser = latency("github.hasUser");
+	private final LatencyHistogram gitHubGetMembers = latency("github.getMembers");
+	private final Map<SyncLane, LatencyHistogram> queueLatencies = new EnumMap<>(SyncLane.class);
+	private volatile IntSupplier queueDepth = () -> 0;
+	private volatile IntSupplier rateLimitRemaining = () -> -1;
+	private volatile Supplier<String> circuitState = () -> "DISABLED";
+	private volatile DoubleSupplier orgCacheHitRatio = () -> 0d;
+	private volatile DoubleSupplier teamCacheHitRatio = () -> 0d;
+	private volatile DoubleSupplier userCacheHitRatio = () -> 0d;
+	private volatile DoubleSupplier httpCacheHitRatio = () -> 0d;
+	private MBeanServer server;
+
+	public SyncMetrics() {
+		for (SyncLane lane : SyncLane.values()) {
+			queueLatencies.put(lane, latency("queue." + lane.name().toLowerCase(Locale.ROOT)));
+		}
+	}
+
+	private LatencyHistogram latency(String name) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		latencies.put(name, histogram);
+		return histogram;
+	}
+
+	public LatencyHistogram getLdapAddLatency() {
+		return ldapAdd;
+	}
+
+	public LatencyHistogram getLdapModifyLatency() {
+		return ldapModify;
+	}
+
+	public LatencyHistogram getLdapDeleteLatency() {
+		return ldapDelete;
+	}
+
+	public LatencyHistogram getGitHubAddUserLatency() {
+		return gitHubAddUser;
+	}
+
+	public LatencyHistogram getGitHubRemoveUserLatency() {
+		return gitHubRemoveUser;
+	}
+
+	public LatencyHistogram getGitHubHasUserLatency() {
+		return gitHubHasUser;
+	}
+
+	public LatencyHistogram getGitHubGetMembersLatency() {
+		return gitHubGetMembers;
+	}
+
+	/**
+	 * The time queued operations of the given lane took from being enqueued until they were applied to GitHub.
+	 */
+	public LatencyHistogram getQueueLatency(SyncLane lane) {
+		return queueLatencies.get(lane);
+	}
+
+	void ldapOperation(int plannedOperations) {
+		ldapOperations.increment();
+		if (plannedOperations == 0) {
+			skippedOperations.increment();
+		}
+	}
+
+	void gitHubAdd() {
+		gitHubAdds.increment();
+	}
+
+	void gitHubRemove() {
+		gitHubRemoves.increment();
+	}
+
+	void gitHubSkip() {
+		gitHubSkips.increment();
+	}
+
+	void gitHubFailure() {
+		gitHubFailures.increment();
+	}
+
+	public void setQueueDepth(IntSupplier queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public void setRateLimitRemaining(IntSupplier rateLimitRemaining) {
+		this.rateLimitRemaining = rateLimitRemaining;
+	}
+
+	public void setCircuitState(Supplier<String> circuitState) {
+		this.circuitState = circuitState;
+	}
+
+	public void setOrgCacheHitRatio(DoubleSupplier orgCacheHitRatio) {
+		this.orgCacheHitRatio = orgCacheHitRatio;
+	}
+
+	public void setTeamCacheHitRatio(DoubleSupplier teamCacheHitRatio) {
+		this.teamCacheHitRatio = teamCacheHitRatio;
+	}
+
+	public void setUserCacheHitRatio(DoubleSupplier userCacheHitRatio) {
+		this.userCacheHitRatio = userCacheHitRatio;
+	}
+
+	public void setHttpCacheHitRatio(DoubleSupplier httpCacheHitRatio) {
+		this.httpCacheHitRatio = httpCacheHitRatio;
+	}
+
+	@Override
+	public long getLdapOperations() {
+		return ldapOperations.sum();
+	}
+
+	@Override
+	public long getSkippedOperations() {
+		return skippedOperations.sum();
+	}
+
+	@Override
+	public long getGitHubAdds() {
+		return gitHubAdds.sum();
+	}
+
+	@Override
+	public long getGitHubRemoves() {
+		return gitHubRemoves.sum();
+	}
+
+	@Override
+	public long getGitHubSkips() {
+		return gitHubSkips.sum();
+	}
+
+	@Override
+	public long getGitHubFailures() {
+		return gitHubFailures.sum();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return queueDepth.getAsInt();
+	}
+
+	@Override
+	public int getRateLimitRemaining() {
+		return rateLimitRemaining.getAsInt();
+	}
+
+	@Override
+	public String getCircuitState() {
+		return circuitState.get();
+	}
+
+	@Override
+	public double getOrgCacheHitRatio() {
+		return orgCacheHitRatio.getAsDouble();
+	}
+
+	@Override
+	public double getTeamCacheHitRatio() {
+		return teamCacheHitRatio.getAsDouble();
+	}
+
+	@Override
+	public double getUserCacheHitRatio() {
+		return userCacheHitRatio.getAsDouble();
+	}
+
+	@Override
+	public double getHttpCacheHitRatio() {
+		return httpCacheHitRatio.getAsDouble();
+	}
+
+	@Override
+	public void reset() {
+		ldapOperations.reset();
+		skippedOperations.reset();
+		gitHubAdds.reset();
+		gitHubRemoves.reset();
+		gitHubSkips.reset();
+		gitHubFailures.reset();
+		latencies.values().forEach(LatencyHistogram::reset);
+	}
+
+	/**
+	 * Registers the metrics with the platform MBeanServer, replacing the MBeans of an earlier instance.
+	 */
+	public synchronized void register() {
+		MBeanServer platformServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			registerMBean(platformServer, this, new ObjectName(DOMAIN + ":type=SyncMetrics"));
+			for (Map.Entry<String, LatencyHistogram> latency : latencies.entrySet()) {
+				registerMBean(platformServer, latency.getValue(), latencyName(latency.getKey()));
+			}
+			server = platformServer;
+		} catch (JMException e) {
+			LOG.warn("Could not register GitHub sync metrics", e);
+		}
+	}
+
+	public synchronized void unregister() {
+		if (server == null) {
+			return;
+		}
+		try {
+			unregisterMBean(new ObjectName(DOMAIN + ":type=SyncMetrics"));
+			for (String name : latencies.keySet()) {
+				unregisterMBean(latencyName(name));
+			}
+		} catch (JMException e) {
+			LOG.warn("Could not unregister GitHub sync metrics", e);
+		}
+		server = null;
+	}
+
+	private static void registerMBean(MBeanServer server, Object mbean, ObjectName name) throws JMException {
+		try {
+			server.registerMBean(mbean, name);
+		} catch (InstanceAlreadyExistsException e) {
+			server.unregisterMBean(name);
+			server.registerMBean(mbean, name);
+		}
+	}
+
+	private void unregisterMBean(ObjectName name) throws JMException {
+		try {
+			server.unregisterMBean(name);
+		} catch (InstanceNotFoundException e) {
+			// already replaced by another instance
+		}
+	}
+
+	private static ObjectName latencyName(String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Latency,name=" + name);
+	}
+
+}
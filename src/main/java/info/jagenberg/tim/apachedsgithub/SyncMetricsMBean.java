@@ -0,0 +1,33 @@
+package info.jagenberg.tim.apachedsgithub;
+
+public interface SyncMetricsMBean {
+
+	long getLdapOperations();
+
+	long getSkippedOperations();
+
+	long getGitHubAdds();
+
+	long getGitHubRemoves();
+
+	long getGitHubSkips();
+
+	long getGitHubFailures();
+
+	int getQueueDepth();
+
+	int getRateLimitRemaining();
+
+	String getCircuitState();
+
+	double getOrgCacheHitRatio();
+
+	double getTeamCacheHitRatio();
+
+	double getUserCacheHitRatio();
+
+	double getHttpCacheHitRatio();
+
+	void reset();
+
+}
@@ -0,0 +1,81 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.Locale;
+import java.util.Objects;
+
+public final class SyncOperation {
+
+	public enum Type {
+		ADD, REMOVE
+	}
+
+	private final Type type;
+	private final String user;
+	private final String team;
+	private final String org;
+
+	public SyncOperation(Type type, String user, String team, String org) {
+		this.type = Objects.requireNonNull(type);
+		this.user = Objects.requireNonNull(user);
+		this.team = Objects.requireNonNull(team);
+		this.org = Objects.requireNonNull(org);
+	}
+
+	public static SyncOperation add(String user, String team, String org) {
+		return new SyncOperation(Type.ADD, user, team, org);
+	}
+
+	public static SyncOperation remove(String user, String team, String org) {
+		return new SyncOperation(Type.REMOVE, user, team, org);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public String getTeam() {
+		return team;
+	}
+
+	public String getOrg() {
+		return org;
+	}
+
+	/**
+	 * All GitHub names are matched case-insensitively, so two operations on the same membership share this key regardless of spelling.
+	 */
+	public String getMembershipKey() {
+		return (org + '/' + team + '/' + user).toLowerCase(Locale.ROOT);
+	}
+
+	public String getTeamKey() {
+		return (org + '/' + team).toLowerCase(Locale.ROOT);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(type, user, team, org);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SyncOperation)) {
+			return false;
+		}
+		SyncOperation other = (SyncOperation) obj;
+		return type == other.type && user.equals(other.user) && team.equals(other.team) && org.equals(other.org);
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + user + (type == Type.ADD ? " to " : " from ") + team + " in " + org;
+	}
+
+}
@@ -0,0 +1,56 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The GitHub operations that follow one directory operation. Operations taken from the entry and the modification alone are known
+ * right away. The parts that read other entries, resolving the logins of group members or checking whether another entry still grants
+ * a team, are deferred until {@link #resolve()}, which asynchronous synchronization calls off the directory thread.
+ */
+final class SyncPlan {
+
+	private final List<SyncOperation> operations = new ArrayList<>();
+	private final List<Supplier<List<SyncOperation>>> deferred = new ArrayList<>();
+
+	void add(SyncOperation operation) {
+		if (deferred.isEmpty()) {
+			operations.add(operation);
+		} else {
+			// keep the order of the plan
+			deferred.add(() -> Collections.singletonList(operation));
+		}
+	}
+
+	void defer(Supplier<List<SyncOperation>> part) {
+		deferred.add(part);
+	}
+
+	/**
+	 * Whether all operations are known without reading the directory.
+	 */
+	boolean isResolved() {
+		return deferred.isEmpty();
+	}
+
+	/**
+	 * The operations known so far.
+	 */
+	List<SyncOperation> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Plans the deferred parts and returns all operations in the order they were planned.
+	 */
+	List<SyncOperation> resolve() {
+		List<SyncOperation> resolved = new ArrayList<>(operations);
+		for (Supplier<List<SyncOperation>> part : deferred) {
+			resolved.addAll(part.get());
+		}
+		return resolved;
+	}
+
+}
@@ -0,0 +1,439 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of pending GitHub membership changes, drained by a fixed set of worker threads. Operations are striped over the
+ * workers by membership, so changes to the same user/team/org are applied in the order they were enqueued.
+ * <p>
+ * Each operation waits for the coalescing window before it is handed to a worker. While it waits, a duplicate operation on the
+ * same membership is dropped and an opposing one replaces it, so only the last change of rapid churn reaches GitHub. Opposing
+ * changes do not cancel out, as the waiting operation may not have changed anything, for example an addition of a user who was
+ * already a member, or may already have reached GitHub before a crash if it was replayed from the journal.
+ * <p>
+ * Every stripe keeps one lane per {@link SyncLane}, and a worker takes the next ready operation from the highest lane. So that a
+ * steady stream of removals cannot hold additions back forever, a lower lane with a ready operation is served after it has been
+ * passed over starvationLimit times in a row. As only one operation per membership waits at a time, lanes never reorder changes to
+ * the same membership.
+ */
+public class SyncQueue {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SyncQueue.class);
+
+	private final Consumer<SyncOperation> handler;
+	private final SyncJournal journal;
+	private final Stripe[] stripes;
+	private final long enqueueTimeoutMillis;
+	private final long coalesceWindowNanos;
+	private final int starvationLimit;
+	private volatile SyncMetrics metrics;
+	private final Object idleLock = new Object();
+	private int pending;
+	private volatile boolean running;
+
+	public SyncQueue(Consumer<SyncOperation> handler, int workers, int capacity, long enqueueTimeoutMillis) {
+		this(handler, null, workers, capacity, enqueueTimeoutMillis, 0);
+	}
+
+	public SyncQueue(Consumer<SyncOperation> handler, SyncJournal journal, int workers, int capacity, long enqueueTimeoutMillis, long coalesceWindowMillis) {
+		this(handler, journal, workers, capacity, enqueueTimeoutMillis, coalesceWindowMillis, 10);
+	}
+
+	public SyncQueue(Consumer<SyncOperation> handler, SyncJournal journal, int workers, int capacity, long enqueueTimeoutMillis, long coalesceWindowMillis,
+			int starvationLimit) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("At least one sync worker is required");
+		}
+		if (capacity < workers) {
+			throw new IllegalArgumentException("Sync queue capacity must be at least the number of workers");
+		}
+		if (starvationLimit < 1) {
+			throw new IllegalArgumentException("Sync queue starvation limit must be positive");
+		}
+		this.handler = handler;
+		this.journal = journal;
+		this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+		this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis);
+		this.starvationLimit = starvationLimit;
+		stripes = new Stripe[workers];
+		for (int i = 0; i < workers; i++) {
+			stripes[i] = new Stripe(i, capacity / workers);
+		}
+	}
+
+	/**
+	 * Records the time from enqueueing to completion of every operation in the latency histogram of its lane.
+	 */
+	public void bindMetrics(SyncMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		for (Stripe stripe : stripes) {
+			stripe.worker.start();
+		}
+	}
+
+	public void enqueueAll(Collection<SyncOperation> operations) {
+		operations.forEach(this::enqueue);
+	}
+
+	public boolean enqueue(SyncOperation operation) {
+		if (!running) {
+			throw new IllegalStateException("Sync queue is not running");
+		}
+		long sequence = -1;
+		if (journal != null) {
+			try {
+				sequence = journal.append(operation);
+			} catch (IllegalStateException e) {
+				LOG.error("Could not journal " + operation + ": " + e.getMessage());
+			}
+		}
+		long now = System.nanoTime();
+		return offer(new QueuedOperation(operation, sequence, now, now + coalesceWindowNanos));
+	}
+
+	/**
+	 * Re-enqueues operations recovered from the journal, keeping their original sequence numbers.
+	 */
+	public void replay(Map<Long, SyncOperation> operations) {
+		if (!running) {
+			throw new IllegalStateException("Sync queue is not running");
+		}
+		long now = System.nanoTime();
+		operations.forEach((sequence, operation) -> offer(new QueuedOperation(operation, sequence, now, now)));
+	}
+
+	private boolean offer(QueuedOperation queued) {
+		synchronized (idleLock) {
+			pending++;
+		}
+		boolean accepted = false;
+		try {
+			accepted = stripeFor(queued.operation).offer(queued, enqueueTimeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!accepted) {
+			done();
+			// a journaled operation stays pending in the journal and is replayed on the next start
+			LOG.error("Sync queue full, dropping " + queued.operation);
+		}
+		return accepted;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	public int size(SyncLane lane) {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			size += stripe.size(lane);
+		}
+		return size;
+	}
+
+	/**
+	 * Whether an operation on the same membership is waiting or being applied, so a later change of it has to go through this queue
+	 * to keep its order.
+	 */
+	public boolean isBusy(SyncOperation operation) {
+		return stripeFor(operation).contains(operation.getMembershipKey());
+	}
+
+	public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (idleLock) {
+			while (pending > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(idleLock, remaining);
+			}
+		}
+		return true;
+	}
+
+	public void shutdown(long timeoutMillis) {
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+		}
+		for (Stripe stripe : stripes) {
+			stripe.wakeUp();
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		for (Stripe stripe : stripes) {
+			try {
+				stripe.worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		int dropped = 0;
+		for (Stripe stripe : stripes) {
+			stripe.worker.interrupt();
+			dropped += stripe.size();
+		}
+		if (dropped > 0) {
+			LOG.warn("Sync queue shut down with " + dropped + " pending GitHub operations");
+		}
+	}
+
+	private Stripe stripeFor(SyncOperation operation) {
+		return stripes[Math.floorMod(operation.getMembershipKey().hashCode(), stripes.length)];
+	}
+
+	private void process(QueuedOperation queued) {
+		try {
+			handler.accept(queued.operation);
+		} catch (RuntimeException e) {
+			LOG.warn("Could not sync " + queued.operation, e);
+		} finally {
+			SyncMetrics current = metrics;
+			if (current != null) {
+				current.getQueueLatency(queued.lane).recordSince(queued.enqueuedAt);
+			}
+		}
+	}
+
+	private void discard(QueuedOperation queued) {
+		if (journal != null && queued.sequence >= 0) {
+			journal.complete(queued.sequence);
+		}
+		done();
+	}
+
+	private void done() {
+		synchronized (idleLock) {
+			pending--;
+			if (pending == 0) {
+				idleLock.notifyAll();
+			}
+		}
+	}
+
+	private static final class QueuedOperation {
+
+		private final SyncOperation operation;
+		private final SyncLane lane;
+		private final long sequence;
+		private final long enqueuedAt;
+		private final long readyAt;
+
+		private QueuedOperation(SyncOperation operation, long sequence, long enqueuedAt, long readyAt) {
+			this.operation = operation;
+			this.lane = SyncLane.of(operation);
+			this.sequence = sequence;
+			this.enqueuedAt = enqueuedAt;
+			this.readyAt = readyAt;
+		}
+
+	}
+
+	private class Stripe implements Runnable {
+
+		private final List<LinkedHashMap<String, QueuedOperation>> lanes = new ArrayList<>();
+		private final int[] passedOver = new int[SyncLane.values().length];
+		private final int capacity;
+		private int size;
+		private String applying;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+		private final Thread worker;
+
+		private Stripe(int index, int capacity) {
+			this.capacity = capacity;
+			for (int i = 0; i < SyncLane.values().length; i++) {
+				lanes.add(new LinkedHashMap<>());
+			}
+			worker = new Thread(this, "github-sync-" + index);
+			worker.setDaemon(true);
+		}
+
+		private boolean offer(QueuedOperation operation, long timeoutMillis) throws InterruptedException {
+			String key = operation.operation.getMembershipKey();
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			lock.lock();
+			try {
+				while (true) {
+					QueuedOperation waiting = find(key);
+					if (waiting != null) {
+						if (waiting.operation.getType() == operation.operation.getType()) {
+							discard(operation);
+						} else {
+							// the last change tells the outcome, whatever the waiting one would have done
+							lanes.get(waiting.lane.ordinal()).remove(key);
+							lanes.get(operation.lane.ordinal()).put(key, operation);
+							notEmpty.signal();
+							discard(waiting);
+						}
+						return true;
+					}
+					if (size < capacity) {
+						break;
+					}
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = notFull.awaitNanos(nanos);
+				}
+				lanes.get(operation.lane.ordinal()).put(key, operation);
+				size++;
+				notEmpty.signal();
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private QueuedOperation take() throws InterruptedException {
+			lock.lock();
+			try {
+				while (true) {
+					if (size == 0) {
+						if (!running) {
+							return null;
+						}
+						notEmpty.await();
+						continue;
+					}
+					long now = System.nanoTime();
+					long delay = Long.MAX_VALUE;
+					int chosen = -1;
+					for (int lane = 0; lane < lanes.size(); lane++) {
+						LinkedHashMap<String, QueuedOperation> operations = lanes.get(lane);
+						if (operations.isEmpty()) {
+							continue;
+						}
+						long laneDelay = operations.values().iterator().next().readyAt - now;
+						if (laneDelay > 0 && running) {
+							delay = Math.min(delay, laneDelay);
+						} else if (chosen < 0 || passedOver[lane] >= starvationLimit) {
+							if (chosen >= 0) {
+								passedOver[chosen]++;
+							}
+							chosen = lane;
+						} else {
+							passedOver[lane]++;
+						}
+					}
+					if (chosen >= 0) {
+						passedOver[chosen] = 0;
+						Iterator<QueuedOperation> iterator = lanes.get(chosen).values().iterator();
+						QueuedOperation operation = iterator.next();
+						iterator.remove();
+						size--;
+						applying = operation.operation.getMembershipKey();
+						notFull.signal();
+						return operation;
+					}
+					notEmpty.awaitNanos(delay);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private QueuedOperation find(String key) {
+			for (LinkedHashMap<String, QueuedOperation> operations : lanes) {
+				QueuedOperation operation = operations.get(key);
+				if (operation != null) {
+					return operation;
+				}
+			}
+			return null;
+		}
+
+		private boolean contains(String key) {
+			lock.lock();
+			try {
+				return key.equals(applying) || find(key) != null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void applied() {
+			lock.lock();
+			try {
+				applying = null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private int size() {
+			lock.lock();
+			try {
+				return size;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private int size(SyncLane lane) {
+			lock.lock();
+			try {
+				return lanes.get(lane.ordinal()).size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void wakeUp() {
+			lock.lock();
+			try {
+				notEmpty.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				QueuedOperation operation;
+				while ((operation = take()) != null) {
+					try {
+						process(operation);
+					} finally {
+						applied();
+						discard(operation);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
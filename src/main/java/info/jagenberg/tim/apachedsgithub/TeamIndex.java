@@ -0,0 +1,84 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.github.GHOrganization;
+import org.kohsuke.github.GHTeam;
+
+/**
+ * Case-insensitive index of the teams of one organization. Lookups read an immutable snapshot; a miss re-lists the teams of the
+ * organization at most once per refresh interval and merges them into a new snapshot.
+ */
+public class TeamIndex {
+
+	private final GHOrganization ghOrg;
+	private final long minRefreshIntervalNanos;
+	private volatile Map<String, GHTeam> teams = Collections.emptyMap();
+	private long lastRefresh;
+	private boolean loaded;
+
+	public TeamIndex(GHOrganization ghOrg, long minRefreshIntervalMillis) {
+		this.ghOrg = ghOrg;
+		this.minRefreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minRefreshIntervalMillis);
+	}
+
+	public GHTeam find(String team) {
+		String key = normalize(team);
+		GHTeam ghTeam = teams.get(key);
+		if (ghTeam == null) {
+			ghTeam = refreshAndFind(key, team);
+		}
+		return ghTeam;
+	}
+
+	public synchronized void remove(String team) {
+		String key = normalize(team);
+		if (teams.containsKey(key)) {
+			Map<String, GHTeam> copy = new HashMap<>(teams);
+			copy.remove(key);
+			teams = Collections.unmodifiableMap(copy);
+		}
+	}
+
+	public int size() {
+		return teams.size();
+	}
+
+	private synchronized GHTeam refreshAndFind(String key, String team) {
+		GHTeam ghTeam = teams.get(key);
+		if (ghTeam == null && (!loaded || System.nanoTime() - lastRefresh >= minRefreshIntervalNanos)) {
+			refresh(team);
+			ghTeam = teams.get(key);
+		}
+		if (ghTeam == null) {
+			throw new IllegalArgumentException("Could not find team " + team);
+		}
+		return ghTeam;
+	}
+
+	private void refresh(String team) {
+		Map<String, GHTeam> listed;
+		try {
+			listed = ghOrg.getTeams();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not find team " + team, e);
+		}
+		Map<String, GHTeam> copy = new HashMap<>(teams);
+		for (GHTeam ghTeam : listed.values()) {
+			copy.put(normalize(ghTeam.getName()), ghTeam);
+		}
+		teams = Collections.unmodifiableMap(copy);
+		lastRefresh = System.nanoTime();
+		loaded = true;
+	}
+
+	private static String normalize(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+}
@@ -0,0 +1,140 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+
+import org.kohsuke.github.HttpConnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Changes team memberships through the REST endpoints that address a team by its numeric id, so neither the organization, the team
+ * list nor the user has to be resolved first. Also looks up the current login of a user id, which survives renames.
+ */
+public class TeamMembershipClient {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final String apiUrl;
+	private final String token;
+	private final HttpConnector connector;
+
+	public TeamMembershipClient(String apiUrl, String token, HttpConnector connector) {
+		this.apiUrl = (apiUrl == null ? "https://api.github.com" : apiUrl).replaceAll("/+$", "");
+		this.token = token;
+		this.connector = connector;
+	}
+
+	/**
+	 * Adds the user to the team; false if GitHub knows no such team or user. Unlike the members endpoint used by GHTeam.add, which
+	 * refuses users outside the organization, the membership endpoint invites them: they join the organization and the team once
+	 * they accept, and until then GitHub lists the membership as pending.
+	 */
+	public boolean add(long teamId, String user) {
+		return change("PUT", teamId, user, "add " + user + " to team " + teamId);
+	}
+
+	/**
+	 * Removes the user from the team; false if GitHub knows no such team or user.
+	 */
+	public boolean remove(long teamId, String user) {
+		return change("DELETE", teamId, user, "remove " + user + " from team " + teamId);
+	}
+
+	/**
+	 * Whether GitHub knows a team with this id.
+	 */
+	public boolean hasTeam(long teamId) {
+		try {
+			HttpURLConnection connection = open("GET", "/teams/" + teamId);
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+				discard(connection);
+				return false;
+			}
+			checkSuccess(connection, code);
+			discard(connection);
+			return true;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not find team " + teamId, e);
+		}
+	}
+
+	/**
+	 * The current login of the user, or null if GitHub knows no user with this id.
+	 */
+	public String getLogin(long userId) {
+		try {
+			HttpURLConnection connection = open("GET", "/user/" + userId);
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+				discard(connection);
+				return null;
+			}
+			checkSuccess(connection, code);
+			JsonNode user;
+			try (InputStream in = connection.getInputStream()) {
+				user = mapper.readTree(in);
+			}
+			JsonNode login = user.path("login");
+			return login.isTextual() ? login.asText() : null;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not find user " + userId, e);
+		}
+	}
+
+	private boolean change(String method, long teamId, String user, String description) {
+		try {
+			HttpURLConnection connection = open(method, "/teams/" + teamId + "/memberships/" + URLEncoder.encode(user, "UTF-8"));
+			// some frontends answer a PUT without a body length with 411
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(0);
+			connection.getOutputStream().close();
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+				discard(connection);
+				return false;
+			}
+			checkSuccess(connection, code);
+			discard(connection);
+			return true;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not " + description, e);
+		}
+	}
+
+	private HttpURLConnection open(String method, String path) throws IOException {
+		URL url;
+		try {
+			url = new URL(apiUrl + path);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid GitHub API URL " + apiUrl, e);
+		}
+		HttpURLConnection connection = connector.connect(url);
+		connection.setRequestMethod(method);
+		if (token != null) {
+			connection.setRequestProperty("Authorization", "token " + token);
+		}
+		connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
+		return connection;
+	}
+
+	private static void checkSuccess(HttpURLConnection connection, int code) throws IOException {
+		if (code / 100 != 2) {
+			discard(connection);
+			throw new IOException("GitHub answered " + code + " " + connection.getResponseMessage());
+		}
+	}
+
+	private static void discard(HttpURLConnection connection) throws IOException {
+		InputStream in = connection.getResponseCode() / 100 == 2 ? connection.getInputStream() : connection.getErrorStream();
+		if (in != null) {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.kohsuke.github.HttpConnector;
+
+/**
+ * Default HTTP transport to GitHub. It bounds connect and read times, which the default transport of github-api leaves unlimited,
+ * and bypasses the response cache. Connections are reused through the keep-alive cache every HttpURLConnection in the JVM shares,
+ * which this transport does not manage; only when githubinterceptor.transport.maxconnections is configured does it set the size of
+ * that cache through the JVM wide system property http.maxConnections.
+ */
+public class TimeoutHttpConnector implements HttpConnector {
+
+	static final String MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+
+	public TimeoutHttpConnector() {
+		this(new GithubInterceptorConfig());
+	}
+
+	public TimeoutHttpConnector(GithubInterceptorConfig config) {
+		this(config.getTransportConnectTimeoutMillis(), config.getTransportReadTimeoutMillis());
+		int maxConnections = config.getTransportMaxConnections();
+		if (maxConnections < 0) {
+			throw new IllegalArgumentException("The keep-alive cache size must not be negative");
+		}
+		// the JDK reads the cache size once for the whole JVM, a system property set by the operator wins
+		if (maxConnections > 0 && System.getProperty(MAX_CONNECTIONS_PROPERTY) == null) {
+			System.setProperty(MAX_CONNECTIONS_PROPERTY, Integer.toString(maxConnections));
+		}
+	}
+
+	public TimeoutHttpConnector(int connectTimeoutMillis, int readTimeoutMillis) {
+		if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Timeouts must not be negative");
+		}
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	@Override
+	public HttpURLConnection connect(URL url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(connectTimeoutMillis);
+		connection.setReadTimeout(readTimeoutMillis);
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+}
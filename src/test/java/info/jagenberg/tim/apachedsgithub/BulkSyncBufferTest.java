@@ -0,0 +1,174 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BulkSyncBufferTest {
+
+	private final List<SyncOperation> handled = new CopyOnWriteArrayList<>();
+	private final List<SyncOperation> prefetched = new CopyOnWriteArrayList<>();
+	private BulkSyncBuffer buffer;
+
+	@After
+	public void tearDown() {
+		if (buffer != null) {
+			buffer.shutdown(1000);
+		}
+	}
+
+	@Test
+	public void testGroupsByTeam() throws InterruptedException {
+		buffer = new BulkSyncBuffer(handled::add, prefetched::add, null, 100, 1000, 60000, 2, 0);
+		buffer.start();
+		buffer.addAll(Arrays.asList(SyncOperation.add("a", "members", "fix-trondheim"), SyncOperation.add("a", "alumni", "fix-trondheim"),
+				SyncOperation.add("b", "Members", "FIX-Trondheim"), SyncOperation.add("c", "members", "fix-trondheim")));
+		assertEquals(4, buffer.size());
+		assertTrue(buffer.isBusy());
+
+		assertTrue(buffer.awaitFlushed(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(SyncOperation.add("a", "members", "fix-trondheim"), SyncOperation.add("b", "Members", "FIX-Trondheim"),
+				SyncOperation.add("c", "members", "fix-trondheim"), SyncOperation.add("a", "alumni", "fix-trondheim")), handled);
+		assertEquals(Arrays.asList(SyncOperation.add("a", "members", "fix-trondheim")), prefetched);
+		assertFalse(buffer.isBusy());
+	}
+
+	@Test
+	public void testCoalescesMemberships() throws InterruptedException {
+		buffer = new BulkSyncBuffer(handled::add, prefetched::add, null, 100, 1000, 60000, 10, 0);
+		buffer.start();
+		buffer.addAll(Arrays.asList(SyncOperation.add("a", "members", "fix-trondheim"), SyncOperation.add("A", "members", "fix-trondheim"),
+				SyncOperation.add("b", "members", "fix-trondheim"), SyncOperation.remove("b", "members", "fix-trondheim")));
+		assertEquals(2, buffer.size());
+
+		assertTrue(buffer.awaitFlushed(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(SyncOperation.remove("b", "members", "fix-trondheim"), SyncOperation.add("a", "members", "fix-trondheim")), handled);
+		assertTrue(prefetched.isEmpty());
+	}
+
+	@Test
+	public void testFlushesWhenQuiet() throws InterruptedException {
+		buffer = new BulkSyncBuffer(handled::add, prefetched::add, null, 100, 1000, 50, 10, 0);
+		buffer.start();
+		buffer.add(SyncOperation.add("a", "members", "fix-trondheim"));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (handled.isEmpty() && System.currentTimeMillis() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		assertEquals(1, handled.size());
+	}
+
+	@Test
+	public void testFullBufferDropsAfterTimeout() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		buffer = new BulkSyncBuffer(op -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			handled.add(op);
+		}, prefetched::add, null, 1, 50, 0, 10, 0);
+		buffer.start();
+
+		assertTrue(buffer.add(SyncOperation.add("a", "members", "fix-trondheim")));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(buffer.add(SyncOperation.add("b", "members", "fix-trondheim")));
+		assertFalse(buffer.add(SyncOperation.add("c", "members", "fix-trondheim")));
+
+		release.countDown();
+		assertTrue(buffer.awaitFlushed(5, TimeUnit.SECONDS));
+		assertEquals(2, handled.size());
+	}
+
+	@Test
+	public void testBusyOnlyForBufferedMemberships() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		buffer = new BulkSyncBuffer(op -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, prefetched::add, null, 100, 1000, 0, 10, 0);
+		buffer.start();
+
+		buffer.add(SyncOperation.add("a", "members", "fix-trondheim"));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		buffer.add(SyncOperation.add("b", "members", "fix-trondheim"));
+		assertTrue(buffer.isBusy(Arrays.asList(SyncOperation.remove("A", "Members", "fix-trondheim"))));
+		assertTrue(buffer.isBusy(Arrays.asList(SyncOperation.add("c", "members", "fix-trondheim"), SyncOperation.remove("b", "members", "fix-trondheim"))));
+		assertFalse(buffer.isBusy(Arrays.asList(SyncOperation.add("c", "members", "fix-trondheim"), SyncOperation.add("a", "alumni", "fix-trondheim"))));
+
+		release.countDown();
+		assertTrue(buffer.awaitFlushed(5, TimeUnit.SECONDS));
+		assertFalse(buffer.isBusy(Arrays.asList(SyncOperation.remove("a", "members", "fix-trondheim"))));
+	}
+
+	@Test
+	public void testAppliesTeamsConcurrently() throws InterruptedException {
+		CountDownLatch additions = new CountDownLatch(4);
+		AtomicBoolean concurrent = new AtomicBoolean(true);
+		buffer = new BulkSyncBuffer(op -> {
+			if (op.getType() == SyncOperation.Type.ADD) {
+				additions.countDown();
+				try {
+					// each team waits for the others, so the batch only completes in time if all four are applied at once
+					if (!additions.await(5, TimeUnit.SECONDS)) {
+						concurrent.set(false);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			handled.add(op);
+		}, prefetched::add, null, 100, 1000, 60000, 10, 0, 4);
+		buffer.start();
+		for (String team : Arrays.asList("members", "alumni", "developers", "owners")) {
+			buffer.add(SyncOperation.add("a", team, "fix-trondheim"));
+			buffer.add(SyncOperation.remove("b", team, "fix-trondheim"));
+		}
+
+		assertTrue(buffer.awaitFlushed(10, TimeUnit.SECONDS));
+		assertTrue(concurrent.get());
+		assertEquals(8, handled.size());
+		for (SyncOperation operation : handled.subList(0, 4)) {
+			assertEquals(SyncOperation.Type.REMOVE, operation.getType());
+		}
+	}
+
+	@Test
+	public void testDetectsAddRate() {
+		buffer = new BulkSyncBuffer(handled::add, prefetched::add, null, 100, 1000, 60000, 10, 1000);
+		assertFalse(buffer.recordAdd());
+		boolean bulk = false;
+		for (int i = 0; i < 2000 && !bulk; i++) {
+			bulk = buffer.recordAdd();
+		}
+		assertTrue(bulk);
+	}
+
+	@Test
+	public void testAddRateDetectionDisabled() {
+		buffer = new BulkSyncBuffer(handled::add, prefetched::add, null, 100, 1000, 60000, 10, 0);
+		for (int i = 0; i < 100; i++) {
+			assertFalse(buffer.recordAdd());
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong();
+	private final CircuitBreaker breaker = new CircuitBreaker(4, 0.5d, 1000, 30000, now::get);
+
+	@Test
+	public void testOpensAtFailureRate() {
+		record(true);
+		record(false);
+		record(true);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		record(false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertRejected();
+	}
+
+	@Test
+	public void testSlowCallsCountAsFailures() {
+		for (int i = 0; i < 4; i++) {
+			breaker.acquirePermission();
+			breaker.onResult(true, TimeUnit.MILLISECONDS.toNanos(i % 2 == 0 ? 10 : 1500));
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void testWindowSlides() {
+		record(false);
+		for (int i = 0; i < 10; i++) {
+			record(true);
+		}
+		record(false);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testHalfOpenProbeClosesCircuit() {
+		open();
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(30000));
+
+		breaker.acquirePermission();
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		// only one probe at a time
+		assertRejected();
+		breaker.onResult(true, 0);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testFailedProbeReopensCircuit() {
+		open();
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(30000));
+
+		breaker.acquirePermission();
+		breaker.onResult(false, 0);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertRejected();
+	}
+
+	@Test
+	public void testReleasedProbeLetsNextCallProbe() {
+		open();
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(30000));
+
+		breaker.acquirePermission();
+		breaker.releasePermission();
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.acquirePermission();
+		breaker.onResult(true, 0);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	private void open() {
+		for (int i = 0; i < 4; i++) {
+			record(false);
+		}
+	}
+
+	private void record(boolean succeeded) {
+		breaker.acquirePermission();
+		breaker.onResult(succeeded, 0);
+	}
+
+	private void assertRejected() {
+		try {
+			breaker.acquirePermission();
+			fail("call was permitted");
+		} catch (GitHubUnavailableException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.github.HttpConnector;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class ConditionalRequestCacheTest {
+
+	private static final String TEAMS = "[{\"name\":\"members\",\"id\":1}]";
+
+	private HttpServer server;
+	private AtomicInteger fullResponses;
+	private ConditionalRequestCache cache;
+	private GitHubHttpConnector connector;
+
+	@Before
+	public void setUp() throws IOException {
+		fullResponses = new AtomicInteger();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/orgs/fix-trondheim/teams", exchange -> {
+			exchange.getResponseHeaders().add("X-RateLimit-Limit", "5000");
+			exchange.getResponseHeaders().add("X-RateLimit-Remaining", "4711");
+			exchange.getResponseHeaders().add("X-RateLimit-Reset", "1893456000");
+			if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			fullResponses.incrementAndGet();
+			byte[] body = gzip(TEAMS);
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		cache = new ConditionalRequestCache(60000, 10);
+		connector = new GitHubHttpConnector(HttpConnector.DEFAULT, new RateLimitScheduler(100, 10, 0, 10000), cache);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private static byte[] gzip(String content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	private String get() throws IOException {
+		HttpURLConnection connection = connector.connect(new URL("http://localhost:" + server.getAddress().getPort() + "/orgs/fix-trondheim/teams"));
+		connection.setRequestMethod("GET");
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("gzip", connection.getContentEncoding());
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(connection.getInputStream())) {
+			byte[] buffer = new byte[64];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				body.write(buffer, 0, read);
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testServesNotModifiedFromCache() throws IOException {
+		assertEquals(TEAMS, get());
+		assertEquals(1, cache.size());
+
+		assertEquals(TEAMS, get());
+		assertEquals(TEAMS, get());
+		assertEquals(1, fullResponses.get());
+		assertEquals(2, cache.getNotModifiedCount());
+		assertEquals(4711, connector.getScheduler().getRemaining());
+	}
+
+	@Test
+	public void testRefetchesAfterInvalidation() throws IOException {
+		assertEquals(TEAMS, get());
+		cache.invalidateAll();
+
+		assertEquals(TEAMS, get());
+		assertEquals(2, fullResponses.get());
+		assertEquals(0, cache.getNotModifiedCount());
+	}
+
+}
@@ -0,0 +1,508 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the GitHub REST endpoints the connector uses: the authenticated user, users, organizations, teams, team
+ * members and the rate limit, and for the GraphQL queries of GraphQlMembershipReader. Latency, the share of failing requests and the reported rate limit are configurable; injected errors
+ * are drawn from a seeded random, so a run is reproducible. GET responses carry an ETag and honour If-None-Match.
+ */
+public class FakeGitHubServer implements AutoCloseable {
+
+	public static final String ADMIN_LOGIN = "fake-admin";
+
+	private final Map<String, FakeAccount> users = new ConcurrentHashMap<>();
+	private final Map<String, FakeOrganization> organizations = new ConcurrentHashMap<>();
+	private final Map<Integer, FakeTeam> teams = new ConcurrentHashMap<>();
+	private final AtomicInteger ids = new AtomicInteger(1000);
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger graphQlRequests = new AtomicInteger();
+	private final Random random;
+	private volatile long minLatencyMillis;
+	private volatile long maxLatencyMillis;
+	private volatile double errorRate;
+	private int rateLimit = 5000;
+	private int rateRemaining = 5000;
+	private long rateResetEpochSeconds = epochSeconds() + 3600;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public FakeGitHubServer() {
+		this(0L);
+	}
+
+	public FakeGitHubServer(long seed) {
+		random = new Random(seed);
+		addUser(ADMIN_LOGIN);
+	}
+
+	public FakeGitHubServer addUser(String login) {
+		users.putIfAbsent(normalize(login), new FakeAccount(ids.incrementAndGet(), login));
+		return this;
+	}
+
+	public FakeGitHubServer addOrganization(String login) {
+		organizations.putIfAbsent(normalize(login), new FakeOrganization(ids.incrementAndGet(), login));
+		return this;
+	}
+
+	public FakeGitHubServer addTeam(String org, String name) {
+		addOrganization(org);
+		FakeOrganization organization = organizations.get(normalize(org));
+		FakeTeam team = new FakeTeam(ids.incrementAndGet(), name);
+		if (organization.teams.putIfAbsent(normalize(name), team) == null) {
+			teams.put(team.id, team);
+		}
+		return this;
+	}
+
+	public FakeGitHubServer addMember(String org, String team, String login) {
+		addUser(login);
+		addTeam(org, team);
+		organizations.get(normalize(org)).teams.get(normalize(team)).members.add(users.get(normalize(login)).login);
+		return this;
+	}
+
+	public FakeGitHubServer renameUser(String login, String newLogin) {
+		FakeAccount user = users.remove(normalize(login));
+		users.put(normalize(newLogin), new FakeAccount(user.id, newLogin));
+		for (FakeTeam team : teams.values()) {
+			if (team.members.remove(user.login)) {
+				team.members.add(newLogin);
+			}
+		}
+		return this;
+	}
+
+	public FakeGitHubServer renameTeam(String org, String name, String newName) {
+		FakeOrganization organization = organizations.get(normalize(org));
+		FakeTeam team = organization.teams.remove(normalize(name));
+		FakeTeam renamed = new FakeTeam(team.id, newName);
+		renamed.members.addAll(team.members);
+		organization.teams.put(normalize(newName), renamed);
+		teams.put(renamed.id, renamed);
+		return this;
+	}
+
+	public FakeGitHubServer deleteTeam(String org, String name) {
+		FakeTeam team = organizations.get(normalize(org)).teams.remove(normalize(name));
+		teams.remove(team.id);
+		return this;
+	}
+
+	public int getUserId(String login) {
+		return users.get(normalize(login)).id;
+	}
+
+	public int getTeamId(String org, String team) {
+		return organizations.get(normalize(org)).teams.get(normalize(team)).id;
+	}
+
+	public Set<String> getMembers(String org, String team) {
+		FakeOrganization organization = organizations.get(normalize(org));
+		FakeTeam fakeTeam = organization == null ? null : organization.teams.get(normalize(team));
+		return fakeTeam == null ? Collections.<String> emptySet() : new HashSet<>(fakeTeam.members);
+	}
+
+	public void setLatency(long minMillis, long maxMillis) {
+		this.minLatencyMillis = minMillis;
+		this.maxLatencyMillis = Math.max(minMillis, maxMillis);
+	}
+
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	public synchronized void setRateLimit(int limit, int remaining, long resetEpochSeconds) {
+		this.rateLimit = limit;
+		this.rateRemaining = remaining;
+		this.rateResetEpochSeconds = resetEpochSeconds;
+	}
+
+	public synchronized int getRateRemaining() {
+		return rateRemaining;
+	}
+
+	public int getRequestCount() {
+		return requests.get();
+	}
+
+	public int getGraphQlRequestCount() {
+		return graphQlRequests.get();
+	}
+
+	public FakeGitHubServer start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+		return this;
+	}
+
+	public String getApiUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			requests.incrementAndGet();
+			String body = read(exchange.getRequestBody());
+			delay();
+			String method = exchange.getRequestMethod();
+			if (method.equals("PUT") && exchange.getRequestHeaders().getFirst("Content-Length") == null
+					&& exchange.getRequestHeaders().getFirst("Transfer-Encoding") == null) {
+				// like the GitHub frontends that refuse a PUT without a body length
+				send(exchange, 411, message("Length Required"), false);
+				return;
+			}
+			String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+			if (method.equals("GET") && path.length == 1 && path[0].equals("rate_limit")) {
+				send(exchange, 200, rateLimitJson(), false);
+				return;
+			}
+			if (!takeRate()) {
+				send(exchange, 403, message("API rate limit exceeded for " + ADMIN_LOGIN), false);
+				return;
+			}
+			if (errorRate > 0 && nextDouble() < errorRate) {
+				send(exchange, 502, message("Server Error"), false);
+				return;
+			}
+			if (method.equals("POST") && path.length == 1 && path[0].equals("graphql")) {
+				graphQlRequests.incrementAndGet();
+				send(exchange, 200, graphQl(body), false);
+			} else {
+				route(exchange, method, path);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void route(HttpExchange exchange, String method, String[] path) throws IOException {
+		if (method.equals("GET") && path.length == 1 && path[0].equals("user")) {
+			send(exchange, 200, users.get(ADMIN_LOGIN).toJson(), true);
+		} else if (method.equals("GET") && path.length == 2 && path[0].equals("user")) {
+			FakeAccount user = null;
+			for (FakeAccount account : users.values()) {
+				if (account.id == parseId(path[1])) {
+					user = account;
+				}
+			}
+			sendOrNotFound(exchange, user == null ? null : user.toJson());
+		} else if (method.equals("GET") && path.length == 2 && path[0].equals("users")) {
+			FakeAccount user = users.get(normalize(path[1]));
+			sendOrNotFound(exchange, user == null ? null : user.toJson());
+		} else if (method.equals("GET") && path.length == 2 && path[0].equals("orgs")) {
+			FakeOrganization organization = organizations.get(normalize(path[1]));
+			sendOrNotFound(exchange, organization == null ? null : organization.toJson());
+		} else if (method.equals("GET") && path.length == 3 && path[0].equals("orgs") && path[2].equals("teams")) {
+			FakeOrganization organization = organizations.get(normalize(path[1]));
+			sendOrNotFound(exchange, organization == null ? null : organization.teamsJson());
+		} else if (method.equals("GET") && path.length == 2 && path[0].equals("teams")) {
+			FakeTeam team = teams.get(parseId(path[1]));
+			sendOrNotFound(exchange, team == null ? null : team.toJson());
+		} else if (path.length >= 3 && path[0].equals("teams") && (path[2].equals("members") || path[2].equals("memberships"))) {
+			FakeTeam team = teams.get(parseId(path[1]));
+			if (team == null) {
+				send(exchange, 404, message("Not Found"), false);
+			} else if (path.length == 3 && method.equals("GET")) {
+				send(exchange, 200, team.membersJson(), true);
+			} else if (path.length == 4) {
+				routeMember(exchange, method, team, path[3], path[2].equals("memberships"));
+			} else {
+				send(exchange, 404, message("Not Found"), false);
+			}
+		} else {
+			send(exchange, 404, message("Not Found"), false);
+		}
+	}
+
+	private void routeMember(HttpExchange exchange, String method, FakeTeam team, String login, boolean membership) throws IOException {
+		FakeAccount user = users.get(normalize(login));
+		if (user == null) {
+			send(exchange, 404, message("Not Found"), false);
+		} else if (method.equals("GET")) {
+			if (!team.members.contains(user.login)) {
+				send(exchange, 404, message("Not Found"), false);
+			} else if (membership) {
+				send(exchange, 200, "{\"state\":\"active\",\"role\":\"member\"}", true);
+			} else {
+				send(exchange, 204, null, false);
+			}
+		} else if (method.equals("PUT")) {
+			team.members.add(user.login);
+			if (membership) {
+				send(exchange, 200, "{\"state\":\"active\",\"role\":\"member\"}", false);
+			} else {
+				send(exchange, 204, null, false);
+			}
+		} else if (method.equals("DELETE")) {
+			team.members.remove(user.login);
+			send(exchange, 204, null, false);
+		} else {
+			send(exchange, 405, message("Method Not Allowed"), false);
+		}
+	}
+
+	/**
+	 * Answers the two queries of GraphQlMembershipReader from the variables alone: a page of teams of an organization, or a page
+	 * of members of one team when a team is given. Cursors are positions in the name ordered lists.
+	 */
+	private String graphQl(String request) {
+		String org = variable(request, "org");
+		String team = variable(request, "team");
+		String cursor = variable(request, "cursor");
+		Matcher pageSize = Pattern.compile("\"pageSize\"\\s*:\\s*(\\d+)").matcher(request);
+		int size = pageSize.find() ? Integer.parseInt(pageSize.group(1)) : 100;
+		int offset = cursor == null ? 0 : Integer.parseInt(cursor);
+		FakeOrganization organization = org == null ? null : organizations.get(normalize(org));
+		if (organization == null) {
+			return "{\"data\":{\"organization\":null},\"errors\":[{\"type\":\"NOT_FOUND\",\"message\":"
+					+ quote("Could not resolve to an Organization with the login of '" + org + "'.") + "}]}";
+		}
+		if (team != null) {
+			FakeTeam fakeTeam = organization.teams.get(normalize(team));
+			return "{\"data\":{\"organization\":{\"team\":" + (fakeTeam == null ? "null" : "{\"members\":" + fakeTeam.membersPage(offset, size) + "}")
+					+ "}}}";
+		}
+		List<FakeTeam> sorted = new ArrayList<>(organization.teams.values());
+		sorted.sort((a, b) -> a.name.compareTo(b.name));
+		List<String> nodes = new ArrayList<>();
+		for (FakeTeam fakeTeam : sorted.subList(Math.min(offset, sorted.size()), Math.min(offset + size, sorted.size()))) {
+			nodes.add("{\"name\":" + quote(fakeTeam.name) + ",\"slug\":" + quote(normalize(fakeTeam.name)) + ",\"members\":" + fakeTeam.membersPage(0, size)
+					+ "}");
+		}
+		return "{\"data\":{\"organization\":{\"teams\":" + page(nodes, offset + size, sorted.size()) + "}}}";
+	}
+
+	private static String variable(String request, String name) {
+		Matcher matcher = Pattern.compile("\"" + name + "\"\\s*:\\s*\"([^\"]*)\"").matcher(request);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+
+	private static String page(List<String> nodes, int end, int total) {
+		boolean hasNextPage = end < total;
+		return "{\"pageInfo\":{\"hasNextPage\":" + hasNextPage + ",\"endCursor\":" + (hasNextPage ? quote(Integer.toString(end)) : "null") + "},\"nodes\":["
+				+ String.join(",", nodes) + "]}";
+	}
+
+	private void sendOrNotFound(HttpExchange exchange, String json) throws IOException {
+		if (json == null) {
+			send(exchange, 404, message("Not Found"), false);
+		} else {
+			send(exchange, 200, json, true);
+		}
+	}
+
+	private void send(HttpExchange exchange, int code, String json, boolean withETag) throws IOException {
+		String etag = null;
+		boolean notModified = false;
+		if (json != null && withETag) {
+			etag = "\"" + Integer.toHexString(json.hashCode()) + "\"";
+			notModified = etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"));
+			exchange.getResponseHeaders().add("ETag", etag);
+		}
+		synchronized (this) {
+			if (notModified) {
+				// conditional requests answered with 304 do not count against the rate limit
+				rateRemaining = Math.min(rateLimit, rateRemaining + 1);
+			}
+			exchange.getResponseHeaders().add("X-RateLimit-Limit", Integer.toString(rateLimit));
+			exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(rateRemaining));
+			exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(rateResetEpochSeconds));
+		}
+		if (json == null || notModified) {
+			exchange.sendResponseHeaders(notModified ? 304 : code, -1);
+			return;
+		}
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(code, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private synchronized boolean takeRate() {
+		long now = epochSeconds();
+		if (now >= rateResetEpochSeconds) {
+			rateRemaining = rateLimit;
+			rateResetEpochSeconds = now + 3600;
+		}
+		if (rateRemaining <= 0) {
+			return false;
+		}
+		rateRemaining--;
+		return true;
+	}
+
+	private synchronized String rateLimitJson() {
+		String rate = "{\"limit\":" + rateLimit + ",\"remaining\":" + rateRemaining + ",\"reset\":" + rateResetEpochSeconds + "}";
+		return "{\"resources\":{\"core\":" + rate + "},\"rate\":" + rate + "}";
+	}
+
+	private synchronized double nextDouble() {
+		return random.nextDouble();
+	}
+
+	private void delay() {
+		long latency = minLatencyMillis;
+		if (maxLatencyMillis > minLatencyMillis) {
+			synchronized (this) {
+				latency += (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+			}
+		}
+		if (latency > 0) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[512];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			body.write(buffer, 0, read);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static int parseId(String id) {
+		try {
+			return Integer.parseInt(id);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static String message(String message) {
+		return "{\"message\":" + quote(message) + ",\"documentation_url\":\"https://developer.github.com/v3\"}";
+	}
+
+	private static String quote(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static String normalize(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	private static long epochSeconds() {
+		return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+	}
+
+	private static final class FakeAccount {
+
+		private final int id;
+		private final String login;
+
+		private FakeAccount(int id, String login) {
+			this.id = id;
+			this.login = login;
+		}
+
+		private String toJson() {
+			return "{\"login\":" + quote(login) + ",\"id\":" + id + ",\"type\":\"User\",\"site_admin\":false}";
+		}
+
+	}
+
+	private static final class FakeOrganization {
+
+		private final int id;
+		private final String login;
+		private final Map<String, FakeTeam> teams = new ConcurrentHashMap<>();
+
+		private FakeOrganization(int id, String login) {
+			this.id = id;
+			this.login = login;
+		}
+
+		private String toJson() {
+			return "{\"login\":" + quote(login) + ",\"id\":" + id + ",\"type\":\"Organization\"}";
+		}
+
+		private String teamsJson() {
+			List<String> json = new ArrayList<>();
+			for (FakeTeam team : teams.values()) {
+				json.add(team.toJson());
+			}
+			return "[" + String.join(",", json) + "]";
+		}
+
+	}
+
+	private final class FakeTeam {
+
+		private final int id;
+		private final String name;
+		private final Set<String> members = ConcurrentHashMap.newKeySet();
+
+		private FakeTeam(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		private String toJson() {
+			return "{\"name\":" + quote(name) + ",\"id\":" + id + ",\"slug\":" + quote(normalize(name)) + ",\"permission\":\"pull\"}";
+		}
+
+		private String membersPage(int offset, int size) {
+			List<String> sorted = new ArrayList<>(members);
+			Collections.sort(sorted);
+			List<String> nodes = new ArrayList<>();
+			for (String member : sorted.subList(Math.min(offset, sorted.size()), Math.min(offset + size, sorted.size()))) {
+				nodes.add("{\"login\":" + quote(member) + "}");
+			}
+			return page(nodes, offset + size, sorted.size());
+		}
+
+		private String membersJson() {
+			List<String> json = new ArrayList<>();
+			for (String member : members) {
+				json.add(users.get(normalize(member)).toJson());
+			}
+			return "[" + String.join(",", json) + "]";
+		}
+
+	}
+
+}
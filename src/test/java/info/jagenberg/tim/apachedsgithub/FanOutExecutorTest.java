@@ -0,0 +1,104 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FanOutExecutorTest {
+
+	private FanOutExecutor fanOut;
+
+	@After
+	public void tearDown() {
+		if (fanOut != null) {
+			fanOut.shutdown();
+		}
+	}
+
+	@Test
+	public void testTeamsRunConcurrently() {
+		fanOut = new FanOutExecutor(4);
+		CountDownLatch started = new CountDownLatch(4);
+		List<SyncOperation> operations = Arrays.asList(SyncOperation.add("user", "a", "org"), SyncOperation.add("user", "b", "org"),
+				SyncOperation.add("user", "c", "org"), SyncOperation.add("user", "d", "org"));
+
+		fanOut.execute(operations, operation -> {
+			started.countDown();
+			try {
+				// only returns early if all four calls are in flight at the same time
+				assertTrue(started.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertEquals(0, started.getCount());
+	}
+
+	@Test
+	public void testRemovalsFollowAdditions() {
+		fanOut = new FanOutExecutor(4);
+		List<SyncOperation> handled = new CopyOnWriteArrayList<>();
+		List<SyncOperation> operations = Arrays.asList(SyncOperation.add("new", "a", "org"), SyncOperation.add("new", "b", "org"),
+				SyncOperation.remove("old", "a", "org"), SyncOperation.remove("old", "b", "org"));
+
+		fanOut.execute(operations, handled::add);
+		assertEquals(4, handled.size());
+		assertEquals(SyncOperation.Type.ADD, handled.get(0).getType());
+		assertEquals(SyncOperation.Type.ADD, handled.get(1).getType());
+		assertEquals(SyncOperation.Type.REMOVE, handled.get(2).getType());
+		assertEquals(SyncOperation.Type.REMOVE, handled.get(3).getType());
+	}
+
+	@Test
+	public void testFailuresAreAggregated() {
+		fanOut = new FanOutExecutor(4);
+		AtomicInteger removals = new AtomicInteger();
+		List<SyncOperation> operations = Arrays.asList(SyncOperation.add("user", "a", "org"), SyncOperation.add("user", "b", "org"),
+				SyncOperation.add("user", "c", "org"), SyncOperation.remove("old", "a", "org"));
+
+		try {
+			fanOut.execute(operations, operation -> {
+				if (operation.getType() == SyncOperation.Type.REMOVE) {
+					removals.incrementAndGet();
+				} else if (!operation.getTeam().equals("b")) {
+					throw new IllegalArgumentException("Could not add user to " + operation.getTeam());
+				}
+			});
+			fail("failed additions were not reported");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Could not add user to a", e.getMessage());
+			assertEquals(1, e.getSuppressed().length);
+			assertEquals("Could not add user to c", e.getSuppressed()[0].getMessage());
+		}
+		assertEquals(0, removals.get());
+	}
+
+	@Test
+	public void testSequentialStopsAtFirstFailure() {
+		fanOut = new FanOutExecutor(1);
+		List<SyncOperation> handled = new CopyOnWriteArrayList<>();
+		List<SyncOperation> operations = Arrays.asList(SyncOperation.add("user", "a", "org"), SyncOperation.add("user", "b", "org"));
+
+		try {
+			fanOut.execute(operations, operation -> {
+				handled.add(operation);
+				throw new IllegalArgumentException("Could not find user user");
+			});
+			fail("failed addition was not reported");
+		} catch (IllegalArgumentException e) {
+			assertEquals(Collections.singletonList(operations.get(0)), handled);
+		}
+	}
+
+}
@@ -9,11 +9,11 @@ import org.junit.Test;
 
 public class GitHubConnectorTest {
 
-	private GitHubConnector connector;
+	private RestGitHubConnector connector;
 
 	@Before
 	public void setUp() throws Exception {
-		connector = new GitHubConnector();
+		connector = new RestGitHubConnector();
 	}
 
 	@Test
@@ -0,0 +1,74 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.Test;
+
+public class GitHubUserViewTest {
+
+	@Test
+	public void testReadsAllAttributes() throws LdapException {
+		Entry entry = new DefaultEntry("uid=testGitHubUserAllSet,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubUser",
+				ObjClassGitHubUser.GITHUB_USER_ATTR_ID + ": FIX-TestUser123", ObjClassGitHubUser.GITHUB_ORG_ATTR_ID + ": fix-trondheim");
+		entry.add(ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "members", "alumni");
+
+		GitHubUserView view = GitHubUserView.read(entry);
+		assertTrue(view.isGitHubUser());
+		assertTrue(view.isComplete());
+		assertEquals("FIX-TestUser123", view.getUser());
+		assertEquals("fix-trondheim", view.getOrg());
+		assertEquals(2, view.getTeams().size());
+		assertTrue(view.getTeams().containsAll(Arrays.asList("members", "alumni")));
+		try {
+			view.getTeams().add("owners");
+			fail("Teams of a view are modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReadsUserId() throws LdapException {
+		Entry entry = new DefaultEntry("uid=testGitHubUserAllSet,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubUser",
+				ObjClassGitHubUser.GITHUB_USER_ATTR_ID + ": FIX-TestUser123", ObjClassGitHubUser.GITHUB_USER_ID_ATTR_ID + ": 583231");
+		assertEquals(Long.valueOf(583231), GitHubUserView.read(entry).getUserId());
+
+		entry.removeAttributes(ObjClassGitHubUser.GITHUB_USER_ID_ATTR_ID);
+		assertNull(GitHubUserView.read(entry).getUserId());
+		entry.add(ObjClassGitHubUser.GITHUB_USER_ID_ATTR_ID, "octocat");
+		assertNull(GitHubUserView.read(entry).getUserId());
+	}
+
+	@Test
+	public void testIncompleteEntry() throws LdapException {
+		Entry entry = new DefaultEntry("uid=testGitHubUserUnSet,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubUser",
+				ObjClassGitHubUser.GITHUB_USER_ATTR_ID + ": FIX-TestUser123");
+
+		GitHubUserView view = GitHubUserView.read(entry);
+		assertTrue(view.isGitHubUser());
+		assertFalse(view.isComplete());
+		assertNull(view.getOrg());
+		assertTrue(view.getTeams().isEmpty());
+	}
+
+	@Test
+	public void testOtherEntry() throws LdapException {
+		Entry entry = new DefaultEntry("uid=testUser,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": inetOrgPerson",
+				ObjClassGitHubUser.GITHUB_USER_ATTR_ID + ": FIX-TestUser123");
+
+		GitHubUserView view = GitHubUserView.read(entry);
+		assertFalse(view.isGitHubUser());
+		assertFalse(view.isComplete());
+		assertNull(view.getUser());
+	}
+
+}
@@ -0,0 +1,174 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ApplyLdifFiles;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+@RunWith(FrameworkRunner.class)
+@CreateDS(partitions = { @CreatePartition(name = "example", suffix = "dc=example,dc=com", contextEntry = @ContextEntry(entryLdif = "dn: dc=example,dc=com\ndc: example\nobjectClass: top\nobjectClass: domain\n\n")) })
+@CreateLdapServer(transports = { @CreateTransport(protocol = "LDAP") })
+@ApplyLdifFiles({ "github.ldif" })
+public class GithubInterceptorAsyncTest extends AbstractLdapTestUnit {
+
+	private LdapConnection connection = null;
+	private GithubInterceptor interceptor;
+	private GitHubConnector connector;
+
+	@Before
+	public void setUp() throws Exception {
+		List<Interceptor> interceptors = getService().getInterceptors();
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SYNC_MODE, GithubInterceptorConfig.SYNC_MODE_ASYNC);
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SYNC_WORKERS, "2");
+		interceptor = new GithubInterceptor(new GithubInterceptorConfig(properties));
+		connector = Mockito.mock(GitHubConnector.class);
+		interceptor.setGitHubConnector(connector);
+		interceptor.init(getService());
+		verify(connector).start();
+		interceptors.add(15, interceptor);
+		getService().setInterceptors(interceptors);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		List<Interceptor> interceptors = getService().getInterceptors();
+		interceptors.remove(interceptor);
+		getService().setInterceptors(interceptors);
+		interceptor.destroy();
+	}
+
+	private LdapConnection getConnection() throws LdapException {
+		if (connection == null) {
+			connection = new LdapNetworkConnection("localhost", getLdapServer().getPort());
+			connection.bind("uid=admin,ou=system", "secret");
+			connection.loadSchema();
+		}
+		return connection;
+	}
+
+	private void closeConnection() throws IOException {
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
+	}
+
+	@Test
+	public void testReplayWaitsForDisconnectedGitHub() throws Exception {
+		File directory = Files.createTempDirectory("github-journal").toFile();
+		try (SyncJournal journal = new SyncJournal(directory, 64 * 1024, 10)) {
+			journal.append(SyncOperation.remove("FIX-TestUser123", "members", "fix-trondheim"));
+		}
+		GitHubConnector unavailable = Mockito.mock(GitHubConnector.class);
+		doThrow(new GitHubUnavailableException("Could not connect to GitHub", 20)).doNothing().when(unavailable).removeUser("FIX-TestUser123", "members",
+				"fix-trondheim");
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SYNC_MODE, GithubInterceptorConfig.SYNC_MODE_ASYNC);
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.JOURNAL_DIR, directory.getPath());
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.JOURNAL_SIZE, String.valueOf(64 * 1024));
+		GithubInterceptor replaying = new GithubInterceptor(new GithubInterceptorConfig(properties));
+		replaying.setGitHubConnector(unavailable);
+		replaying.init(getService());
+		try {
+			assertTrue(replaying.getSyncQueue().awaitIdle(10, TimeUnit.SECONDS));
+			verify(unavailable, times(2)).removeUser("FIX-TestUser123", "members", "fix-trondheim");
+		} finally {
+			replaying.destroy();
+		}
+		try (SyncJournal journal = new SyncJournal(directory, 64 * 1024, 10)) {
+			assertTrue(journal.getRecovered().isEmpty());
+		}
+	}
+
+	@Test
+	public void testAddGitHubUserAllSetMultiTeam() throws Exception {
+		URL testFile = getClass().getResource("/testGitHubUserAllSetMultiTeam.ldif");
+
+		try (LdifReader reader = new LdifReader(testFile.getPath())) {
+			LdifEntry entry = reader.next();
+			getConnection().add(entry.getEntry());
+		}
+
+		assertTrue(interceptor.awaitIdle(10, TimeUnit.SECONDS));
+		verify(connector).addUser("FIX-TestUser123", "members", "fix-trondheim");
+		verify(connector).addUser("FIX-TestUser123", "alumni", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-data.ldif" })
+	public void testModifyGitHubUserAllSetMultiTeamWithExceptionInAdd() throws Exception {
+		IllegalArgumentException wrongUserException = new IllegalArgumentException("Could not find user Test123");
+		doThrow(wrongUserException).when(connector).addUser(eq("Test123"), anyString(), anyString());
+
+		DefaultModification modification = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123");
+		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modification);
+
+		assertTrue(interceptor.awaitIdle(10, TimeUnit.SECONDS));
+		verify(connector).addUser("Test123", "members", "fix-trondheim");
+		verify(connector).addUser("Test123", "alumni", "fix-trondheim");
+		verify(connector).removeUser("FIX-TestUser123", "members", "fix-trondheim");
+		verify(connector).removeUser("FIX-TestUser123", "alumni", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+		assertEquals("Test123", getConnection().lookup("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com").get(ObjClassGitHubUser.GITHUB_USER_ATTR_ID).getString());
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-data.ldif" })
+	public void testRemoveGitHubUserAllSetMultiTeam() throws Exception {
+		getConnection().delete("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com");
+
+		assertTrue(interceptor.awaitIdle(10, TimeUnit.SECONDS));
+		verify(connector).removeUser("FIX-TestUser123", "members", "fix-trondheim");
+		verify(connector).removeUser("FIX-TestUser123", "alumni", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-groups.ldif" })
+	public void testDeleteGroupIsPlannedInBackground() throws Exception {
+		getConnection().delete("cn=developers,dc=example,dc=com");
+
+		assertTrue(interceptor.awaitIdle(10, TimeUnit.SECONDS));
+		verify(connector).removeUser("FIX-GroupMember", "developers", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+}
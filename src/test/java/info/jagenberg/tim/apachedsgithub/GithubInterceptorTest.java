@@ -6,6 +6,7 @@ import static org.mockito.Mockito.*;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
+import java.util.Properties;
 
 import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
@@ -23,6 +24,7 @@ import org.apache.directory.server.core.annotations.CreatePartition;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
 import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,16 +39,32 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 
 	private LdapConnection connection = null;
 	private GithubInterceptor interceptor;
+	private GitHubConnector connector;
 
 	@Before
 	public void setUp() throws Exception {
 		List<Interceptor> interceptors = getService().getInterceptors();
-		interceptor = new GithubInterceptor();
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SYNC_MODE, GithubInterceptorConfig.SYNC_MODE_INLINE);
+		// the order of GitHub calls is only defined when teams are synchronized one at a time
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SYNC_INLINE_PARALLELISM, "1");
+		interceptor = new GithubInterceptor(new GithubInterceptorConfig(properties));
+		connector = Mockito.mock(GitHubConnector.class);
+		interceptor.setGitHubConnector(connector);
 		interceptor.init(getService());
+		verify(connector).start();
 		interceptors.add(15, interceptor);
 		getService().setInterceptors(interceptors);
 	}
 
+	@After
+	public void tearDown() throws Exception {
+		List<Interceptor> interceptors = getService().getInterceptors();
+		interceptors.remove(interceptor);
+		getService().setInterceptors(interceptors);
+		interceptor.destroy();
+	}
+
 	private LdapConnection getConnection() throws LdapException {
 		if (connection == null) {
 			connection = new LdapNetworkConnection("localhost", getLdapServer().getPort());
@@ -65,9 +83,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 
 	@Test
 	public void testAddUser() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		URL testFile = getClass().getResource("/testUser.ldif");
 	
 		try (LdifReader reader = new LdifReader(testFile.getPath())) {
@@ -83,8 +98,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 
 	@Test
 	public void testAddGitHubUserAllSet() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
 		
 		URL testFile = getClass().getResource("/testGitHubUserAllSet.ldif");
 
@@ -101,8 +114,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 
 	@Test
 	public void testAddGitHubUserAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
 		
 		URL testFile = getClass().getResource("/testGitHubUserAllSetMultiTeam.ldif");
 
@@ -121,8 +132,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 
 	@Test
 	public void testAddGitHubUserUnSet() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
 		
 		URL testFile = getClass().getResource("/testGitHubUserUnSet.ldif");
 
@@ -140,9 +149,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testModifyGitHubUserAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		DefaultModification modification = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123");
 		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modification);
 		
@@ -159,10 +165,8 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testModifyGitHubUserAllSetMultiTeamWithExceptionInAdd() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
 		IllegalArgumentException wrongUserException = new IllegalArgumentException("Could not find user Test123");
 		doThrow(wrongUserException).when(connector).addUser(eq("Test123"), anyString(), anyString());
-		interceptor.setGitHubConnector(connector);
 
 		DefaultModification modification = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123");
 		try {
@@ -182,10 +186,8 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testModifyGitHubUserAllSetMultiTeamWithExceptionInRemove() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
 		IllegalArgumentException wrongUserException = new IllegalArgumentException("Could not find user Test123");
 		doThrow(wrongUserException).when(connector).removeUser(eq("FIX-TestUser123"), anyString(), anyString());
-		interceptor.setGitHubConnector(connector);
 
 		DefaultModification modification = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123");
 		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modification);
@@ -203,9 +205,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testRemoveGitHubUserAllSet() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		getConnection().delete("uid=testGitHubUserAllSet,dc=example,dc=com");
 
 		verify(connector).removeUser("FIX-TestUser123", "members", "fix-trondheim");
@@ -217,9 +216,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testRemoveGitHubUserAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		getConnection().delete("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com");
 
 		InOrder inOrder = inOrder(connector);
@@ -233,9 +229,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testRemoveGitHubUserUnSet() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		getConnection().delete("uid=testGitHubUserUnSet,dc=example,dc=com");
 
 		verify(connector, never()).removeUser("", "", "");
@@ -247,9 +240,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testRemoveUser() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		getConnection().delete("uid=testUser,dc=example,dc=com");
 
 		verify(connector, never()).removeUser("", "", "");
@@ -261,9 +251,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testAddGitHubTeamAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		DefaultModification modification = new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "testteam");
 		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modification);
 		
@@ -277,9 +264,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testModifyGitHubTeamAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		DefaultModification modification = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "members", "nonteam");
 		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modification);
 		
@@ -294,9 +278,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testRemoveGitHubTeamAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		DefaultModification modification = new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "alumni");
 		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modification);
 		
@@ -310,9 +291,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testRemoveGitHubTeamAndModifyGitHubUserAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		DefaultModification modificationTeam = new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "alumni");
 		DefaultModification modificationUser = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123");
 		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modificationTeam, modificationUser);
@@ -329,9 +307,6 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 	@Test
 	@ApplyLdifFiles({ "test-data.ldif" })
 	public void testModifyGitHubOrgAllSetMultiTeam() throws LdapException, IOException {
-		GitHubConnector connector = Mockito.mock(GitHubConnector.class);
-		interceptor.setGitHubConnector(connector);
-
 		DefaultModification modification = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_ORG_ATTR_ID, "some-other-org");
 		getConnection().modify("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", modification);
 		
@@ -344,5 +319,84 @@ public class GithubInterceptorTest extends AbstractLdapTestUnit {
 
 		closeConnection();
 	}
-	
+
+	@Test
+	@ApplyLdifFiles({ "test-groups.ldif" })
+	public void testAddGroupMember() throws LdapException, IOException {
+		DefaultModification modification = new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, GitHubGroupView.UNIQUE_MEMBER_ATTR_ID,
+				"uid=groupMember,dc=example,dc=com#'1'B");
+		getConnection().modify("cn=developers-unique,dc=example,dc=com", modification);
+
+		verify(connector).addUser("FIX-GroupMember", "developers", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-groups.ldif" })
+	public void testRemoveGroupMembersKeepsOtherGrants() throws LdapException, IOException {
+		DefaultModification modification = new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, GitHubGroupView.MEMBER_ATTR_ID,
+				"uid=groupMember,dc=example,dc=com", "uid=uniqueGroupMember,dc=example,dc=com", "uid=teamMember,dc=example,dc=com");
+		getConnection().modify("cn=developers,dc=example,dc=com", modification);
+
+		// the other group lists uniqueGroupMember with a UID, teamMember names the team itself
+		verify(connector).removeUser("FIX-GroupMember", "developers", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-groups.ldif" })
+	public void testDeleteGroupKeepsOtherGrants() throws LdapException, IOException {
+		getConnection().delete("cn=developers,dc=example,dc=com");
+
+		verify(connector).removeUser("FIX-GroupMember", "developers", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-groups.ldif" })
+	public void testRemoveUserTeamKeepsGroupGrant() throws LdapException, IOException {
+		DefaultModification modification = new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID,
+				"developers", "alumni");
+		getConnection().modify("uid=teamMember,dc=example,dc=com", modification);
+
+		verify(connector).removeUser("FIX-TeamMember", "alumni", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-groups.ldif" })
+	public void testRenamedUserLeavesGroupTeam() throws LdapException, IOException {
+		DefaultModification modification = new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID,
+				"FIX-Renamed");
+		getConnection().modify("uid=teamMember,dc=example,dc=com", modification);
+
+		InOrder inOrder = inOrder(connector);
+		inOrder.verify(connector).addUser("FIX-Renamed", "developers", "fix-trondheim");
+		inOrder.verify(connector).addUser("FIX-Renamed", "alumni", "fix-trondheim");
+		inOrder.verify(connector).removeUser("FIX-TeamMember", "developers", "fix-trondheim");
+		inOrder.verify(connector).removeUser("FIX-TeamMember", "alumni", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
+	@Test
+	@ApplyLdifFiles({ "test-groups.ldif" })
+	public void testDeleteUserKeepsGroupGrant() throws LdapException, IOException {
+		getConnection().delete("uid=teamMember,dc=example,dc=com");
+
+		verify(connector).removeUser("FIX-TeamMember", "alumni", "fix-trondheim");
+		verifyNoMoreInteractions(connector);
+
+		closeConnection();
+	}
+
 }
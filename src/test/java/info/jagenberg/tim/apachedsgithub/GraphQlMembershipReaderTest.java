@@ -0,0 +1,80 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphQlMembershipReaderTest {
+
+	private FakeGitHubServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new FakeGitHubServer().addTeam("fix-trondheim", "members").addMember("fix-trondheim", "alumni", "FIX-Alumnus")
+				.addMember("fix-trondheim", "board", "FIX-Chair").addMember("fix-trondheim", "board", "FIX-Treasurer")
+				.addMember("fix-trondheim", "board", "FIX-Secretary").start();
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+	}
+
+	@Test
+	public void testReadsAllTeamsInOneQuery() {
+		Map<String, Set<String>> expected = new HashMap<>();
+		expected.put("members", Collections.<String> emptySet());
+		expected.put("alumni", new HashSet<>(Arrays.asList("FIX-Alumnus")));
+		expected.put("board", new HashSet<>(Arrays.asList("FIX-Chair", "FIX-Treasurer", "FIX-Secretary")));
+
+		assertEquals(expected, reader(100).readTeams("fix-trondheim"));
+		assertEquals(1, server.getGraphQlRequestCount());
+	}
+
+	@Test
+	public void testFollowsTeamAndMemberPages() {
+		Map<String, Set<String>> teams = reader(2).readTeams("FIX-Trondheim");
+
+		assertEquals(new HashSet<>(Arrays.asList("members", "alumni", "board")), teams.keySet());
+		assertEquals(new HashSet<>(Arrays.asList("FIX-Chair", "FIX-Treasurer", "FIX-Secretary")), teams.get("board"));
+		// two pages of teams, one more page of board members
+		assertEquals(3, server.getGraphQlRequestCount());
+	}
+
+	@Test
+	public void testUnknownOrganization() {
+		try {
+			reader(100).readTeams("fgjsdht8435tj0j2");
+			fail("reading an unknown organization did not fail");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("not find organization fgjsdht8435tj0j2"));
+		}
+	}
+
+	@Test
+	public void testInvalidPageSize() {
+		try {
+			reader(101);
+			fail("page size above the GraphQL limit was accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("page size"));
+		}
+	}
+
+	private GraphQlMembershipReader reader(int pageSize) {
+		return new GraphQlMembershipReader(server.getApiUrl() + "/graphql", "fake-token", new TimeoutHttpConnector(), pageSize);
+	}
+
+}
@@ -0,0 +1,151 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupMemberDiffTest {
+
+	private static final Function<String, String> LOGINS = member -> member.startsWith("uid=u") ? "login" + member.substring(5, member.indexOf(',')) : null;
+
+	private GitHubGroupView group;
+
+	@Before
+	public void setUp() throws LdapException {
+		group = GitHubGroupView.read(group("uid=u1,dc=example,dc=com", "uid=u2,dc=example,dc=com", "cn=service,dc=example,dc=com"),
+				GitHubAttributeTypes.UNRESOLVED);
+	}
+
+	private static Entry group(String... members) throws LdapException {
+		Entry entry = new DefaultEntry("cn=developers,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": groupOfNames",
+				ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubTeam", ObjClassGitHubUser.GITHUB_ORG_ATTR_ID + ": fix-trondheim",
+				ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID + ": members");
+		entry.add(GitHubGroupView.MEMBER_ATTR_ID, members);
+		return entry;
+	}
+
+	private List<SyncOperation> plan(Modification... mods) {
+		return GroupMemberDiff.compute(group, Arrays.asList(mods), GitHubAttributeTypes.UNRESOLVED).plan(LOGINS);
+	}
+
+	private static Modification members(ModificationOperation operation, String... members) {
+		return new DefaultModification(operation, GitHubGroupView.MEMBER_ATTR_ID, members);
+	}
+
+	@Test
+	public void testAddAndRemoveMembers() {
+		List<SyncOperation> operations = plan(members(ModificationOperation.ADD_ATTRIBUTE, "uid=u3,dc=example,dc=com"),
+				members(ModificationOperation.REMOVE_ATTRIBUTE, "uid=u1,dc=example,dc=com"));
+
+		assertEquals(Arrays.asList(SyncOperation.add("login3", "members", "fix-trondheim"), SyncOperation.remove("login1", "members", "fix-trondheim")),
+				operations);
+	}
+
+	@Test
+	public void testReplaceMembers() {
+		List<SyncOperation> operations = plan(members(ModificationOperation.REPLACE_ATTRIBUTE, "uid=u2,dc=example,dc=com", "uid=u4,dc=example,dc=com"));
+
+		assertEquals(Arrays.asList(SyncOperation.add("login4", "members", "fix-trondheim"), SyncOperation.remove("login1", "members", "fix-trondheim")),
+				operations);
+	}
+
+	@Test
+	public void testRemoveAllMembers() {
+		List<SyncOperation> operations = plan(members(ModificationOperation.REMOVE_ATTRIBUTE));
+
+		assertEquals(Arrays.asList(SyncOperation.remove("login1", "members", "fix-trondheim"), SyncOperation.remove("login2", "members", "fix-trondheim")),
+				operations);
+	}
+
+	@Test
+	public void testMemberGrantedElsewhereKeepsTeam() {
+		List<SyncOperation> operations = GroupMemberDiff.compute(group,
+				Arrays.asList(members(ModificationOperation.REMOVE_ATTRIBUTE, "uid=u1,dc=example,dc=com", "uid=u2,dc=example,dc=com")),
+				GitHubAttributeTypes.UNRESOLVED).plan(LOGINS, (member, team, org) -> member.startsWith("uid=u1,"));
+
+		assertEquals(Arrays.asList(SyncOperation.remove("login2", "members", "fix-trondheim")), operations);
+	}
+
+	@Test
+	public void testMemberKeptInUniqueMemberKeepsTeam() throws LdapException {
+		Entry entry = group("uid=u1,dc=example,dc=com", "uid=u2,dc=example,dc=com");
+		entry.add(GitHubGroupView.UNIQUE_MEMBER_ATTR_ID, "uid=u1,dc=example,dc=com");
+		group = GitHubGroupView.read(entry, GitHubAttributeTypes.UNRESOLVED);
+
+		List<SyncOperation> operations = plan(members(ModificationOperation.REMOVE_ATTRIBUTE, "uid=u1,dc=example,dc=com", "uid=u2,dc=example,dc=com"));
+
+		assertEquals(Arrays.asList(SyncOperation.remove("login2", "members", "fix-trondheim")), operations);
+	}
+
+	@Test
+	public void testChangesWithinOneOperationCancelOut() {
+		List<SyncOperation> operations = plan(members(ModificationOperation.ADD_ATTRIBUTE, "uid=u3,dc=example,dc=com"),
+				members(ModificationOperation.REMOVE_ATTRIBUTE, "uid=u3,dc=example,dc=com", "uid=u1,dc=example,dc=com"),
+				members(ModificationOperation.ADD_ATTRIBUTE, "uid=u1,dc=example,dc=com"));
+
+		assertTrue(operations.isEmpty());
+	}
+
+	@Test
+	public void testAddedTeamGetsAllMembers() {
+		List<SyncOperation> operations = plan(new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "alumni"),
+				members(ModificationOperation.ADD_ATTRIBUTE, "uid=u3,dc=example,dc=com"));
+
+		assertEquals(Arrays.asList(SyncOperation.add("login3", "members", "fix-trondheim"), SyncOperation.add("login1", "alumni", "fix-trondheim"),
+				SyncOperation.add("login2", "alumni", "fix-trondheim"), SyncOperation.add("login3", "alumni", "fix-trondheim")), operations);
+	}
+
+	@Test
+	public void testChangedOrgMovesAllMembers() {
+		List<SyncOperation> operations = plan(new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_ORG_ATTR_ID, "fix-oslo"));
+
+		assertEquals(Arrays.asList(SyncOperation.add("login1", "members", "fix-oslo"), SyncOperation.add("login2", "members", "fix-oslo"),
+				SyncOperation.remove("login1", "members", "fix-trondheim"), SyncOperation.remove("login2", "members", "fix-trondheim")), operations);
+	}
+
+	@Test
+	public void testLargeGroupResolvesOnlyChangedMembers() throws LdapException {
+		List<String> members = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			members.add("uid=u" + i + ",dc=example,dc=com");
+		}
+		group = GitHubGroupView.read(group(members.toArray(new String[members.size()])), GitHubAttributeTypes.UNRESOLVED);
+		AtomicInteger lookups = new AtomicInteger();
+
+		List<SyncOperation> operations = GroupMemberDiff.compute(group,
+				Arrays.asList(members(ModificationOperation.ADD_ATTRIBUTE, "uid=u20000,dc=example,dc=com"),
+						members(ModificationOperation.REMOVE_ATTRIBUTE, "uid=u7,dc=example,dc=com")),
+				GitHubAttributeTypes.UNRESOLVED).plan(member -> {
+					lookups.incrementAndGet();
+					return LOGINS.apply(member);
+				});
+
+		assertEquals(Arrays.asList(SyncOperation.add("login20000", "members", "fix-trondheim"), SyncOperation.remove("login7", "members", "fix-trondheim")),
+				operations);
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void testPlainGroupIsIgnored() throws LdapException {
+		Entry entry = new DefaultEntry("cn=staff,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": groupOfNames");
+		entry.add(GitHubGroupView.MEMBER_ATTR_ID, "uid=u1,dc=example,dc=com");
+		group = GitHubGroupView.read(entry, GitHubAttributeTypes.UNRESOLVED);
+
+		assertTrue(plan(members(ModificationOperation.ADD_ATTRIBUTE, "uid=u3,dc=example,dc=com")).isEmpty());
+	}
+
+}
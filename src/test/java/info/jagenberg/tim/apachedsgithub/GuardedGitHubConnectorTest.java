@@ -0,0 +1,153 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class GuardedGitHubConnectorTest {
+
+	@Test
+	public void testBulkheadRejectsExcessCalls() throws InterruptedException {
+		CountDownLatch inCall = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		GuardedGitHubConnector connector = new GuardedGitHubConnector(new StubConnector() {
+			@Override
+			public void addUser(String user, String team, String org) {
+				inCall.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, null, 1, 10);
+		Thread blocked = new Thread(() -> connector.addUser("user", "members", "org"));
+		blocked.start();
+		assertTrue(inCall.await(5, TimeUnit.SECONDS));
+
+		try {
+			connector.addUser("other", "members", "org");
+			fail("second call was not rejected");
+		} catch (GitHubUnavailableException e) {
+			assertEquals("Too many concurrent GitHub calls", e.getMessage());
+		}
+		release.countDown();
+		blocked.join();
+		connector.addUser("other", "members", "org");
+	}
+
+	@Test
+	public void testUnknownUsersDoNotOpenCircuit() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 0.5d, 10000, 30000);
+		GuardedGitHubConnector connector = new GuardedGitHubConnector(new StubConnector() {
+			@Override
+			public void addUser(String user, String team, String org) {
+				throw new IllegalArgumentException("Could not find user " + user);
+			}
+		}, breaker, 0, 0);
+		for (int i = 0; i < 4; i++) {
+			try {
+				connector.addUser("unknown", "members", "org");
+				fail("unknown user was added");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testUnreachableGitHubOpensCircuit() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 0.5d, 10000, 30000);
+		GuardedGitHubConnector connector = new GuardedGitHubConnector(new StubConnector() {
+			@Override
+			public Set<String> getMembers(String team, String org) {
+				throw new IllegalStateException("Could not connect to GitHub");
+			}
+		}, breaker, 0, 0);
+		for (int i = 0; i < 2; i++) {
+			try {
+				connector.getMembers("members", "org");
+				fail("getMembers did not fail");
+			} catch (IllegalStateException e) {
+				assertEquals("Could not connect to GitHub", e.getMessage());
+			}
+		}
+		try {
+			connector.getMembers("members", "org");
+			fail("open circuit did not reject the call");
+		} catch (GitHubUnavailableException e) {
+			assertTrue(e.getRetryAfterMillis() > 0);
+		}
+	}
+
+	@Test
+	public void testLocalUnavailabilityDoesNotOpenCircuit() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 0.5d, 10000, 30000);
+		GuardedGitHubConnector connector = new GuardedGitHubConnector(new StubConnector() {
+			@Override
+			public void addUser(String user, String team, String org) {
+				throw new GitHubUnavailableException("GitHub rate limit exhausted", 1000);
+			}
+		}, breaker, 0, 0);
+		for (int i = 0; i < 4; i++) {
+			try {
+				connector.addUser("user", "members", "org");
+				fail("addUser did not fail");
+			} catch (GitHubUnavailableException e) {
+				assertEquals(1000, e.getRetryAfterMillis());
+			}
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testRateLimitWaitIsNotSlow() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1d, 50, 30000);
+		RateLimitScheduler scheduler = new RateLimitScheduler(10, 1, 0, 1000);
+		GuardedGitHubConnector connector = new GuardedGitHubConnector(new StubConnector() {
+			@Override
+			public void addUser(String user, String team, String org) {
+				scheduler.acquire();
+				scheduler.acquire();
+			}
+		}, breaker, 0, 0);
+		connector.addUser("user", "members", "org");
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	private static class StubConnector implements GitHubConnector {
+
+		@Override
+		public void addUser(String user, String team, String org) {
+		}
+
+		@Override
+		public void removeUser(String user, String team, String org) {
+		}
+
+		@Override
+		public boolean hasUser(String user, String team, String org) {
+			return false;
+		}
+
+		@Override
+		public boolean hasUser(String user) {
+			return false;
+		}
+
+		@Override
+		public Set<String> getMembers(String team, String org) {
+			return Collections.emptySet();
+		}
+
+	}
+
+}
@@ -0,0 +1,69 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class InstrumentedGitHubConnectorTest {
+
+	private final SyncMetrics metrics = new SyncMetrics();
+
+	private final GitHubConnector delegate = new GitHubConnector() {
+
+		@Override
+		public void addUser(String user, String team, String org) {
+		}
+
+		@Override
+		public void removeUser(String user, String team, String org) {
+		}
+
+		@Override
+		public boolean hasUser(String user, String team, String org) {
+			return false;
+		}
+
+		@Override
+		public boolean hasUser(String user) {
+			return false;
+		}
+
+		@Override
+		public Set<String> getMembers(String team, String org) {
+			return Collections.emptySet();
+		}
+
+	};
+
+	@Test
+	public void testCountsKnownMembershipsAsSkipped() {
+		InstrumentedGitHubConnector connector = new InstrumentedGitHubConnector(delegate, metrics, (user, team, org) -> user.equals("member"));
+
+		connector.addUser("member", "members", "fix-trondheim");
+		connector.removeUser("outsider", "members", "fix-trondheim");
+		connector.addUser("outsider", "members", "fix-trondheim");
+		connector.removeUser("member", "members", "fix-trondheim");
+
+		assertEquals(2, metrics.getGitHubSkips());
+		assertEquals(1, metrics.getGitHubAdds());
+		assertEquals(1, metrics.getGitHubRemoves());
+		assertEquals(1, metrics.getGitHubAddUserLatency().getCount());
+		assertEquals(1, metrics.getGitHubRemoveUserLatency().getCount());
+	}
+
+	@Test
+	public void testUnknownMembershipsReachGitHub() {
+		InstrumentedGitHubConnector connector = new InstrumentedGitHubConnector(delegate, metrics, (user, team, org) -> null);
+
+		connector.addUser("member", "members", "fix-trondheim");
+		connector.removeUser("member", "members", "fix-trondheim");
+
+		assertEquals(0, metrics.getGitHubSkips());
+		assertEquals(1, metrics.getGitHubAdds());
+		assertEquals(1, metrics.getGitHubRemoves());
+	}
+
+}
@@ -0,0 +1,72 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.Test;
+
+public class InterceptionScopeTest {
+
+	private static InterceptionScope scope(String include, String exclude, String objectClasses) throws LdapException {
+		Properties properties = new Properties();
+		if (include != null) {
+			properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SCOPE_INCLUDE, include);
+		}
+		if (exclude != null) {
+			properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SCOPE_EXCLUDE, exclude);
+		}
+		if (objectClasses != null) {
+			properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.SCOPE_OBJECT_CLASSES, objectClasses);
+		}
+		return InterceptionScope.compile(new GithubInterceptorConfig(properties), null, GitHubAttributeTypes.UNRESOLVED);
+	}
+
+	private static Entry entry(String dn, String... objectClasses) throws LdapException {
+		Entry entry = new DefaultEntry(dn);
+		entry.add(ObjClassGitHubUser.OBJCLASS_ATTR_ID, objectClasses);
+		return entry;
+	}
+
+	@Test
+	public void testCoversGitHubUsersEverywhereByDefault() throws LdapException {
+		InterceptionScope scope = scope(null, null, null);
+
+		assertTrue(scope.covers(new Dn("uid=a,ou=people,dc=example,dc=com"), entry("uid=a,ou=people,dc=example,dc=com", "top", "GitHubUser")));
+		assertFalse(scope.covers(new Dn("uid=a,ou=people,dc=example,dc=com"), entry("uid=a,ou=people,dc=example,dc=com", "top", "person")));
+		assertFalse(scope.covers(new Dn("uid=a,ou=people,dc=example,dc=com"), new DefaultEntry("uid=a,ou=people,dc=example,dc=com")));
+	}
+
+	@Test
+	public void testIncludedAndExcludedSubtrees() throws LdapException {
+		InterceptionScope scope = scope("ou=people,dc=example,dc=com; ou=staff,dc=example,dc=com", "ou=former,ou=people,dc=example,dc=com", null);
+
+		assertTrue(scope.covers(new Dn("uid=a,ou=people,dc=example,dc=com")));
+		assertTrue(scope.covers(new Dn("uid=b,ou=staff,dc=example,dc=com")));
+		assertTrue(scope.covers(new Dn("ou=people,dc=example,dc=com")));
+		assertFalse(scope.covers(new Dn("uid=c,ou=former,ou=people,dc=example,dc=com")));
+		assertFalse(scope.covers(new Dn("uid=admin,ou=system")));
+		assertFalse(scope.covers(new Dn("uid=d,dc=example,dc=com")));
+	}
+
+	@Test
+	public void testConfiguredObjectClasses() throws LdapException {
+		InterceptionScope scope = scope(null, "ou=system", "githubUser;inetOrgPerson");
+
+		assertTrue(scope.covers(new Dn("uid=a,dc=example,dc=com"), entry("uid=a,dc=example,dc=com", "top", "inetOrgPerson")));
+		assertFalse(scope.covers(new Dn("uid=admin,ou=system"), entry("uid=admin,ou=system", "top", "inetOrgPerson")));
+		assertFalse(scope.covers(new Dn("uid=a,dc=example,dc=com"), entry("uid=a,dc=example,dc=com", "top", "organizationalUnit")));
+	}
+
+	@Test
+	public void testAllCoversEverything() throws LdapException {
+		assertTrue(InterceptionScope.ALL.covers(new Dn("uid=admin,ou=system"), entry("uid=admin,ou=system", "top")));
+		assertTrue(InterceptionScope.ALL.covers(null, null));
+	}
+
+}
@@ -0,0 +1,54 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0d, histogram.getMeanMicros(), 0d);
+		assertEquals(0, histogram.getPercentile99Micros());
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(50000, histogram.getMaxMicros());
+		assertEquals(599d, histogram.getMeanMicros(), 0.001d);
+		long p50 = histogram.getPercentile50Micros();
+		assertTrue(p50 >= 100 && p50 < 200);
+		assertEquals(p50, histogram.getPercentile95Micros());
+		assertTrue(histogram.getPercentile99Micros() < 200);
+	}
+
+	@Test
+	public void testPercentileNeverExceedsMax() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(TimeUnit.MICROSECONDS.toNanos(1500));
+		assertEquals(1500, histogram.getPercentile50Micros());
+	}
+
+	@Test
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaxMicros());
+		assertEquals(0, histogram.getPercentile50Micros());
+	}
+
+}
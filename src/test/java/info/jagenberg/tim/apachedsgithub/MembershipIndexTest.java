@@ -0,0 +1,60 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class MembershipIndexTest {
+
+	private final MembershipIndex index = new MembershipIndex(60000, 10);
+
+	@Test
+	public void testListsTeamOnce() {
+		AtomicInteger listings = new AtomicInteger();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(index.getMembers("FIX-Trondheim", "Members", () -> {
+				listings.incrementAndGet();
+				return Arrays.asList("FIX-TestUser123");
+			}).contains("fix-testuser123"));
+		}
+		assertEquals(1, listings.get());
+		assertTrue(index.isMember("fix-trondheim", "members", "fix-testuser123"));
+	}
+
+	@Test
+	public void testUnknownTeam() {
+		assertNull(index.isMember("fix-trondheim", "members", "FIX-TestUser123"));
+		index.added("fix-trondheim", "members", "FIX-TestUser123");
+		assertNull(index.isMember("fix-trondheim", "members", "FIX-TestUser123"));
+	}
+
+	@Test
+	public void testFollowsOwnChanges() {
+		index.put("fix-trondheim", "members", Arrays.asList("FIX-Alumnus"));
+
+		index.added("fix-trondheim", "members", "FIX-TestUser123");
+		assertTrue(index.isMember("fix-trondheim", "members", "FIX-TestUser123"));
+		index.removed("fix-trondheim", "members", "FIX-Alumnus");
+		assertFalse(index.isMember("fix-trondheim", "members", "FIX-Alumnus"));
+	}
+
+	@Test
+	public void testInvalidation() {
+		index.put("fix-trondheim", "members", Arrays.asList("FIX-TestUser123"));
+		index.put("fix-trondheim", "alumni", Arrays.asList("FIX-Alumnus"));
+		index.put("some-other-org", "members", Arrays.asList("FIX-TestUser123"));
+
+		index.invalidate("fix-trondheim", "alumni");
+		assertNull(index.isMember("fix-trondheim", "alumni", "FIX-Alumnus"));
+		index.invalidateOrg("FIX-Trondheim");
+		assertNull(index.isMember("fix-trondheim", "members", "FIX-TestUser123"));
+		assertTrue(index.isMember("some-other-org", "members", "FIX-TestUser123"));
+	}
+
+}
@@ -0,0 +1,102 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModificationDiffTest {
+
+	private GitHubUserView multiTeam;
+
+	@Before
+	public void setUp() throws LdapException {
+		Entry entry = new DefaultEntry("uid=testGitHubUserAllSetMultiTeam,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubUser",
+				ObjClassGitHubUser.GITHUB_USER_ATTR_ID + ": FIX-TestUser123", ObjClassGitHubUser.GITHUB_ORG_ATTR_ID + ": fix-trondheim");
+		entry.add(ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "members", "alumni");
+		multiTeam = GitHubUserView.read(entry);
+	}
+
+	private List<SyncOperation> plan(Modification... mods) {
+		return ModificationDiff.compute(multiTeam, Arrays.asList(mods), GitHubAttributeTypes.UNRESOLVED).plan();
+	}
+
+	@Test
+	public void testReplaceUserMovesAllTeams() {
+		List<SyncOperation> operations = plan(new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123"));
+
+		assertEquals(Arrays.asList(SyncOperation.add("Test123", "members", "fix-trondheim"), SyncOperation.add("Test123", "alumni", "fix-trondheim"),
+				SyncOperation.remove("FIX-TestUser123", "members", "fix-trondheim"), SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim")),
+				operations);
+	}
+
+	@Test
+	public void testReplaceTeams() {
+		List<SyncOperation> operations = plan(
+				new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "members", "nonteam"));
+
+		assertEquals(Arrays.asList(SyncOperation.add("FIX-TestUser123", "nonteam", "fix-trondheim"), SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim")),
+				operations);
+	}
+
+	@Test
+	public void testRemoveTeamAndReplaceUser() {
+		List<SyncOperation> operations = plan(new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "alumni"),
+				new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123"));
+
+		assertEquals(Arrays.asList(SyncOperation.add("Test123", "members", "fix-trondheim"), SyncOperation.remove("FIX-TestUser123", "members", "fix-trondheim"),
+				SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim")), operations);
+	}
+
+	@Test
+	public void testCaseAndSpacingChangesDoNotResync() {
+		List<SyncOperation> operations = plan(new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "fix-testuser123"),
+				new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_ORG_ATTR_ID, "FIX-Trondheim"),
+				new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, " Members ", "ALUMNI"),
+				new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, "members"));
+
+		assertTrue(operations.isEmpty());
+	}
+
+	@Test
+	public void testRemovingUserRemovesMemberships() {
+		List<SyncOperation> operations = plan(new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID));
+
+		assertEquals(Arrays.asList(SyncOperation.remove("FIX-TestUser123", "members", "fix-trondheim"), SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim")),
+				operations);
+	}
+
+	@Test
+	public void testSecondUserIsRejected() {
+		try {
+			plan(new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, ObjClassGitHubUser.GITHUB_USER_ATTR_ID, "Test123"));
+			fail("Second user accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("Only 1 githubUserName allowed"));
+		}
+	}
+
+	@Test
+	public void testLargeBatch() {
+		String[] teams = new String[20000];
+		for (int i = 0; i < teams.length; i++) {
+			teams[i] = "team-" + i;
+		}
+		List<SyncOperation> operations = plan(new DefaultModification(ModificationOperation.ADD_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, teams),
+				new DefaultModification(ModificationOperation.REMOVE_ATTRIBUTE, ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, teams));
+
+		assertTrue(operations.isEmpty());
+	}
+
+}
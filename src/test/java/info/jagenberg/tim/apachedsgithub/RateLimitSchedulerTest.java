@@ -0,0 +1,99 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kohsuke.github.HttpConnector;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class RateLimitSchedulerTest {
+
+	@Test
+	public void testBurstIsNotPaced() {
+		RateLimitScheduler scheduler = new RateLimitScheduler(1, 5, 0, 10000);
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			scheduler.acquire();
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+	}
+
+	@Test
+	public void testPacesBeyondBurst() {
+		RateLimitScheduler scheduler = new RateLimitScheduler(20, 1, 0, 10000);
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			scheduler.acquire();
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+	}
+
+	@Test
+	public void testParksUntilReset() {
+		RateLimitScheduler scheduler = new RateLimitScheduler(100, 10, 0, 10000);
+		long resetInOneSecond = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 1;
+		scheduler.update(0, 5000, resetInOneSecond);
+
+		long start = System.currentTimeMillis();
+		scheduler.acquire();
+		assertTrue(System.currentTimeMillis() >= TimeUnit.SECONDS.toMillis(resetInOneSecond));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testFailsWhenResetIsBeyondMaxWait() {
+		RateLimitScheduler scheduler = new RateLimitScheduler(100, 10, 10, 100);
+		scheduler.update(10, 5000, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600);
+		try {
+			scheduler.acquire();
+			fail("Exhausted rate limit did not fail");
+		} catch (GitHubUnavailableException e) {
+			assertTrue(e.getMessage().contains("rate limit"));
+			assertTrue(e.getRetryAfterMillis() > 100);
+		}
+	}
+
+	@Test
+	public void testConnectorTracksRateLimitHeaders() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("X-RateLimit-Limit", "5000");
+			exchange.getResponseHeaders().add("X-RateLimit-Remaining", "4711");
+			exchange.getResponseHeaders().add("X-RateLimit-Reset", "1893456000");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		try {
+			RateLimitScheduler scheduler = new RateLimitScheduler(100, 10, 0, 10000);
+			GitHubHttpConnector connector = new GitHubHttpConnector(HttpConnector.DEFAULT, scheduler);
+			HttpURLConnection connection = connector.connect(new URL("http://localhost:" + server.getAddress().getPort() + "/orgs/fix-trondheim"));
+			try (InputStream in = connection.getInputStream()) {
+				while (in.read() >= 0) {
+					// drain
+				}
+			}
+			assertEquals(4711, scheduler.getRemaining());
+			assertEquals(5000, scheduler.getLimit());
+			assertEquals(1893456000000L, scheduler.getResetAtMillis());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+}
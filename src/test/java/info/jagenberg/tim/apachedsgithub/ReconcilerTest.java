@@ -0,0 +1,107 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReconcilerTest {
+
+	private GitHubConnector connector;
+	private List<Entry> entries;
+
+	@Before
+	public void setUp() throws LdapException {
+		connector = mock(GitHubConnector.class);
+		when(connector.getMembers("members", "fix-trondheim")).thenReturn(new HashSet<>(Arrays.asList("FIX-TestUser123", "stale")));
+		entries = new ArrayList<>();
+		entries.add(entry("uid=a,dc=example,dc=com", "fix-testuser123", "fix-trondheim", "members"));
+		entries.add(entry("uid=b,dc=example,dc=com", "newbie", "FIX-Trondheim", "Members"));
+	}
+
+	private static Entry entry(String dn, String user, String org, String... teams) throws LdapException {
+		Entry entry = new DefaultEntry(dn, ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubUser", ObjClassGitHubUser.GITHUB_USER_ATTR_ID + ": " + user,
+				ObjClassGitHubUser.GITHUB_ORG_ATTR_ID + ": " + org);
+		entry.add(ObjClassGitHubUser.GITHUB_TEAM_ATTR_ID, teams);
+		return entry;
+	}
+
+	@Test
+	public void testAppliesDifference() {
+		ReconciliationReport report = new Reconciler(connector, 2, false).reconcile(entries);
+
+		verify(connector).addUser("newbie", "members", "fix-trondheim");
+		verify(connector).removeUser("stale", "members", "fix-trondheim");
+		verify(connector, never()).addUser(eq("fix-testuser123"), anyString(), anyString());
+		assertEquals(2, report.getEntriesScanned());
+		assertEquals(1, report.getTeamsChecked());
+		assertEquals(1, report.getUsersAdded());
+		assertEquals(1, report.getUsersRemoved());
+		assertEquals(0, report.getFailures());
+	}
+
+	@Test
+	public void testDryRunDoesNotChangeGitHub() {
+		ReconciliationReport report = new Reconciler(connector, 2, true).reconcile(entries);
+
+		verify(connector, never()).addUser(anyString(), anyString(), anyString());
+		verify(connector, never()).removeUser(anyString(), anyString(), anyString());
+		assertEquals(1, report.getUsersAdded());
+		assertEquals(1, report.getUsersRemoved());
+	}
+
+	@Test
+	public void testSkipsEntriesOutsideScope() throws LdapException {
+		InterceptionScope scope = new InterceptionScope(Collections.<Dn> emptyList(), Arrays.asList(new Dn("uid=b,dc=example,dc=com")), null,
+				GitHubAttributeTypes.UNRESOLVED.getObjectClass());
+
+		ReconciliationReport report = new Reconciler(connector, GitHubAttributeTypes.UNRESOLVED, scope, 2, false).reconcile(entries);
+
+		verify(connector, never()).addUser(anyString(), anyString(), anyString());
+		verify(connector).removeUser("stale", "members", "fix-trondheim");
+		assertEquals(1, report.getEntriesSkipped());
+	}
+
+	@Test
+	public void testKeepsMembersOfTeamSharedAcrossScope() throws LdapException {
+		InterceptionScope scope = new InterceptionScope(Collections.<Dn> emptyList(), Arrays.asList(new Dn("ou=external,dc=example,dc=com")), null,
+				GitHubAttributeTypes.UNRESOLVED.getObjectClass());
+		entries.add(entry("uid=stale,ou=external,dc=example,dc=com", "Stale", "fix-trondheim", "members"));
+		entries.add(entry("uid=guest,ou=external,dc=example,dc=com", "guest", "fix-trondheim", "members"));
+
+		ReconciliationReport report = new Reconciler(connector, GitHubAttributeTypes.UNRESOLVED, scope, 2, false).reconcile(entries);
+
+		verify(connector).addUser("newbie", "members", "fix-trondheim");
+		verify(connector, never()).removeUser(anyString(), anyString(), anyString());
+		verify(connector, never()).addUser(eq("guest"), anyString(), anyString());
+		assertEquals(2, report.getEntriesSkipped());
+		assertEquals(0, report.getUsersRemoved());
+	}
+
+	@Test
+	public void testFailingTeamDoesNotStopOthers() throws LdapException {
+		when(connector.getMembers("dfgj432th7gw952", "fix-trondheim")).thenThrow(new IllegalArgumentException("Could not find team dfgj432th7gw952"));
+		entries.add(entry("uid=c,dc=example,dc=com", "FIX-TestUser123", "fix-trondheim", "dfgj432th7gw952"));
+		entries.add(new DefaultEntry("uid=d,dc=example,dc=com", ObjClassGitHubUser.OBJCLASS_ATTR_ID + ": githubUser"));
+
+		ReconciliationReport report = new Reconciler(connector, 4, false).reconcile(entries);
+
+		verify(connector).addUser("newbie", "members", "fix-trondheim");
+		assertEquals(4, report.getEntriesScanned());
+		assertEquals(1, report.getEntriesSkipped());
+		assertEquals(2, report.getTeamsChecked());
+		assertEquals(1, report.getFailures());
+	}
+
+}
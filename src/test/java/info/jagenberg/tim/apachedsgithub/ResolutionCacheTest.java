@@ -0,0 +1,101 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class ResolutionCacheTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	public void testLoadsOnceWhileFresh() {
+		ResolutionCache<String, String> cache = new ResolutionCache<>(1000, 10, now::get);
+		AtomicInteger loads = new AtomicInteger();
+
+		Function<String, String> loader = key -> {
+			loads.incrementAndGet();
+			return "team";
+		};
+
+		assertEquals("team", cache.get("members", loader));
+		assertEquals("team", cache.get("members", loader));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testCountsHitsAndMisses() {
+		ResolutionCache<String, String> cache = new ResolutionCache<>(1000, 10, now::get);
+		assertEquals(0d, cache.getHitRatio(), 0d);
+
+		cache.get("members", key -> "team");
+		cache.get("members", key -> "team");
+		cache.get("members", key -> "team");
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2d / 3d, cache.getHitRatio(), 0.0001d);
+	}
+
+	@Test
+	public void testExpiresAfterTtl() {
+		ResolutionCache<String, String> cache = new ResolutionCache<>(1000, 10, now::get);
+		cache.put("members", "team");
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+		assertEquals("team", cache.get("members"));
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+		assertNull(cache.get("members"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		ResolutionCache<String, String> cache = new ResolutionCache<>(1000, 2, now::get);
+		cache.put("members", "1");
+		cache.put("alumni", "2");
+		cache.get("members");
+		cache.put("owners", "3");
+
+		assertEquals("1", cache.get("members"));
+		assertNull(cache.get("alumni"));
+		assertEquals("3", cache.get("owners"));
+	}
+
+	@Test
+	public void testFailedLoadIsNotCached() {
+		ResolutionCache<String, String> cache = new ResolutionCache<>(1000, 10, now::get);
+		try {
+			cache.get("ghost", key -> {
+				throw new IllegalArgumentException("Could not find user ghost");
+			});
+			fail("Failing loader did not propagate");
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, cache.size());
+		}
+	}
+
+	@Test
+	public void testInvalidation() {
+		ResolutionCache<String, String> cache = new ResolutionCache<>(1000, 10, now::get);
+		cache.put("fix-trondheim/members", "1");
+		cache.put("fix-trondheim/alumni", "2");
+		cache.put("other/members", "3");
+
+		cache.invalidate("fix-trondheim/members");
+		assertNull(cache.get("fix-trondheim/members"));
+
+		cache.invalidateIf(key -> key.startsWith("fix-trondheim/"));
+		assertEquals(1, cache.size());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+}
@@ -0,0 +1,250 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RestGitHubConnectorTest {
+
+	private FakeGitHubServer server;
+	private RestGitHubConnector connector;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new FakeGitHubServer().addUser("FIX-TestUser123").addTeam("fix-trondheim", "members").addMember("fix-trondheim", "alumni", "FIX-Alumnus")
+				.start();
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.API_URL, server.getApiUrl());
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.OAUTH_TOKEN, "fake-token");
+		connector = new RestGitHubConnector(new GithubInterceptorConfig(properties));
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+	}
+
+	@Test
+	public void testConnectsLazily() {
+		assertFalse(connector.isConnected());
+		assertEquals(0, server.getRequestCount());
+
+		assertTrue(connector.hasUser("FIX-TestUser123"));
+		assertTrue(connector.isConnected());
+	}
+
+	@Test
+	public void testUnreachableGitHubFailsFast() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.API_URL, server.getApiUrl());
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.OAUTH_TOKEN, "fake-token");
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.RECONNECT_BACKOFF, "60000");
+		server.close();
+		RestGitHubConnector unreachable = new RestGitHubConnector(new GithubInterceptorConfig(properties));
+		for (int i = 0; i < 2; i++) {
+			try {
+				unreachable.addUser("FIX-TestUser123", "members", "fix-trondheim");
+				fail("addUser did not fail without GitHub");
+			} catch (GitHubUnavailableException e) {
+				assertEquals("Could not connect to GitHub", e.getMessage());
+				assertTrue(e.getRetryAfterMillis() > 0);
+			}
+		}
+		assertFalse(unreachable.isConnected());
+	}
+
+	@Test
+	public void testAddAndRemoveUser() {
+		connector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+		assertTrue(server.getMembers("fix-trondheim", "members").contains("FIX-TestUser123"));
+		assertTrue(connector.hasUser("FIX-TestUser123", "members", "fix-trondheim"));
+
+		connector.removeUser("FIX-TestUser123", "members", "fix-trondheim");
+		assertTrue(server.getMembers("fix-trondheim", "members").isEmpty());
+		assertFalse(connector.hasUser("FIX-TestUser123", "members", "fix-trondheim"));
+	}
+
+	@Test
+	public void testGetMembers() {
+		assertEquals(new HashSet<>(Arrays.asList("FIX-Alumnus")), connector.getMembers("Alumni", "FIX-Trondheim"));
+	}
+
+	@Test
+	public void testIllegalUserAddUser() {
+		try {
+			connector.addUser("regnj395jtfg34t9jg", "members", "fix-trondheim");
+			fail("illegal addUser did not fail");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("not find user regnj395jtfg34t9jg"));
+		}
+	}
+
+	@Test
+	public void testIllegalTeamAddUser() {
+		try {
+			connector.addUser("FIX-TestUser123", "dfgj432th7gw952", "fix-trondheim");
+			fail("illegal addUser did not fail");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("not find team dfgj432th7gw952"));
+		}
+	}
+
+	@Test
+	public void testIllegalOrgAddUser() {
+		try {
+			connector.addUser("FIX-TestUser123", "members", "fgjsdht8435tj0j2");
+			fail("illegal addUser did not fail");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("not find organization fgjsdht8435tj0j2"));
+		}
+	}
+
+	@Test
+	public void testMembershipIsAnsweredLocally() {
+		assertTrue(connector.hasUser("FIX-Alumnus", "alumni", "fix-trondheim"));
+		int requests = server.getRequestCount();
+
+		assertTrue(connector.hasUser("fix-alumnus", "Alumni", "fix-trondheim"));
+		assertFalse(connector.hasUser("FIX-TestUser123", "alumni", "fix-trondheim"));
+		connector.addUser("FIX-Alumnus", "alumni", "fix-trondheim");
+		connector.removeUser("FIX-TestUser123", "alumni", "fix-trondheim");
+		assertEquals(requests, server.getRequestCount());
+	}
+
+	@Test
+	public void testResolvedIdsAreReported() {
+		Map<String, Long> resolved = new HashMap<>();
+		connector.setIdListener(new GitHubIdAware.Listener() {
+
+			@Override
+			public void userResolved(String user, long id) {
+				resolved.put(user, id);
+			}
+
+			@Override
+			public void teamResolved(String team, String org, long id) {
+				resolved.put(org + "/" + team, id);
+			}
+
+		});
+		connector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+		connector.removeUser("FIX-TestUser123", "members", "fix-trondheim");
+
+		assertEquals(2, resolved.size());
+		assertEquals(Long.valueOf(server.getUserId("FIX-TestUser123")), resolved.get("FIX-TestUser123"));
+		assertEquals(Long.valueOf(server.getTeamId("fix-trondheim", "members")), resolved.get("fix-trondheim/members"));
+		assertEquals(resolved.get("FIX-TestUser123"), connector.getUserId("fix-testuser123"));
+	}
+
+	@Test
+	public void testKnownIdsSkipResolution() {
+		connector.useTeamId("members", "fix-trondheim", server.getTeamId("fix-trondheim", "members"));
+		server.renameTeam("fix-trondheim", "members", "former-members");
+		int requests = server.getRequestCount();
+
+		connector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+		assertTrue(server.getMembers("fix-trondheim", "former-members").contains("FIX-TestUser123"));
+		connector.removeUser("FIX-TestUser123", "members", "fix-trondheim");
+		assertTrue(server.getMembers("fix-trondheim", "former-members").isEmpty());
+		assertEquals(requests + 2, server.getRequestCount());
+	}
+
+	@Test
+	public void testRenamedUserIsFoundById() {
+		connector.useTeamId("members", "fix-trondheim", server.getTeamId("fix-trondheim", "members"));
+		connector.useUserId("FIX-TestUser123", server.getUserId("FIX-TestUser123"));
+		server.renameUser("FIX-TestUser123", "FIX-Renamed");
+
+		connector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+		assertTrue(server.getMembers("fix-trondheim", "members").contains("FIX-Renamed"));
+	}
+
+	@Test
+	public void testUnknownUserKeepsTeamId() {
+		long teamId = server.getTeamId("fix-trondheim", "members");
+		connector.useTeamId("members", "fix-trondheim", teamId);
+
+		try {
+			connector.addUser("fgjsdht8435tj0j2", "members", "fix-trondheim");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(Long.valueOf(teamId), connector.getTeamId("members", "fix-trondheim"));
+	}
+
+	@Test
+	public void testDeletedUserDropsOnlyUserId() {
+		long teamId = server.getTeamId("fix-trondheim", "members");
+		connector.useTeamId("members", "fix-trondheim", teamId);
+		connector.useUserId("FIX-Gone", 424242);
+
+		try {
+			connector.addUser("FIX-Gone", "members", "fix-trondheim");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertNull(connector.getUserId("FIX-Gone"));
+		assertEquals(Long.valueOf(teamId), connector.getTeamId("members", "fix-trondheim"));
+	}
+
+	@Test
+	public void testDeletedTeamDropsTeamId() {
+		connector.useTeamId("members", "fix-trondheim", server.getTeamId("fix-trondheim", "members"));
+		connector.useUserId("FIX-TestUser123", server.getUserId("FIX-TestUser123"));
+		server.deleteTeam("fix-trondheim", "members");
+
+		try {
+			connector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertNull(connector.getTeamId("members", "fix-trondheim"));
+		assertEquals(Long.valueOf(server.getUserId("FIX-TestUser123")), connector.getUserId("FIX-TestUser123"));
+	}
+
+	@Test
+	public void testMembershipIsReadThroughGraphQl() {
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.API_URL, server.getApiUrl());
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.OAUTH_TOKEN, "fake-token");
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.GRAPHQL_ENABLED, "true");
+		RestGitHubConnector graphQlConnector = new RestGitHubConnector(new GithubInterceptorConfig(properties));
+
+		assertTrue(graphQlConnector.hasUser("FIX-Alumnus", "alumni", "fix-trondheim"));
+		assertFalse(graphQlConnector.hasUser("FIX-Alumnus", "members", "fix-trondheim"));
+		assertEquals(new HashSet<>(Arrays.asList("FIX-Alumnus")), graphQlConnector.getMembers("Alumni", "FIX-Trondheim"));
+		assertFalse(graphQlConnector.hasUser("FIX-Alumnus", "dfgj432th7gw952", "fix-trondheim"));
+		assertEquals(1, server.getGraphQlRequestCount());
+
+		graphQlConnector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+		assertEquals(new HashSet<>(Arrays.asList("fix-testuser123")), graphQlConnector.getMembers("members", "fix-trondheim"));
+		assertEquals(1, server.getGraphQlRequestCount());
+	}
+
+	@Test
+	public void testUnchangedReadsAreRevalidated() {
+		connector.getMembers("alumni", "fix-trondheim");
+		int remaining = server.getRateRemaining();
+
+		connector.getMembers("alumni", "fix-trondheim");
+		assertEquals(remaining, server.getRateRemaining());
+		assertEquals(1, connector.getResponseCache().getNotModifiedCount());
+	}
+
+}
@@ -0,0 +1,93 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class ShardedGitHubConnectorTest {
+
+	private static final long RESET = System.currentTimeMillis() / 1000 + 3600;
+
+	private final RestGitHubConnector first = new RestGitHubConnector(new GithubInterceptorConfig(new Properties()));
+	private final RestGitHubConnector second = new RestGitHubConnector(new GithubInterceptorConfig(new Properties()));
+	private final RestGitHubConnector dedicated = new RestGitHubConnector(new GithubInterceptorConfig(new Properties()));
+
+	@Test
+	public void testRoutesToMostRemainingQuota() {
+		ShardedGitHubConnector connector = new ShardedGitHubConnector(Arrays.asList(first, second), Collections.emptyMap());
+		first.getRateLimitScheduler().update(100, 5000, RESET);
+		second.getRateLimitScheduler().update(4000, 5000, RESET);
+		assertSame(second, connector.route("fix-trondheim"));
+
+		first.getRateLimitScheduler().update(4500, 5000, RESET);
+		assertSame(first, connector.route("fix-oslo"));
+	}
+
+	@Test
+	public void testOrganizationStaysOnItsShardUntilExhausted() {
+		ShardedGitHubConnector connector = new ShardedGitHubConnector(Arrays.asList(first, second), Collections.emptyMap());
+		assertSame(first, connector.route("fix-trondheim"));
+
+		first.getRateLimitScheduler().update(100, 5000, RESET);
+		second.getRateLimitScheduler().update(4000, 5000, RESET);
+		assertSame(first, connector.route("FIX-Trondheim"));
+
+		first.getRateLimitScheduler().update(0, 5000, RESET);
+		assertSame(second, connector.route("fix-trondheim"));
+		first.getRateLimitScheduler().update(5000, 5000, RESET);
+		assertSame(second, connector.route("fix-trondheim"));
+	}
+
+	@Test
+	public void testMembershipChangesAcrossTokens() throws IOException {
+		try (FakeGitHubServer server = new FakeGitHubServer().addUser("FIX-TestUser123").addTeam("fix-trondheim", "members").start()) {
+			ShardedGitHubConnector connector = new ShardedGitHubConnector(Arrays.asList(shard(server, "token-a"), shard(server, "token-b")),
+					Collections.emptyMap());
+
+			assertFalse(connector.hasUser("FIX-TestUser123", "members", "fix-trondheim"));
+			connector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+			connector.addUser("FIX-TestUser123", "members", "fix-trondheim");
+			assertTrue(server.getMembers("fix-trondheim", "members").contains("FIX-TestUser123"));
+			connector.removeUser("FIX-TestUser123", "members", "fix-trondheim");
+			assertTrue(server.getMembers("fix-trondheim", "members").isEmpty());
+		}
+	}
+
+	private static RestGitHubConnector shard(FakeGitHubServer server, String token) {
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.API_URL, server.getApiUrl());
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.OAUTH_TOKEN, token);
+		return new RestGitHubConnector(new GithubInterceptorConfig(properties));
+	}
+
+	@Test
+	public void testRoutesOrganizationToDedicatedTokens() {
+		ShardedGitHubConnector connector = new ShardedGitHubConnector(Arrays.asList(first),
+				Collections.singletonMap("FIX-Trondheim", Arrays.asList(dedicated)));
+		dedicated.getRateLimitScheduler().update(10, 5000, RESET);
+
+		assertSame(dedicated, connector.route("fix-trondheim"));
+		assertSame(first, connector.route("some-other-org"));
+	}
+
+	@Test
+	public void testCreatesShardPerToken() {
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.OAUTH_TOKENS, "token-a; token-b");
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.OAUTH_TOKENS + ".FIX-Trondheim", "token-c");
+		GithubInterceptorConfig config = new GithubInterceptorConfig(properties);
+
+		assertEquals(Arrays.asList("token-a", "token-b"), config.getOAuthTokens());
+		assertEquals(Collections.singletonMap("fix-trondheim", Arrays.asList("token-c")), config.getOrgOAuthTokens());
+		assertEquals(3, new ShardedGitHubConnector(config).getShards().size());
+	}
+
+}
@@ -0,0 +1,159 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SyncJournalTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("github-journal").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		File journalFile = new File(directory, SyncJournal.FILE_NAME);
+		journalFile.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testRecoversOperationsAfterCheckpoint() throws IOException {
+		SyncOperation first = SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim");
+		SyncOperation second = SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim");
+		SyncOperation third = SyncOperation.add("Test123", "members", "fix-trondheim");
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			long firstSequence = journal.append(first);
+			long secondSequence = journal.append(second);
+			journal.append(third);
+			journal.complete(firstSequence);
+			assertEquals(firstSequence, journal.getCheckpoint());
+			journal.complete(secondSequence);
+			assertEquals(secondSequence, journal.getCheckpoint());
+		}
+
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			Map<Long, SyncOperation> recovered = journal.getRecovered();
+			assertEquals(1, recovered.size());
+			assertEquals(third, recovered.values().iterator().next());
+			assertEquals(1, journal.getPendingCount());
+		}
+	}
+
+	@Test
+	public void testOutOfOrderCompletionKeepsOlderOperationPending() throws IOException {
+		SyncOperation first = SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim");
+		SyncOperation second = SyncOperation.add("FIX-TestUser123", "alumni", "fix-trondheim");
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			long firstSequence = journal.append(first);
+			long secondSequence = journal.append(second);
+			journal.complete(secondSequence);
+			assertEquals(firstSequence - 1, journal.getCheckpoint());
+		}
+
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			assertEquals(new ArrayList<>(journal.getRecovered().values()).get(0), first);
+		}
+	}
+
+	@Test
+	public void testSequencesContinueAfterRestart() throws IOException {
+		long last;
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			last = journal.append(SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim"));
+			journal.complete(last);
+		}
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			assertTrue(journal.getRecovered().isEmpty());
+			assertTrue(journal.append(SyncOperation.add("FIX-TestUser123", "alumni", "fix-trondheim")) > last);
+		}
+	}
+
+	@Test
+	public void testCompactsWhenFull() throws IOException {
+		SyncOperation pending = SyncOperation.add("pending", "members", "fix-trondheim");
+		try (SyncJournal journal = new SyncJournal(directory, 256, 10)) {
+			journal.append(pending);
+			for (int i = 0; i < 100; i++) {
+				journal.complete(journal.append(SyncOperation.add("FIX-TestUser" + i, "members", "fix-trondheim")));
+			}
+			assertEquals(1, journal.getPendingCount());
+		}
+
+		try (SyncJournal journal = new SyncJournal(directory, 256, 10)) {
+			// operations completed behind the still pending one are replayed again, which is harmless
+			assertEquals(pending, journal.getRecovered().values().iterator().next());
+			assertTrue(journal.getRecovered().size() < 100);
+		}
+	}
+
+	@Test
+	public void testGrowsInsteadOfDroppingPendingOperations() throws IOException {
+		try (SyncJournal journal = new SyncJournal(directory, 256, 10)) {
+			for (int i = 0; i < 50; i++) {
+				journal.append(SyncOperation.add("FIX-TestUser" + i, "members", "fix-trondheim"));
+			}
+			assertEquals(50, journal.getPendingCount());
+		}
+		assertFalse(new File(directory, SyncJournal.FILE_NAME + ".compact").exists());
+
+		try (SyncJournal journal = new SyncJournal(directory, 256, 10)) {
+			assertEquals(50, journal.getRecovered().size());
+			assertEquals(SyncOperation.add("FIX-TestUser49", "members", "fix-trondheim"), new ArrayList<>(journal.getRecovered().values()).get(49));
+		}
+	}
+
+	@Test
+	public void testCompactsInBackgroundBeforeFull() throws IOException, InterruptedException {
+		File journalFile = new File(directory, SyncJournal.FILE_NAME);
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			// fits into the journal, but fills more than three quarters of it
+			for (int i = 0; i < 60; i++) {
+				journal.append(SyncOperation.add("FIX-TestUser" + (10 + i), "members", "fix-trondheim"));
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (journalFile.length() <= 4096 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(journalFile.length() > 4096);
+			assertEquals(60, journal.getPendingCount());
+		}
+
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			assertEquals(60, journal.getRecovered().size());
+		}
+	}
+
+	@Test
+	public void testIgnoresCorruptTail() throws IOException {
+		SyncOperation operation = SyncOperation.remove("FIX-TestUser123", "members", "fix-trondheim");
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			journal.append(operation);
+			journal.append(SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim"));
+		}
+		try (RandomAccessFile file = new RandomAccessFile(new File(directory, SyncJournal.FILE_NAME), "rw")) {
+			file.seek(80);
+			file.writeLong(0xdeadbeefL);
+		}
+
+		try (SyncJournal journal = new SyncJournal(directory, 4096, 10)) {
+			assertEquals(1, journal.getRecovered().size());
+			assertEquals(operation, journal.getRecovered().values().iterator().next());
+		}
+	}
+
+}
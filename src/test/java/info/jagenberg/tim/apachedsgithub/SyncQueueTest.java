@@ -0,0 +1,277 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SyncQueueTest {
+
+	private SyncQueue queue;
+
+	@After
+	public void tearDown() {
+		if (queue != null) {
+			queue.shutdown(1000);
+		}
+	}
+
+	@Test
+	public void testOperationsOnSameMembershipKeepOrder() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		queue = new SyncQueue(op -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			processed.add(op);
+		}, 4, 100, 1000);
+		queue.start();
+
+		queue.enqueue(SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim"));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		queue.enqueue(SyncOperation.remove("fix-testuser123", "Members", "fix-trondheim"));
+		release.countDown();
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(2, processed.size());
+		assertEquals(SyncOperation.Type.ADD, processed.get(0).getType());
+		assertEquals(SyncOperation.Type.REMOVE, processed.get(1).getType());
+	}
+
+	@Test
+	public void testBusyWhileOperationWaitsOrIsApplied() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		queue = new SyncQueue(op -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, null, 1, 100, 1000, 0);
+		queue.start();
+		SyncOperation applied = SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim");
+		SyncOperation waiting = SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim");
+
+		queue.enqueue(applied);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		queue.enqueue(waiting);
+
+		assertTrue(queue.isBusy(SyncOperation.remove("fix-testuser123", "Members", "fix-trondheim")));
+		assertTrue(queue.isBusy(SyncOperation.add("FIX-TestUser123", "alumni", "fix-trondheim")));
+		assertFalse(queue.isBusy(SyncOperation.add("FIX-TestUser123", "developers", "fix-trondheim")));
+		release.countDown();
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertFalse(queue.isBusy(applied));
+		assertFalse(queue.isBusy(waiting));
+	}
+
+	@Test
+	public void testOpposingOperationReplacesWaitingOne() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		queue = new SyncQueue(processed::add, null, 2, 100, 1000, 200);
+		queue.start();
+
+		queue.enqueue(SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("FIX-TestUser123", "alumni", "fix-trondheim"));
+		queue.enqueue(SyncOperation.remove("FIX-TestUser123", "MEMBERS", "fix-trondheim"));
+		queue.enqueue(SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim"));
+		assertEquals(2, queue.size());
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(2, processed.size());
+		assertTrue(processed.contains(SyncOperation.remove("FIX-TestUser123", "MEMBERS", "fix-trondheim")));
+		assertTrue(processed.contains(SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim")));
+	}
+
+	@Test
+	public void testDuplicateOperationsCollapseWithinWindow() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		queue = new SyncQueue(processed::add, null, 2, 100, 1000, 200);
+		queue.start();
+
+		queue.enqueue(SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("fix-testuser123", "members", "FIX-Trondheim"));
+		queue.enqueue(SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("FIX-TestUser123", "alumni", "fix-trondheim"));
+		queue.enqueue(SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim"));
+		assertEquals(2, queue.size());
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(2, processed.size());
+		assertTrue(processed.contains(SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim")));
+		assertTrue(processed.contains(SyncOperation.remove("FIX-TestUser123", "alumni", "fix-trondheim")));
+	}
+
+	@Test
+	public void testReplayedOperationsKeepLastChange() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+		queue = blockedQueue(processed, release, 10);
+
+		Map<Long, SyncOperation> recovered = new LinkedHashMap<>();
+		recovered.put(1L, SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim"));
+		recovered.put(2L, SyncOperation.remove("FIX-TestUser123", "members", "fix-trondheim"));
+		recovered.put(3L, SyncOperation.add("FIX-TestUser123", "alumni", "fix-trondheim"));
+		queue.replay(recovered);
+		assertEquals(2, queue.size());
+		release.countDown();
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(3, processed.size());
+		assertTrue(processed.contains(SyncOperation.remove("FIX-TestUser123", "members", "fix-trondheim")));
+		assertTrue(processed.contains(SyncOperation.add("FIX-TestUser123", "alumni", "fix-trondheim")));
+	}
+
+	@Test
+	public void testOpposingOperationReplacesReplayedOne() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+		queue = blockedQueue(processed, release, 10);
+
+		queue.replay(Collections.singletonMap(1L, SyncOperation.add("a", "members", "fix-trondheim")));
+		queue.enqueue(SyncOperation.remove("a", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("a", "members", "fix-trondheim"));
+		assertEquals(1, queue.size());
+		release.countDown();
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(SyncOperation.add("blocker", "members", "fix-trondheim"), SyncOperation.add("a", "members", "fix-trondheim")),
+				processed);
+	}
+
+	@Test
+	public void testFailingOperationDoesNotStopWorker() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		queue = new SyncQueue(op -> {
+			if (op.getUser().equals("broken")) {
+				throw new IllegalArgumentException("Could not find user broken");
+			}
+			processed.add(op);
+		}, 1, 10, 1000);
+		queue.start();
+
+		queue.enqueue(SyncOperation.add("broken", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("FIX-TestUser123", "members", "fix-trondheim"));
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(1, processed.size());
+	}
+
+	private SyncQueue blockedQueue(List<SyncOperation> processed, CountDownLatch release, int starvationLimit) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		SyncQueue blocked = new SyncQueue(op -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			processed.add(op);
+		}, null, 1, 100, 1000, 0, starvationLimit);
+		blocked.start();
+		blocked.enqueue(SyncOperation.add("blocker", "members", "fix-trondheim"));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return blocked;
+	}
+
+	@Test
+	public void testRemovalsOvertakeAdditions() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+		queue = blockedQueue(processed, release, 10);
+
+		queue.enqueue(SyncOperation.add("a", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("b", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.remove("c", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.remove("d", "members", "fix-oslo"));
+		assertEquals(2, queue.size(SyncLane.REMOVAL));
+		assertEquals(2, queue.size(SyncLane.ADDITION));
+		release.countDown();
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(SyncOperation.add("blocker", "members", "fix-trondheim"), SyncOperation.remove("c", "members", "fix-trondheim"),
+				SyncOperation.remove("d", "members", "fix-oslo"), SyncOperation.add("a", "members", "fix-trondheim"),
+				SyncOperation.add("b", "members", "fix-trondheim")), processed);
+	}
+
+	@Test
+	public void testAdditionsAreServedAfterStarvationLimit() throws InterruptedException {
+		List<SyncOperation> processed = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+		queue = blockedQueue(processed, release, 2);
+
+		queue.enqueue(SyncOperation.add("a", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("b", "members", "fix-trondheim"));
+		for (int i = 0; i < 5; i++) {
+			queue.enqueue(SyncOperation.remove("r" + i, "members", "fix-trondheim"));
+		}
+		release.countDown();
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		List<String> users = new ArrayList<>();
+		for (SyncOperation operation : processed) {
+			users.add(operation.getUser());
+		}
+		assertEquals(Arrays.asList("blocker", "r0", "r1", "a", "r2", "r3", "b", "r4"), users);
+	}
+
+	@Test
+	public void testQueueLatencyIsRecordedPerLane() throws InterruptedException {
+		SyncMetrics metrics = new SyncMetrics();
+		queue = new SyncQueue(op -> {
+		}, 1, 10, 1000);
+		queue.bindMetrics(metrics);
+		queue.start();
+
+		queue.enqueue(SyncOperation.remove("a", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.remove("b", "members", "fix-trondheim"));
+		queue.enqueue(SyncOperation.add("c", "members", "fix-trondheim"));
+
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(2, metrics.getQueueLatency(SyncLane.REMOVAL).getCount());
+		assertEquals(1, metrics.getQueueLatency(SyncLane.ADDITION).getCount());
+	}
+
+	@Test
+	public void testFullQueueRejectsAfterTimeout() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		queue = new SyncQueue(op -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, 1, 1, 50);
+		queue.start();
+
+		assertTrue(queue.enqueue(SyncOperation.add("a", "members", "fix-trondheim")));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(queue.enqueue(SyncOperation.add("b", "members", "fix-trondheim")));
+		assertFalse(queue.enqueue(SyncOperation.add("c", "members", "fix-trondheim")));
+
+		release.countDown();
+		assertTrue(queue.awaitIdle(5, TimeUnit.SECONDS));
+		assertEquals(0, queue.size());
+	}
+
+}
@@ -0,0 +1,81 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.github.GHOrganization;
+import org.kohsuke.github.GHTeam;
+
+public class TeamIndexTest {
+
+	private GHOrganization ghOrg;
+	private Map<String, GHTeam> teams;
+
+	@Before
+	public void setUp() throws IOException {
+		ghOrg = mock(GHOrganization.class);
+		teams = new HashMap<>();
+		teams.put("Members", team("Members"));
+		teams.put("alumni", team("alumni"));
+		when(ghOrg.getTeams()).thenReturn(teams);
+	}
+
+	private static GHTeam team(String name) {
+		GHTeam ghTeam = mock(GHTeam.class);
+		when(ghTeam.getName()).thenReturn(name);
+		return ghTeam;
+	}
+
+	@Test
+	public void testFindIgnoresCaseAndListsOnce() throws IOException {
+		TeamIndex index = new TeamIndex(ghOrg, 60000);
+
+		assertSame(teams.get("Members"), index.find("members"));
+		assertSame(teams.get("Members"), index.find("MEMBERS"));
+		assertSame(teams.get("alumni"), index.find("Alumni"));
+		verify(ghOrg, times(1)).getTeams();
+	}
+
+	@Test
+	public void testMissRefreshesAfterInterval() throws IOException {
+		TeamIndex index = new TeamIndex(ghOrg, 0);
+		index.find("members");
+
+		teams.put("owners", team("owners"));
+		assertSame(teams.get("owners"), index.find("owners"));
+		verify(ghOrg, times(2)).getTeams();
+	}
+
+	@Test
+	public void testMissWithinIntervalDoesNotRelist() throws IOException {
+		TeamIndex index = new TeamIndex(ghOrg, 60000);
+		index.find("members");
+
+		try {
+			index.find("dfgj432th7gw952");
+			fail("Unknown team found");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("not find team dfgj432th7gw952"));
+		}
+		verify(ghOrg, times(1)).getTeams();
+	}
+
+	@Test
+	public void testRemove() throws IOException {
+		TeamIndex index = new TeamIndex(ghOrg, 0);
+		index.find("members");
+		assertEquals(2, index.size());
+
+		index.remove("MEMBERS");
+		assertEquals(1, index.size());
+		assertSame(teams.get("Members"), index.find("members"));
+		verify(ghOrg, times(2)).getTeams();
+	}
+
+}
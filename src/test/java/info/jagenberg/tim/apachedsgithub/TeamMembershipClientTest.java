@@ -0,0 +1,75 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TeamMembershipClientTest {
+
+	private FakeGitHubServer server;
+	private TeamMembershipClient client;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new FakeGitHubServer().addUser("FIX-TestUser123").addMember("fix-trondheim", "alumni", "FIX-Alumnus").start();
+		client = new TeamMembershipClient(server.getApiUrl() + "/", "fake-token", new TimeoutHttpConnector());
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+	}
+
+	@Test
+	public void testAddAndRemoveByTeamId() {
+		long teamId = server.getTeamId("fix-trondheim", "alumni");
+
+		assertTrue(client.add(teamId, "FIX-TestUser123"));
+		assertEquals(new HashSet<>(Arrays.asList("FIX-Alumnus", "FIX-TestUser123")), server.getMembers("fix-trondheim", "alumni"));
+		assertTrue(client.remove(teamId, "FIX-Alumnus"));
+		assertTrue(client.remove(teamId, "FIX-TestUser123"));
+		assertEquals(Collections.<String> emptySet(), server.getMembers("fix-trondheim", "alumni"));
+		assertEquals(3, server.getRequestCount());
+	}
+
+	@Test
+	public void testRenamedTeamKeepsItsId() {
+		long teamId = server.getTeamId("fix-trondheim", "alumni");
+		server.renameTeam("fix-trondheim", "alumni", "former-members");
+
+		assertTrue(client.add(teamId, "FIX-TestUser123"));
+		assertTrue(server.getMembers("fix-trondheim", "former-members").contains("FIX-TestUser123"));
+	}
+
+	@Test
+	public void testUnknownTeamOrUser() {
+		assertFalse(client.add(424242, "FIX-TestUser123"));
+		assertFalse(client.add(server.getTeamId("fix-trondheim", "alumni"), "fgjsdht8435tj0j2"));
+	}
+
+	@Test
+	public void testKnownTeam() {
+		assertTrue(client.hasTeam(server.getTeamId("fix-trondheim", "alumni")));
+		assertFalse(client.hasTeam(424242));
+	}
+
+	@Test
+	public void testLoginOfRenamedUser() {
+		long userId = server.getUserId("FIX-TestUser123");
+		server.renameUser("FIX-TestUser123", "FIX-Renamed");
+
+		assertEquals("FIX-Renamed", client.getLogin(userId));
+		assertNull(client.getLogin(424242));
+	}
+
+}
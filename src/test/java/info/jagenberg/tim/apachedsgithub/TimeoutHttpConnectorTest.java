@@ -0,0 +1,104 @@
+package info.jagenberg.tim.apachedsgithub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class TimeoutHttpConnectorTest {
+
+	private HttpServer server;
+	private Set<Integer> clientPorts;
+
+	@Before
+	public void setUp() throws IOException {
+		clientPorts = ConcurrentHashMap.newKeySet();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/rate_limit", exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.createContext("/slow", exchange -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testConnectionsAreReused() throws IOException {
+		TimeoutHttpConnector connector = new TimeoutHttpConnector(1000, 1000);
+		for (int i = 0; i < 3; i++) {
+			HttpURLConnection connection = connector.connect(url("/rate_limit"));
+			assertEquals(200, connection.getResponseCode());
+			try (InputStream in = connection.getInputStream()) {
+				while (in.read() != -1) {
+					// drain so the connection goes back to the keep-alive cache
+				}
+			}
+		}
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test
+	public void testReadTimeout() throws IOException {
+		TimeoutHttpConnector connector = new TimeoutHttpConnector(1000, 100);
+		HttpURLConnection connection = connector.connect(url("/slow"));
+		try {
+			connection.getResponseCode();
+			fail("slow response did not time out");
+		} catch (SocketTimeoutException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidKeepAliveCacheSize() {
+		Properties properties = new Properties();
+		properties.setProperty(GithubInterceptorConfig.PREFIX + GithubInterceptorConfig.TRANSPORT_MAX_CONNECTIONS, "-1");
+		new TimeoutHttpConnector(new GithubInterceptorConfig(properties));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTimeout() {
+		new TimeoutHttpConnector(-1, 1000);
+	}
+
+	private URL url(String path) throws IOException {
+		return new URL("http://localhost:" + server.getAddress().getPort() + path);
+	}
+
+}